@@ -0,0 +1,148 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.agent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.metaeffekt.core.commons.annotation.Public;
+
+/**
+ * Script execution submitted asynchronously to the agent. The job collects the output lines of the
+ * execution. The controller polls the progress with the offset of the lines already received; see
+ * {@link #getProgress(long, long)}.
+ * <p>
+ * Only the most recent {@link #MAX_OUTPUT_LINES} lines are retained. The offset keeps counting, so
+ * that a client falling behind can detect the gap.
+ */
+@Public
+public class AgentJob {
+
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_SUCCESS = "success";
+    public static final String STATUS_FAILED = "failed";
+
+    public static final String KEY_STATUS = "status";
+    public static final String KEY_MESSAGE = "message";
+    public static final String KEY_OFFSET = "offset";
+    public static final String KEY_OUTPUT = "output";
+
+    static final int MAX_OUTPUT_LINES = 10000;
+
+    private final String id = UUID.randomUUID().toString();
+
+    private final String description;
+
+    private final Deque<String> output = new ArrayDeque<>();
+
+    /**
+     * Offset of the first line in {@link #output}.
+     */
+    private long outputOffset;
+
+    private String status = STATUS_RUNNING;
+
+    private String message;
+
+    private long finishedTimestamp;
+
+    public AgentJob(String description) {
+        this.description = description;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public synchronized void appendOutput(String line) {
+        output.add(line);
+        if (output.size() > MAX_OUTPUT_LINES) {
+            output.pollFirst();
+            outputOffset++;
+        }
+        notifyAll();
+    }
+
+    public synchronized void succeeded() {
+        finish(STATUS_SUCCESS, null);
+    }
+
+    public synchronized void failed(String message) {
+        finish(STATUS_FAILED, message);
+    }
+
+    public synchronized boolean isFinished() {
+        return !STATUS_RUNNING.equals(status);
+    }
+
+    synchronized long getFinishedTimestamp() {
+        return finishedTimestamp;
+    }
+
+    /**
+     * Provides the status and the output lines after the given offset. In case no new lines are
+     * available and the job is still running the call waits up to the given time.
+     *
+     * @param offset The number of lines already received.
+     * @param waitMillis The maximum time to wait for new output.
+     * @return The progress with the keys {@link #KEY_STATUS}, {@link #KEY_OFFSET} (the offset to
+     *   use for the next request), {@link #KEY_OUTPUT} and {@link #KEY_MESSAGE} (failed jobs only).
+     * @throws InterruptedException In case the thread is interrupted while waiting.
+     */
+    public synchronized Properties getProgress(long offset, long waitMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + waitMillis;
+        long remaining = waitMillis;
+        while (!isFinished() && offset >= outputOffset + output.size() && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        long skip = Math.max(0, offset - outputOffset);
+        for (Iterator<String> iterator = output.iterator(); iterator.hasNext();) {
+            final String line = iterator.next();
+            if (skip > 0) {
+                skip--;
+            } else {
+                sb.append(line).append('\n');
+            }
+        }
+
+        final Properties progress = new Properties();
+        progress.setProperty(KEY_STATUS, status);
+        progress.setProperty(KEY_OFFSET, String.valueOf(outputOffset + output.size()));
+        progress.setProperty(KEY_OUTPUT, sb.toString());
+        if (message != null) {
+            progress.setProperty(KEY_MESSAGE, message);
+        }
+        return progress;
+    }
+
+    private void finish(String status, String message) {
+        this.status = status;
+        this.message = message;
+        this.finishedTimestamp = System.currentTimeMillis();
+        notifyAll();
+    }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.agent;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the {@link AgentJob}s submitted to the agent. Jobs are executed on separate threads;
+ * the number of concurrent script executions is still limited by the {@link AgentScriptExecutor}.
+ * Finished jobs are retained for {@link #RETENTION_MILLIS} to allow the controller to fetch the
+ * final status.
+ */
+public class AgentJobs {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AgentJobs.class);
+
+    static final long RETENTION_MILLIS = 10 * 60 * 1000;
+
+    private final Map<String, AgentJob> jobs = new ConcurrentHashMap<>();
+
+    private final ExecutorService executorService = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "dcc-job-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Submits the given work as job.
+     *
+     * @param description The description of the job used for logging.
+     * @param work The work to execute. The job is passed to collect the output. A
+     *   {@link RuntimeException} or {@link Error} marks the job as failed.
+     * @return The submitted job.
+     */
+    public AgentJob submit(String description, final Consumer<AgentJob> work) {
+        removeExpiredJobs();
+
+        final AgentJob job = new AgentJob(description);
+        jobs.put(job.getId(), job);
+        executorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    work.accept(job);
+                    job.succeeded();
+                } catch (RuntimeException e) {
+                    LOG.error(String.format("Job [%s] failed.", job.getDescription()), e);
+                    job.failed(e.getMessage());
+                } catch (Error e) {
+                    LOG.error(String.format("Job [%s] failed.", job.getDescription()), e);
+                    job.failed(e.toString());
+                    throw e;
+                }
+            }
+        });
+        LOG.info("Submitted job [{}] with id [{}].", description, job.getId());
+        return job;
+    }
+
+    /**
+     * @param jobId The job id.
+     * @return The job.
+     * @throws IllegalArgumentException In case no job with the given id is known.
+     */
+    public AgentJob getJob(String jobId) {
+        final AgentJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new IllegalArgumentException(String.format("No job with id [%s] found.", jobId));
+        }
+        return job;
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    private void removeExpiredJobs() {
+        final long expired = System.currentTimeMillis() - RETENTION_MILLIS;
+        for (Iterator<AgentJob> iterator = jobs.values().iterator(); iterator.hasNext();) {
+            final AgentJob job = iterator.next();
+            if (job.isFinished() && job.getFinishedTimestamp() < expired) {
+                iterator.remove();
+            }
+        }
+    }
+
+}
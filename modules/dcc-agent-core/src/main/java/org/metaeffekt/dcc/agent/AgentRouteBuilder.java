@@ -15,10 +15,20 @@
  */
 package org.metaeffekt.dcc.agent;
 
+import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.ASYNC;
+import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.BATCH;
+import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.BLOBS;
 import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.COMMAND;
 import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.DEPLOYMENT_ID;
+import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.EPOCH;
+import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.JOBS;
+import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.JOB_ID;
+import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.MANIFEST;
+import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.OFFSET;
 import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.PACKAGE_ID;
+import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.REVISION;
 import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.UNIT_ID;
+import static org.metaeffekt.dcc.agent.DccAgentUriBuilder.WAIT;
 import static org.metaeffekt.dcc.commons.commands.Commands.CLEAN;
 import static org.metaeffekt.dcc.commons.commands.Commands.INITIALIZE;
 import static org.metaeffekt.dcc.commons.commands.Commands.LOGS;
@@ -28,6 +38,8 @@ import static org.metaeffekt.dcc.commons.commands.Commands.VERSION;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -37,8 +49,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
@@ -52,7 +67,9 @@ import org.apache.commons.io.FileCleaningTracker;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.AutoCloseInputStream;
+import org.apache.commons.lang3.StringUtils;
 import org.restlet.Request;
+import org.restlet.data.Form;
 import org.restlet.data.MediaType;
 import org.restlet.ext.fileupload.RestletFileUpload;
 import org.restlet.representation.Representation;
@@ -65,6 +82,7 @@ import org.metaeffekt.dcc.commons.domain.Id;
 import org.metaeffekt.dcc.commons.domain.Type.DeploymentId;
 import org.metaeffekt.dcc.commons.domain.Type.PackageId;
 import org.metaeffekt.dcc.commons.domain.Type.UnitId;
+import org.metaeffekt.dcc.commons.execution.ExecutionStateHandler;
 
 /**
  * @author Alexander D.
@@ -74,6 +92,8 @@ public class AgentRouteBuilder extends RouteBuilder {
 
     private static final int MAX_FILE_SIZE = 1024 * 1024;
 
+    private static final long MAX_JOB_WAIT_MILLIS = 30000;
+
     private static final Logger LOG = LoggerFactory.getLogger(AgentRouteBuilder.class);
 
     private RoutePolicy routePolicy;
@@ -86,6 +106,8 @@ public class AgentRouteBuilder extends RouteBuilder {
     
     private final AgentScriptExecutor remoteScriptExecutor;
 
+    private final AgentJobs jobs = new AgentJobs();
+
     public AgentRouteBuilder(AgentScriptExecutor scriptExecutor) {
         final DiskFileItemFactory factory = new DiskFileItemFactory();
         factory.setSizeThreshold(MAX_FILE_SIZE);
@@ -156,11 +178,54 @@ public class AgentRouteBuilder extends RouteBuilder {
             public void process(Exchange exchange) throws Exception {
                 LOG.info("Received GET request for [state].");
                 Id<DeploymentId> deploymentId = extractDeploymentId(exchange);
-                exchange.getOut().setBody(remoteScriptExecutor.getExecutionStateHandler(deploymentId).consolidateState(deploymentId));
+                ExecutionStateHandler executionStateHandler = remoteScriptExecutor.getExecutionStateHandler(deploymentId);
+
+                // controllers supporting versioned states pass the revision received last
+                Form query = new Form(exchange.getIn().getHeader(Exchange.HTTP_QUERY, String.class));
+                String revision = query.getFirstValue(REVISION);
+                if (revision != null) {
+                    exchange.getOut().setBody(executionStateHandler.consolidateState(
+                        deploymentId, query.getFirstValue(EPOCH), Long.parseLong(revision)));
+                } else {
+                    exchange.getOut().setBody(executionStateHandler.consolidateState(deploymentId));
+                }
             }
         });
 
         
+        // the blob store is shared by all deployments; the controller only uploads the files missing
+        from("resource:" + DccAgentEndpoint.PATH_ROOT + "/" + BLOBS + "?restletMethod=POST").
+        routeId("findMissingBlobs").routePolicy(getRoutePolicy()).process(new Processor() {
+
+            @Override
+            public void process(Exchange exchange) throws Exception {
+                LOG.info("Received POST request for [blobs].");
+                try (InputStream in = new BufferedInputStream(getRequestStream(exchange))) {
+                    SolutionManifest manifest = SolutionManifest.read(in);
+                    Set<String> missing = remoteScriptExecutor.getBlobStore().findMissing(manifest.getHashes());
+                    LOG.info("[{}] of [{}] blobs are missing.", missing.size(), manifest.getHashes().size());
+                    exchange.getOut().setBody(String.join("\n", missing));
+                }
+            }
+        });
+
+        from("resource:" + DccAgentEndpoint.PATH_ROOT + "/" + BLOBS + "?restletMethod=PUT").
+        routeId("storeBlobs").routePolicy(getRoutePolicy()).process(new Processor() {
+
+            @Override
+            public void process(Exchange exchange) throws Exception {
+                LOG.info("Received PUT request for [blobs].");
+                BlobStore blobStore = remoteScriptExecutor.getBlobStore();
+                try (InputStream in = new BufferedInputStream(getRequestStream(exchange));
+                        ZipInputStream zis = new ZipInputStream(in)) {
+                    ZipEntry entry;
+                    while ((entry = zis.getNextEntry()) != null) {
+                        blobStore.store(entry.getName(), zis);
+                    }
+                }
+            }
+        });
+
         from(deploymentBasedEndpointUriBuilder.buildRestletResourceUri(INITIALIZE)).
         routeId(INITIALIZE.toString()).routePolicy(getRoutePolicy()).process(new Processor() {
             
@@ -175,7 +240,14 @@ public class AgentRouteBuilder extends RouteBuilder {
 
                 // ensure the file system is as required
                 remoteScriptExecutor.prepareFilesystemLocations(deploymentId);
-                prepareSolutionLocation(exchange);
+
+                // controllers supporting the blob store only send the manifest of the solution
+                Form query = new Form(exchange.getIn().getHeader(Exchange.HTTP_QUERY, String.class));
+                if (Boolean.parseBoolean(query.getFirstValue(MANIFEST))) {
+                    materializeSolutionLocation(exchange);
+                } else {
+                    prepareSolutionLocation(exchange);
+                }
                 
                 // currently no properties are passed on from the shell. To persist a state
                 // we create one with the appropriate name.
@@ -218,10 +290,124 @@ public class AgentRouteBuilder extends RouteBuilder {
                 File executionPropertiesFile = properties.get(DccConstants.COMMAND_PROPERTIES);
                 File prerequisitesPropertiesFile = properties.get(DccConstants.PREREQUISITES_PROPERTIES);
 
+                // asynchronous execution; the response carries the job id to poll the progress
+                Form query = new Form(exchange.getIn().getHeader(Exchange.HTTP_QUERY, String.class));
+                if (Boolean.parseBoolean(query.getFirstValue(ASYNC))) {
+                    AgentJob job = jobs.submit(String.format("%s:%s", unitId, commandString), j ->
+                        remoteScriptExecutor.executeScript(deploymentId, packageId, unitId, commandString,
+                            executionPropertiesFile, prerequisitesPropertiesFile, j::appendOutput));
+                    exchange.getOut().setBody(job.getId());
+                    return;
+                }
+
                 remoteScriptExecutor.executeScript(deploymentId, packageId, unitId, commandString,
                         executionPropertiesFile, prerequisitesPropertiesFile);
             }
         });
+
+        from("resource:" + DccAgentEndpoint.PATH_ROOT + "/" + JOBS + "/{" + JOB_ID + "}?restletMethod=GET").
+            routeId(JOBS).routePolicy(getRoutePolicy()).process(new Processor() {
+
+            @Override
+            public void process(Exchange exchange) throws Exception {
+                AgentJob job = jobs.getJob(notNull((String) exchange.getIn().getHeader(JOB_ID), JOB_ID));
+                LOG.debug("Received GET request for job [{}].", job.getDescription());
+
+                Form query = new Form(exchange.getIn().getHeader(Exchange.HTTP_QUERY, String.class));
+                long offset = Long.parseLong(StringUtils.defaultIfBlank(query.getFirstValue(OFFSET), "0"));
+                long wait = Math.min(MAX_JOB_WAIT_MILLIS,
+                    Long.parseLong(StringUtils.defaultIfBlank(query.getFirstValue(WAIT), "0")));
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                job.getProgress(offset, wait).store(out, null);
+                exchange.getOut().setBody(out.toByteArray());
+            }
+        });
+
+        from(unitBasedEndpointUriBuilder.buildBatchRestletResourceUri()).
+            routeId(BATCH).routePolicy(getRoutePolicy()).process(new Processor() {
+
+            @Override
+            public void process(Exchange exchange) throws Exception {
+                Id<DeploymentId> deploymentId = extractDeploymentId(exchange);
+                Map<String, byte[]> parts = readParts(exchange);
+
+                Properties batchProperties = new Properties();
+                batchProperties.load(new ByteArrayInputStream(notNull(parts.get(CommandBatch.BATCH_PART), CommandBatch.BATCH_PART)));
+                CommandBatch batch = CommandBatch.fromProperties(batchProperties);
+                LOG.info("Received PUT request for [batch] with [{}] entries.", batch.getEntries().size());
+
+                Properties result = executeBatch(deploymentId, batch, parts);
+
+                Form query = new Form(exchange.getIn().getHeader(Exchange.HTTP_QUERY, String.class));
+                exchange.getOut().setBody(createBatchResponse(deploymentId, result, query));
+            }
+        });
+    }
+
+    private Properties executeBatch(Id<DeploymentId> deploymentId, CommandBatch batch, Map<String, byte[]> parts)
+            throws IOException {
+        final Properties result = new Properties();
+        final File solutionTmpDir = remoteScriptExecutor.getTmpDir(deploymentId);
+
+        boolean failed = false;
+        for (int i = 0; i < batch.getEntries().size(); i++) {
+            final CommandBatch.Entry entry = batch.getEntries().get(i);
+            if (failed) {
+                // entries depend on the previous entries; do not continue after a failure
+                result.setProperty(CommandBatch.statusKey(i), CommandBatch.STATUS_SKIPPED);
+                continue;
+            }
+            try {
+                final byte[] commandProperties = parts.get(CommandBatch.partName(i, DccConstants.COMMAND_PROPERTIES));
+                final byte[] prerequisitesProperties = parts.get(CommandBatch.partName(i, DccConstants.PREREQUISITES_PROPERTIES));
+
+                final File executionPropertiesFile = storeInFile(DccUtils.propertyFile(solutionTmpDir, entry.getUnitId(),
+                    DccUtils.propertyFileName(entry.getCommand())), notNull(commandProperties, DccConstants.COMMAND_PROPERTIES));
+                File prerequisitesPropertiesFile = null;
+                if (prerequisitesProperties != null) {
+                    prerequisitesPropertiesFile = storeInFile(DccUtils.propertyFile(solutionTmpDir, entry.getUnitId(),
+                        DccConstants.PREREQUISITES_PROPERTIES_FILE_NAME), prerequisitesProperties);
+                }
+
+                remoteScriptExecutor.executeScript(deploymentId, entry.getPackageId(), entry.getUnitId(),
+                    entry.getCommand(), executionPropertiesFile, prerequisitesPropertiesFile);
+                result.setProperty(CommandBatch.statusKey(i), CommandBatch.STATUS_SUCCESS);
+            } catch (RuntimeException e) {
+                LOG.error(String.format("Execution of [%s] for unit [%s] failed.", entry.getCommand(), entry.getUnitId()), e);
+                failed = true;
+                result.setProperty(CommandBatch.statusKey(i), CommandBatch.STATUS_FAILED);
+                result.setProperty(CommandBatch.messageKey(i), String.valueOf(e.getMessage()));
+            }
+        }
+        return result;
+    }
+
+    private InputStream createBatchResponse(Id<DeploymentId> deploymentId, Properties result, Form query)
+            throws IOException {
+        final File responseFile = File.createTempFile(BATCH, ".zip", remoteScriptExecutor.getTmpDir(deploymentId));
+        try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(responseFile)))) {
+            zos.putNextEntry(new ZipEntry(CommandBatch.RESULT_ENTRY));
+            result.store(zos, null);
+
+            // include the state changes; saves the subsequent state request
+            final String revision = query.getFirstValue(REVISION);
+            if (revision != null) {
+                zos.putNextEntry(new ZipEntry(CommandBatch.STATE_ENTRY));
+                try (InputStream state = remoteScriptExecutor.getExecutionStateHandler(deploymentId).
+                        consolidateState(deploymentId, query.getFirstValue(EPOCH), Long.parseLong(revision))) {
+                    IOUtils.copy(state, zos);
+                }
+            }
+            zos.finish();
+        }
+        return new AutoCloseInputStream(new FileInputStream(responseFile)) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                responseFile.delete();
+            }
+        };
     }
 
 
@@ -249,6 +435,13 @@ public class AgentRouteBuilder extends RouteBuilder {
         this.version = version;
     }
 
+    /**
+     * Stops the threads executing the submitted jobs.
+     */
+    public void shutdown() {
+        jobs.shutdown();
+    }
+
     private File createInitializeExecutionProperties(Exchange exchange, String command) throws IOException {
         File executionProperties =
             new File(remoteScriptExecutor.getTmpDir(extractDeploymentId(exchange)), "initialize");
@@ -256,15 +449,16 @@ public class AgentRouteBuilder extends RouteBuilder {
         return executionProperties;
     }
 
-    private void prepareSolutionLocation(Exchange exchange) throws IOException {
-        Request request = (Request) exchange.getIn().getBody();
-        Representation entity;
-
-        if (request == null || (entity = request.getEntity()) == null) {
-            throw new IllegalArgumentException("Incoming payload not as expected");
+    private void materializeSolutionLocation(Exchange exchange) throws IOException {
+        try (InputStream in = new BufferedInputStream(getRequestStream(exchange))) {
+            SolutionManifest manifest = SolutionManifest.read(in);
+            final File solutionDir = remoteScriptExecutor.getSolutionDir(extractDeploymentId(exchange));
+            remoteScriptExecutor.getBlobStore().materialize(manifest, solutionDir);
         }
+    }
 
-        try (InputStream in = new BufferedInputStream(entity.getStream()); ZipInputStream zis = new ZipInputStream(in)) {
+    private void prepareSolutionLocation(Exchange exchange) throws IOException {
+        try (InputStream in = new BufferedInputStream(getRequestStream(exchange)); ZipInputStream zis = new ZipInputStream(in)) {
             ZipEntry entry = zis.getNextEntry();
 
             final File solutionDir = remoteScriptExecutor.getSolutionDir(extractDeploymentId(exchange));
@@ -286,6 +480,16 @@ public class AgentRouteBuilder extends RouteBuilder {
     }
 
 
+    private InputStream getRequestStream(Exchange exchange) throws IOException {
+        Request request = (Request) exchange.getIn().getBody();
+        Representation entity;
+
+        if (request == null || (entity = request.getEntity()) == null) {
+            throw new IllegalArgumentException("Incoming payload not as expected");
+        }
+        return entity.getStream();
+    }
+
     private<T> T notNull(T obj, String label) {
         if (obj == null) {
             throw new IllegalArgumentException(String.format("No [%s] parameter found in request", label));
@@ -348,6 +552,36 @@ public class AgentRouteBuilder extends RouteBuilder {
         return properties;
     }
 
+    private Map<String, byte[]> readParts(Exchange exchange) throws IOException {
+        final Map<String, byte[]> parts = new HashMap<>();
+
+        Request request = (Request) exchange.getIn().getBody();
+        Representation entity;
+        if (request == null || (entity = request.getEntity()) == null) {
+            throw new IllegalArgumentException("Incoming payload not as expected");
+        }
+
+        try {
+            for (FileItemIterator iterator = restletFileUpload.getItemIterator(entity); iterator.hasNext();) {
+                final FileItemStream next = iterator.next();
+                try (InputStream in = next.openStream()) {
+                    parts.put(next.getFieldName(), IOUtils.toByteArray(in));
+                }
+            }
+        } catch (FileUploadException e) {
+            throw new IllegalArgumentException("Incoming payload not as expected", e);
+        } finally {
+            IOUtils.closeQuietly(entity.getStream());
+        }
+        return parts;
+    }
+
+    private File storeInFile(File propertiesFile, byte[] content) throws IOException {
+        propertiesFile.getParentFile().mkdirs();
+        FileUtils.writeByteArrayToFile(propertiesFile, content);
+        return propertiesFile;
+    }
+
     private File storeInFile(File propertiesFile, InputStream in) throws IOException, FileNotFoundException {
         try (OutputStream out = new BufferedOutputStream(new FileOutputStream(propertiesFile))) {
             if (in == null) {
@@ -17,6 +17,12 @@ package org.metaeffekt.dcc.agent;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.Validate;
@@ -39,25 +45,65 @@ import org.metaeffekt.dcc.commons.script.CommandScriptExecutor;
 public class AgentScriptExecutor {
 
     private static final Logger LOG = LoggerFactory.getLogger(AgentScriptExecutor.class);
+
+    private static final int DEFAULT_WORKER_COUNT = 4;
+
+    private static final int NUMBER_OF_UNIT_LOCKS = 64;
+
+    /**
+     * Sub-directory of the working base dir hosting the blob store shared by all deployments.
+     */
+    private static final String BLOB_STORE_SUB_DIRECTORY = ".blob-store";
     
     private File workingBaseDir;
 
     private File destinationBaseDir;
-    
-    private final Object semaphore = new Object();
+
+    /**
+     * Striped locks keyed by deployment and unit id. Commands for the same unit are serialized, while
+     * commands for independent units may be executed concurrently.
+     */
+    private final Lock[] unitLocks = new Lock[NUMBER_OF_UNIT_LOCKS];
+
+    private Semaphore workers = new Semaphore(DEFAULT_WORKER_COUNT, true);
+
+    private final Map<Id<DeploymentId>, ExecutionStateHandler> executionStateHandlers = new ConcurrentHashMap<>();
 
     public AgentScriptExecutor(File workingBaseDir, File targetBaseDir) {
         this.workingBaseDir = notNull(workingBaseDir, "workingBaseDir");
         this.destinationBaseDir = notNull(targetBaseDir, "destinationBaseDir");
-        
+
+        for (int i = 0; i < unitLocks.length; i++) {
+            unitLocks[i] = new ReentrantLock(true);
+        }
+
         LOG.info("DCC Agent initialized with workingBaseDir [{}] and destinationBaseDir [{}]", 
             getWorkingBaseDir(), getDestinationBaseDir());
 
     }
 
+    /**
+     * Returns the {@link ExecutionStateHandler} for the given deployment. The handler is shared by all
+     * concurrent executions within the deployment.
+     *
+     * @param deploymentId The deployment id.
+     * @return The shared {@link ExecutionStateHandler} instance.
+     */
     protected ExecutionStateHandler getExecutionStateHandler(Id<DeploymentId> deploymentId) {
-        return new ExecutionStateHandler(new File(destinationBaseDir, deploymentId.getValue()),
-                new File(workingBaseDir, deploymentId.getValue()));
+        return executionStateHandlers.computeIfAbsent(deploymentId,
+            id -> new ExecutionStateHandler(new File(destinationBaseDir, id.getValue()),
+                new File(workingBaseDir, id.getValue())));
+    }
+
+    /**
+     * Sets the maximum number of scripts executed concurrently by the agent.
+     *
+     * @param workerCount The number of workers.
+     */
+    public void setWorkerCount(int workerCount) {
+        Validate.isTrue(workerCount > 0, "The worker count must be positive.");
+        this.workers = new Semaphore(workerCount, true);
+        LOG.info("DCC Agent executes up to [{}] scripts concurrently.", workerCount);
     }
 
     private <T> T notNull(T obj, String label) {
@@ -72,6 +118,10 @@ public class AgentScriptExecutor {
         return workingBaseDir;
     }
 
+    public BlobStore getBlobStore() {
+        return new BlobStore(new File(getWorkingBaseDir(), BLOB_STORE_SUB_DIRECTORY));
+    }
+
     public void setWorkingBaseDir(File workingBaseDir) {
         this.workingBaseDir = workingBaseDir;
     }
@@ -148,44 +198,81 @@ public class AgentScriptExecutor {
     public void executeScript(Id<DeploymentId> deploymentId, Id<PackageId> packageId,
             Id<UnitId> unitId, String commandString, File executionPropertiesFile,
             File prerequisitesPropertiesFile) {
-        synchronized (semaphore) {
-            LOG.info("Received PUT request for command [{}], unit [{}], package [{}].", commandString, unitId, packageId);
-    
-            DccUtils.prepareFoldersForWriting(getWorkingDir(deploymentId));
-    
-            Validate.notNull(executionPropertiesFile, "Execution properties must not be null!");
-            Validate.notNull(deploymentId, "Deployment id must not be null!");
-            Validate.notNull(unitId, "Unit id must not be null!");
-            Validate.notNull(packageId, "Package id must not be null!");
-    
-            File localSolutionDirectory = getSolutionDir(deploymentId);
-            File packageDir = new File(localSolutionDirectory, "packages");
-            File installationDir = getDestinationDir(deploymentId);
-    
-            CommandScriptExecutionContext executionContext = new CommandScriptExecutionContext();
-            executionContext.setTargetDir(installationDir);
-            executionContext.setPackageDir(packageDir);
-            executionContext.setSolutionDir(localSolutionDirectory);
-            executionContext.setDeploymentId(deploymentId);
-            executionContext.setWorkingDir(getWorkingDir(deploymentId));
-    
-            File agentHomeDir = new File(System.getProperty("dcc.agent.home"), "./");
-            File antHomeDir = determineAntHome(agentHomeDir);
-            executionContext.setAntHomeDir(antHomeDir);
-    
-            CommandScriptExecutor executor = new CommandScriptExecutor(executionContext, 
-                    getExecutionStateHandler(deploymentId));
-            final Commands command = Commands.parseConfigurableCommand(commandString);
+        executeScript(deploymentId, packageId, unitId, commandString, executionPropertiesFile,
+            prerequisitesPropertiesFile, null);
+    }
+
+    /**
+     * Executes the command script for the given unit.
+     *
+     * @param outputListener Optional listener receiving the output lines of the script while running.
+     */
+    public void executeScript(Id<DeploymentId> deploymentId, Id<PackageId> packageId,
+            Id<UnitId> unitId, String commandString, File executionPropertiesFile,
+            File prerequisitesPropertiesFile, Consumer<String> outputListener) {
+        Validate.notNull(deploymentId, "Deployment id must not be null!");
+        Validate.notNull(unitId, "Unit id must not be null!");
+
+        final Lock unitLock = getUnitLock(deploymentId, unitId);
+        unitLock.lock();
+        try {
+            workers.acquireUninterruptibly();
             try {
-                executor.executeCommand(command, unitId, packageId, executionPropertiesFile, 
-                        prerequisitesPropertiesFile);
-            } catch (BuildException e) {
-                LOG.error(String.format("Failed to execute command %s on unit %s", commandString, unitId), e);
-                throw e;
+                doExecuteScript(deploymentId, packageId, unitId, commandString, executionPropertiesFile,
+                        prerequisitesPropertiesFile, outputListener);
+            } finally {
+                workers.release();
             }
+        } finally {
+            unitLock.unlock();
         }
     }
 
+    private void doExecuteScript(Id<DeploymentId> deploymentId, Id<PackageId> packageId,
+            Id<UnitId> unitId, String commandString, File executionPropertiesFile,
+            File prerequisitesPropertiesFile, Consumer<String> outputListener) {
+        LOG.info("Received PUT request for command [{}], unit [{}], package [{}].", commandString, unitId, packageId);
+
+        DccUtils.prepareFoldersForWriting(getWorkingDir(deploymentId));
+
+        Validate.notNull(executionPropertiesFile, "Execution properties must not be null!");
+        Validate.notNull(packageId, "Package id must not be null!");
+
+        File localSolutionDirectory = getSolutionDir(deploymentId);
+        File packageDir = new File(localSolutionDirectory, "packages");
+        File installationDir = getDestinationDir(deploymentId);
+
+        CommandScriptExecutionContext executionContext = new CommandScriptExecutionContext();
+        executionContext.setTargetDir(installationDir);
+        executionContext.setPackageDir(packageDir);
+        executionContext.setSolutionDir(localSolutionDirectory);
+        executionContext.setDeploymentId(deploymentId);
+        executionContext.setWorkingDir(getWorkingDir(deploymentId));
+        executionContext.setOutputListener(outputListener);
+
+        File agentHomeDir = new File(System.getProperty("dcc.agent.home"), "./");
+        File antHomeDir = determineAntHome(agentHomeDir);
+        executionContext.setAntHomeDir(antHomeDir);
+
+        CommandScriptExecutor executor = new CommandScriptExecutor(executionContext,
+                getExecutionStateHandler(deploymentId));
+        final Commands command = Commands.parseConfigurableCommand(commandString);
+        try {
+            // scripts executed in the agent jvm confine system properties to their execution; like
+            //   forked scripts they run concurrently within the bounds of the workers
+            executor.executeCommand(command, unitId, packageId, executionPropertiesFile,
+                    prerequisitesPropertiesFile);
+        } catch (BuildException e) {
+            LOG.error(String.format("Failed to execute command %s on unit %s", commandString, unitId), e);
+            throw e;
+        }
+    }
+
+    private Lock getUnitLock(Id<DeploymentId> deploymentId, Id<UnitId> unitId) {
+        final int hash = (deploymentId.getValue() + ":" + unitId.getValue()).hashCode();
+        return unitLocks[Math.floorMod(hash, unitLocks.length)];
+    }
+
     private File determineAntHome(File agentHomeDir) {
         DirectoryScanner scanner = new DirectoryScanner();
         scanner.setBasedir(agentHomeDir);
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.metaeffekt.dcc.commons.DccUtils;
+
+/**
+ * Content-addressed store of the files uploaded by the controller. Files are stored by their SHA-256
+ * hash and shared across deployments. Solution locations are materialized from the store based on a
+ * {@link SolutionManifest}; only files not yet available have to be transferred.
+ */
+public class BlobStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlobStore.class);
+
+    private final File baseDir;
+
+    public BlobStore(File baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    public boolean contains(String hash) {
+        return getBlobFile(hash).exists();
+    }
+
+    /**
+     * @param hashes The hashes to check.
+     * @return The hashes not available in the store.
+     */
+    public Set<String> findMissing(Collection<String> hashes) {
+        final Set<String> missing = new LinkedHashSet<>();
+        for (String hash : hashes) {
+            if (!contains(hash)) {
+                missing.add(hash);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Stores the content read from the given stream. The content is verified against the hash.
+     *
+     * @param hash The expected SHA-256 hash of the content.
+     * @param in The content. The stream is not closed.
+     * @throws IOException In case the content cannot be stored or does not match the hash.
+     */
+    public void store(String hash, InputStream in) throws IOException {
+        final File blobFile = getBlobFile(hash);
+        final File parentDir = blobFile.getParentFile();
+        parentDir.mkdirs();
+
+        // write to a temporary file first; concurrent uploads of the same blob must not interfere
+        final File tmpFile = File.createTempFile(hash, ".tmp", parentDir);
+        try {
+            Files.copy(in, tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            final String actualHash = DccUtils.sha256Hex(tmpFile);
+            if (!hash.equals(actualHash)) {
+                throw new IOException(String.format(
+                    "Content of blob [%s] does not match its hash; received [%s].", hash, actualHash));
+            }
+            try {
+                Files.move(tmpFile.toPath(), blobFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), blobFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOG.debug("Stored blob [{}].", hash);
+        } finally {
+            FileUtils.deleteQuietly(tmpFile);
+        }
+    }
+
+    /**
+     * Creates the files and folders listed in the manifest in the given target directory.
+     *
+     * @param manifest The manifest.
+     * @param targetDir The target directory.
+     * @throws IOException In case a blob is missing or cannot be copied.
+     */
+    public void materialize(SolutionManifest manifest, File targetDir) throws IOException {
+        final Set<String> missing = findMissing(manifest.getHashes());
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException(String.format(
+                "Unable to materialize solution. [%s] blobs are missing.", missing.size()));
+        }
+
+        for (Map.Entry<String, String> entry : manifest.getEntries().entrySet()) {
+            final String path = entry.getKey();
+            if (path.contains("..")) {
+                throw new IllegalStateException("Leaving solution context is not allowed: " + path);
+            }
+            final File file = new File(targetDir, path);
+            if (SolutionManifest.DIRECTORY.equals(entry.getValue())) {
+                file.mkdirs();
+            } else {
+                file.getParentFile().mkdirs();
+                // copy instead of link; scripts may modify the solution files
+                Files.copy(getBlobFile(entry.getValue()).toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        LOG.debug("Materialized [{}] entries in [{}].", manifest.getEntries().size(), targetDir);
+    }
+
+    private File getBlobFile(String hash) {
+        if (!hash.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Invalid blob hash: " + hash);
+        }
+        return new File(new File(baseDir, hash.substring(0, 2)), hash);
+    }
+
+}
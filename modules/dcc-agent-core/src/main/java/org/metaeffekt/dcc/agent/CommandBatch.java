@@ -0,0 +1,132 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.agent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.metaeffekt.core.commons.annotation.Public;
+import org.metaeffekt.dcc.commons.domain.Id;
+import org.metaeffekt.dcc.commons.domain.Type.PackageId;
+import org.metaeffekt.dcc.commons.domain.Type.UnitId;
+
+/**
+ * Ordered list of unit commands transferred to the agent with a single request. The order of the
+ * entries is the execution order; it must respect the dependencies between the units. The agent
+ * executes the entries sequentially and stops at the first failure. The remaining entries are reported
+ * as skipped.
+ * <p>
+ * The request is a multipart request with the batch descriptor (see {@link #toProperties()}) in part
+ * {@link #BATCH_PART} and the properties of the entries in parts named by {@link #partName(int, String)}.
+ * The response is a zip with the results in {@link #RESULT_ENTRY} followed by the state changes in
+ * {@link #STATE_ENTRY}.
+ */
+@Public
+public class CommandBatch {
+
+    public static final String BATCH_PART = "batch";
+
+    public static final String RESULT_ENTRY = "batch-result.properties";
+    public static final String STATE_ENTRY = "state.zip";
+
+    public static final String STATUS_SUCCESS = "success";
+    public static final String STATUS_FAILED = "failed";
+    public static final String STATUS_SKIPPED = "skipped";
+
+    private static final String KEY_COUNT = "entry.count";
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    public void add(Id<UnitId> unitId, Id<PackageId> packageId, String command) {
+        entries.add(new Entry(unitId, packageId, command));
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public Properties toProperties() {
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_COUNT, String.valueOf(entries.size()));
+        for (int i = 0; i < entries.size(); i++) {
+            final Entry entry = entries.get(i);
+            properties.setProperty(key(i, "unit"), entry.getUnitId().getValue());
+            properties.setProperty(key(i, "package"), entry.getPackageId().getValue());
+            properties.setProperty(key(i, "command"), entry.getCommand());
+        }
+        return properties;
+    }
+
+    public static CommandBatch fromProperties(Properties properties) {
+        final CommandBatch batch = new CommandBatch();
+        final int count = Integer.parseInt(properties.getProperty(KEY_COUNT, "0"));
+        for (int i = 0; i < count; i++) {
+            batch.add(Id.createUnitId(properties.getProperty(key(i, "unit"))),
+                Id.createPackageId(properties.getProperty(key(i, "package"))),
+                properties.getProperty(key(i, "command")));
+        }
+        return batch;
+    }
+
+    /**
+     * @param index The index of the entry.
+     * @param part The part (e.g. command properties or prerequisites properties).
+     * @return The name of the multipart part holding the given part of the entry.
+     */
+    public static String partName(int index, String part) {
+        return index + "." + part;
+    }
+
+    public static String statusKey(int index) {
+        return key(index, "status");
+    }
+
+    public static String messageKey(int index) {
+        return key(index, "message");
+    }
+
+    private static String key(int index, String suffix) {
+        return "entry." + index + "." + suffix;
+    }
+
+    public static class Entry {
+
+        private final Id<UnitId> unitId;
+        private final Id<PackageId> packageId;
+        private final String command;
+
+        Entry(Id<UnitId> unitId, Id<PackageId> packageId, String command) {
+            this.unitId = unitId;
+            this.packageId = packageId;
+            this.command = command;
+        }
+
+        public Id<UnitId> getUnitId() {
+            return unitId;
+        }
+
+        public Id<PackageId> getPackageId() {
+            return packageId;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+    }
+
+}
@@ -20,12 +20,9 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.tools.ant.BuildException;
-import org.apache.tools.ant.DirectoryScanner;
 import org.restlet.Component;
 import org.restlet.Server;
 import org.restlet.data.Parameter;
@@ -37,7 +34,7 @@ import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
-import org.metaeffekt.dcc.commons.domain.Id;
+import org.metaeffekt.dcc.commons.properties.SystemPropertyScope;
 
 public class DccAgent {
 
@@ -87,6 +84,8 @@ public class DccAgent {
 
     private boolean started = false;
 
+    private ProcessWatchdog watchdog;
+
     public static void main(String[] args) throws Exception {
         DccAgent agent = new DccAgent();
         agent.start();
@@ -105,6 +104,9 @@ public class DccAgent {
     }
 
     public void start() throws Exception {
+        // system properties set by scripts executed in the agent jvm are confined to their execution
+        SystemPropertyScope.install();
+
         LOG.debug("Starting DCC Agent application context...");
         ctx = new ClassPathXmlApplicationContext("classpath:/META-INF/dcc-agent-context.xml");
 
@@ -129,8 +131,9 @@ public class DccAgent {
         @SuppressWarnings("unchecked")
         List<Parameter> sslConfiguration = ctx.getBean("sslConfiguration", List.class);
         Server httpServer = new Server(Protocol.valueOf(DccAgentEndpoint.DEFAULT_PROTOCOL), port);
+        // keep connections open; the controller reuses connections across requests (saves TLS handshakes)
         restletComponent.getServers().getContext().getParameters()
-                .add("persistingConnections", Boolean.FALSE.toString());
+                .add("persistingConnections", Boolean.TRUE.toString());
 
         restletComponent.getServers().add(httpServer);
 
@@ -180,101 +183,30 @@ public class DccAgent {
 
     }
 
-    private void registerProcessWatchdog(BeanFactory beanFactory, PropertySource propertySource) {
-        final AgentScriptExecutor scriptExecutor = ctx.getBean("agentScriptExecutor", AgentScriptExecutor.class);
-        final long waitPeriodInSeconds = Integer.parseInt(propertySource.getProperty("dcc.agent.watchdog.interval", "60"));
-        
-        Runnable watchdog = new Runnable() {
-            @Override
-            public void run() {
-                while (true) {
-                    LOG.debug("Process watchdog scanning environment...");
-
-                    // scan the config directories of all deployments
-                    DirectoryScanner scanner = new DirectoryScanner();
-                    
-                    scanner.setBasedir(scriptExecutor.getDestinationBaseDir());
-                    scanner.setFollowSymlinks(false);
-                    scanner.setIncludes(new String[] {"*/config/*/start.properties"});
-                    scanner.scan();
-                    
-                    String[] foundFiles = scanner.getIncludedFiles();
-                    
-                    // order files by timestamp
-                    Map<Long, File> timestampFileMap = new TreeMap<>();
-                    for (String startProperties : foundFiles) {
-                        final File file = new File(scriptExecutor.getDestinationBaseDir(), startProperties);
-                        if (file.exists()) {
-                            long timestamp = file.lastModified();
-                            timestampFileMap.put(timestamp, file);
-                        }
-                    }
-                    
-                    boolean success = true;
-                    for (Long key : timestampFileMap.keySet()) {
-                        final File file = timestampFileMap.get(key); 
-                        final String commandString = "start";
-                        if (file.exists()) {
-                            try {
-                                String content = FileUtils.readFileToString(file);
-                                try {
-                                    String unitLocation = content.substring(content.indexOf("(") + 1);
-                                    unitLocation = unitLocation.substring(0, unitLocation.indexOf(")"));
-    
-                                    String[] unitLocationSplit = unitLocation.split(":");
-    
-                                    String deploymentId = unitLocationSplit[0];
-                                    String unitId = unitLocationSplit[1];
-                                    String packageId = unitLocationSplit[2];
-    
-                                    try {
-                                        scriptExecutor.executeScript(
-                                            Id.createDeploymentId(deploymentId), 
-                                            Id.createPackageId(packageId), 
-                                            Id.createUnitId(unitId), 
-                                            commandString, file, null);
-                                    } catch (BuildException e) {
-                                        LOG.error(String.format("Failed to execute command %s on unit %s", commandString, unitId), e.getMessage());
-                                        success = false;
-                                    }
-                                } catch (Exception e1) {
-                                    LOG.error("Unable to parse meta data from properties file.", file.getAbsolutePath(), e1.getMessage());
-                                    success = false;
-                                }
-    
-                            } catch (IOException e1) {
-                                LOG.error("Unable to parse file: {}: {}.", file.getAbsolutePath(), e1.getMessage());
-                                success = false;
-                            }
-                        }
-                    }
-                    long sleepDuration = 1000 * 10;
-                    // when all scripts terminated successfully we stretch the time until we iterate
-                    // the next time. In case one had an error we continue until everything is as desired.
-                    if (success) {
-                        LOG.debug("Process watchdog sleeping for 1 minute...");
-                        sleepDuration = 1000 * waitPeriodInSeconds;
-                    }
-                    try {
-                        Thread.sleep(sleepDuration);
-                    } catch (InterruptedException e) {
-                    }
-                }
-                
-            }
-        };
-        Thread thread = new Thread(watchdog);
-        thread.setDaemon(true);
-        thread.start();
+    private void registerProcessWatchdog(BeanFactory beanFactory, PropertySource propertySource) throws IOException {
+        final AgentScriptExecutor scriptExecutor = beanFactory.getBean("agentScriptExecutor", AgentScriptExecutor.class);
+        final long interval = Long.parseLong(propertySource.getProperty("dcc.agent.watchdog.interval", "60"));
+        final long backoff = Long.parseLong(propertySource.getProperty("dcc.agent.watchdog.backoff", "10"));
+        final long maxBackoff = Long.parseLong(propertySource.getProperty("dcc.agent.watchdog.backoff.max", "900"));
+        final int threadCount = Integer.parseInt(propertySource.getProperty("dcc.agent.worker.count", "4"));
+
+        watchdog = new ProcessWatchdog(scriptExecutor, TimeUnit.SECONDS.toMillis(interval),
+            TimeUnit.SECONDS.toMillis(backoff), TimeUnit.SECONDS.toMillis(maxBackoff), threadCount);
+        watchdog.start();
     }
 
     public synchronized void stop() throws Exception {
         if (started) {
             LOG.info("Stopping DCC Agent...");
             started = false;
+            if (watchdog != null) {
+                watchdog.stop();
+                watchdog = null;
+            }
             if (ctx != null) {
                 Component restletComponent = (Component) ctx.getBean("restletComponent");
                 restletComponent.stop();
+                ctx.getBean("dccRouteBuilder", AgentRouteBuilder.class).shutdown();
                 LOG.debug("Closing Spring application context");
                 ctx.close();
                 ctx = null;
@@ -33,6 +33,16 @@ public abstract class DccAgentUriBuilder {
     public static final String PACKAGE_ID = "packageId";
     public static final String UNIT_ID = "unitId";
     public static final String COMMAND = "command";
+    public static final String REVISION = "revision";
+    public static final String EPOCH = "epoch";
+    public static final String MANIFEST = "manifest";
+    public static final String BLOBS = "blobs";
+    public static final String BATCH = "batch";
+    public static final String ASYNC = "async";
+    public static final String JOBS = "jobs";
+    public static final String JOB_ID = "jobId";
+    public static final String OFFSET = "offset";
+    public static final String WAIT = "wait";
     
     public static final String DEFAULT_HOST = "localhost";
     public static final int DEFAULT_PORT = 33036;
@@ -18,6 +18,8 @@ package org.metaeffekt.dcc.agent;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Map;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpGet;
@@ -43,6 +45,11 @@ public class DeploymentBasedEndpointUriBuilder extends DccAgentUriBuilder {
     }
     
     public HttpUriRequest buildHttpUriRequest(Commands command, Id<DeploymentId> deploymentId, HttpEntity payload) {
+        return buildHttpUriRequest(command, deploymentId, payload, Collections.<String, String>emptyMap());
+    }
+
+    public HttpUriRequest buildHttpUriRequest(Commands command, Id<DeploymentId> deploymentId, HttpEntity payload,
+            Map<String, String> parameters) {
 
         StringBuilder sb = new StringBuilder("/");
         sb.append(PATH_ROOT).append("/");
@@ -52,6 +59,9 @@ public class DeploymentBasedEndpointUriBuilder extends DccAgentUriBuilder {
 
         URIBuilder uriBuilder = createUriBuilder();
         uriBuilder.setPath(path);
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            uriBuilder.addParameter(parameter.getKey(), parameter.getValue());
+        }
         URI uri;
         try {
             uri = uriBuilder.build();
@@ -17,7 +17,10 @@ package org.metaeffekt.dcc.agent;
 
 import org.metaeffekt.dcc.commons.commands.Commands;
 import org.metaeffekt.core.commons.annotation.Public;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
 
@@ -33,21 +36,77 @@ public class HostBasedEndpointUriBuilder extends DccAgentUriBuilder {
 
 
     public HttpUriRequest buildHttpUriRequest(Commands command) {
+        return new HttpGet(buildUri(command.toString()));
+    }
+
+    /**
+     * Builds the request to determine the blobs of a solution manifest missing in the blob store of
+     * the agent.
+     * 
+     * @param manifest The {@link SolutionManifest} payload.
+     * @return The request.
+     */
+    public HttpUriRequest buildFindMissingBlobsRequest(HttpEntity manifest) {
+        HttpPost request = new HttpPost(buildUri(BLOBS));
+        request.setEntity(manifest);
+        if (requestConfig != null) {
+            request.setConfig(requestConfig);
+        }
+        return request;
+    }
+
+    /**
+     * Builds the request to upload blobs to the blob store of the agent.
+     * 
+     * @param blobs Zip payload with one entry per blob named by the hash of the blob.
+     * @return The request.
+     */
+    public HttpUriRequest buildStoreBlobsRequest(HttpEntity blobs) {
+        HttpPut request = new HttpPut(buildUri(BLOBS));
+        request.setEntity(blobs);
+        if (requestConfig != null) {
+            request.setConfig(requestConfig);
+        }
+        return request;
+    }
+
+    /**
+     * Builds the request polling the progress of an {@link AgentJob}.
+     * 
+     * @param jobId The job id.
+     * @param offset The number of output lines already received.
+     * @param waitMillis The time the agent waits for new output.
+     * @return The request.
+     */
+    public HttpUriRequest buildJobProgressRequest(String jobId, long offset, long waitMillis) {
+        URIBuilder uriBuilder = createUriBuilder();
+        uriBuilder.setPath("/" + PATH_ROOT + "/" + JOBS + "/" + jobId);
+        uriBuilder.addParameter(OFFSET, String.valueOf(offset));
+        uriBuilder.addParameter(WAIT, String.valueOf(waitMillis));
+        try {
+            HttpGet request = new HttpGet(uriBuilder.build());
+            if (requestConfig != null) {
+                request.setConfig(requestConfig);
+            }
+            return request;
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
+    private URI buildUri(String resource) {
         StringBuilder sb = new StringBuilder("/");
         sb.append(PATH_ROOT).append("/");
-        sb.append(command);
+        sb.append(resource);
         String path = sb.toString();
 
         URIBuilder uriBuilder = createUriBuilder();
         uriBuilder.setPath(path);
-        URI uri;
         try {
-            uri = uriBuilder.build();
+            return uriBuilder.build();
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         }
-        return new HttpGet(uri);
     }
 
 
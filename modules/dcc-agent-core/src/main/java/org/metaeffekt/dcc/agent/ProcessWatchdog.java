@@ -0,0 +1,434 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.agent;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.metaeffekt.dcc.commons.DccProperties;
+import org.metaeffekt.dcc.commons.domain.Id;
+
+/**
+ * Watchdog restarting the units started on this agent. The watchdog keeps a registry of the units
+ * with a persisted start state ({@code <deployment>/config/<unit>/start.properties}). After an
+ * initial scan the registry is maintained by a {@link WatchService}; the destination directory is
+ * not rescanned.
+ * <p>
+ * Each unit is checked periodically. When the unit provides a pid file
+ * ({@link DccProperties#DCC_WATCHDOG_PID_FILE}) or a port ({@link DccProperties#DCC_WATCHDOG_PORT})
+ * the watchdog probes the process and only runs the start script in case the probe fails. Units
+ * without probe run the start script on each check as before. Checks of different units run in
+ * parallel; failed starts are retried with an exponential backoff per unit.
+ */
+class ProcessWatchdog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessWatchdog.class);
+
+    static final String START_PROPERTIES = "start.properties";
+
+    private static final String CONFIG_DIR = "config";
+
+    private static final String COMMAND_START = "start";
+
+    private static final int PROBE_TIMEOUT_MILLIS = 1000;
+
+    // directory levels below the destination base dir: <deployment>/config/<unit>
+    private static final int LEVEL_BASE = 0;
+    private static final int LEVEL_DEPLOYMENT = 1;
+    private static final int LEVEL_CONFIG = 2;
+    private static final int LEVEL_UNIT = 3;
+
+    private final AgentScriptExecutor scriptExecutor;
+
+    private final long intervalMillis;
+
+    private final long initialBackoffMillis;
+
+    private final long maxBackoffMillis;
+
+    private final int threadCount;
+
+    private final Map<File, WatchedUnit> units = new ConcurrentHashMap<>();
+
+    private final Map<WatchKey, WatchedDir> watchedDirs = new ConcurrentHashMap<>();
+
+    private WatchService watchService;
+
+    private ScheduledExecutorService executor;
+
+    private volatile boolean running;
+
+    /**
+     * @param scriptExecutor The executor running the start scripts.
+     * @param intervalMillis The interval in which started units are checked.
+     * @param initialBackoffMillis The delay after the first failed start; doubled with each failure.
+     * @param maxBackoffMillis The maximum delay between failed starts.
+     * @param threadCount The number of units checked in parallel.
+     */
+    ProcessWatchdog(AgentScriptExecutor scriptExecutor, long intervalMillis, long initialBackoffMillis,
+            long maxBackoffMillis, int threadCount) {
+        Validate.notNull(scriptExecutor, "The script executor must not be null.");
+        Validate.isTrue(intervalMillis > 0, "The interval must be positive.");
+        Validate.isTrue(initialBackoffMillis > 0, "The backoff must be positive.");
+        Validate.isTrue(threadCount > 0, "The thread count must be positive.");
+        this.scriptExecutor = scriptExecutor;
+        this.intervalMillis = intervalMillis;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = Math.max(initialBackoffMillis, maxBackoffMillis);
+        this.threadCount = threadCount;
+    }
+
+    public synchronized void start() throws IOException {
+        Validate.validState(!running, "Process watchdog already started.");
+        final Path baseDir = scriptExecutor.getDestinationBaseDir().toPath();
+        watchService = baseDir.getFileSystem().newWatchService();
+        executor = Executors.newScheduledThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "dcc-watchdog-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        running = true;
+
+        // the directories are registered before they are listed; no start state can be missed
+        scan(baseDir, LEVEL_BASE, 0);
+        LOG.info("Process watchdog started; watching [{}] started units.", units.size());
+
+        final Thread eventThread = new Thread(this::processEvents, "dcc-watchdog-events");
+        eventThread.setDaemon(true);
+        eventThread.start();
+    }
+
+    public synchronized void stop() {
+        if (running) {
+            running = false;
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Cannot close watch service: {}", e.getMessage());
+            }
+            executor.shutdownNow();
+            units.clear();
+            watchedDirs.clear();
+            LOG.info("Process watchdog stopped.");
+        }
+    }
+
+    boolean isWatched(File startPropertiesFile) {
+        return units.containsKey(startPropertiesFile.getAbsoluteFile());
+    }
+
+    private void processEvents() {
+        while (running) {
+            final WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+            final WatchedDir dir = watchedDirs.get(key);
+            if (dir != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    try {
+                        if (event.kind() == OVERFLOW) {
+                            rescan();
+                        } else {
+                            handleEvent(dir, event.kind(), dir.path.resolve((Path) event.context()));
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        LOG.error("Process watchdog failed to handle file system event.", e);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                // the directory is no longer accessible
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    private void handleEvent(WatchedDir dir, WatchEvent.Kind<?> kind, Path path) throws IOException {
+        if (kind == ENTRY_DELETE) {
+            unregisterAll(path.toFile());
+        } else if (dir.level == LEVEL_UNIT) {
+            if (START_PROPERTIES.equals(path.getFileName().toString())) {
+                // the unit has just been started by the controller; check with the next interval
+                register(path.toFile(), intervalMillis, true);
+            }
+        } else if (kind == ENTRY_CREATE && isWatchedDir(path, dir.level + 1)) {
+            scan(path, dir.level + 1, intervalMillis);
+        }
+    }
+
+    private void rescan() throws IOException {
+        LOG.debug("Process watchdog missed file system events; rescanning.");
+        final Iterator<WatchedUnit> iterator = units.values().iterator();
+        while (iterator.hasNext()) {
+            final WatchedUnit unit = iterator.next();
+            if (!unit.file.exists()) {
+                iterator.remove();
+                cancel(unit);
+            }
+        }
+        scan(scriptExecutor.getDestinationBaseDir().toPath(), LEVEL_BASE, intervalMillis);
+    }
+
+    private void scan(Path dir, int level, long delayMillis) throws IOException {
+        if (level == LEVEL_UNIT) {
+            watchedDirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE),
+                new WatchedDir(dir, level));
+            final File file = dir.resolve(START_PROPERTIES).toFile();
+            if (file.isFile()) {
+                register(file, delayMillis, false);
+            }
+        } else {
+            watchedDirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE), new WatchedDir(dir, level));
+            final File[] children = dir.toFile().listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    if (isWatchedDir(child.toPath(), level + 1)) {
+                        scan(child.toPath(), level + 1, delayMillis);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isWatchedDir(Path path, int level) {
+        if (level > LEVEL_UNIT || !path.toFile().isDirectory()) {
+            return false;
+        }
+        return level != LEVEL_CONFIG || CONFIG_DIR.equals(path.getFileName().toString());
+    }
+
+    private void register(File file, long delayMillis, boolean reset) {
+        final File key = file.getAbsoluteFile();
+        final WatchedUnit unit = units.computeIfAbsent(key, WatchedUnit::new);
+        synchronized (unit) {
+            if (reset || unit.future == null) {
+                unit.failures = 0;
+                schedule(unit, delayMillis);
+            }
+        }
+    }
+
+    private void unregisterAll(File path) {
+        final Path deleted = path.getAbsoluteFile().toPath();
+        final Iterator<WatchedUnit> iterator = units.values().iterator();
+        while (iterator.hasNext()) {
+            final WatchedUnit unit = iterator.next();
+            if (unit.file.toPath().startsWith(deleted)) {
+                iterator.remove();
+                cancel(unit);
+                LOG.debug("Process watchdog no longer watches [{}].", unit.file);
+            }
+        }
+    }
+
+    private void schedule(WatchedUnit unit, long delayMillis) {
+        synchronized (unit) {
+            cancel(unit);
+            if (running) {
+                unit.future = executor.schedule(() -> check(unit), delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static void cancel(WatchedUnit unit) {
+        synchronized (unit) {
+            if (unit.future != null) {
+                unit.future.cancel(false);
+            }
+        }
+    }
+
+    private boolean isRegistered(WatchedUnit unit) {
+        return running && units.get(unit.file) == unit;
+    }
+
+    private void check(WatchedUnit unit) {
+        if (!isRegistered(unit)) {
+            return;
+        }
+        long delayMillis = intervalMillis;
+        try {
+            final String content = FileUtils.readFileToString(unit.file, StandardCharsets.ISO_8859_1);
+            final Properties properties = new Properties();
+            properties.load(new StringReader(content));
+
+            if (isAlive(properties)) {
+                LOG.debug("Process watchdog probed [{}] successfully.", unit.file);
+            } else if (isRegistered(unit) && unit.file.exists()) {
+                final String[] unitLocation = parseUnitLocation(content);
+                LOG.debug("Process watchdog starting unit [{}].", unitLocation[1]);
+                scriptExecutor.executeScript(
+                    Id.createDeploymentId(unitLocation[0]),
+                    Id.createPackageId(unitLocation[2]),
+                    Id.createUnitId(unitLocation[1]),
+                    COMMAND_START, unit.file, null);
+            }
+            unit.failures = 0;
+        } catch (IOException | RuntimeException e) {
+            unit.failures++;
+            delayMillis = backoff(unit.failures);
+            LOG.error("Process watchdog failed to start unit [{}] ({} consecutive failures; retrying in [{}] ms): {}",
+                unit.file, unit.failures, delayMillis, e.getMessage());
+        }
+        if (isRegistered(unit)) {
+            schedule(unit, delayMillis);
+        }
+    }
+
+    long backoff(int failures) {
+        final int exponent = Math.min(failures - 1, 30);
+        return Math.min(initialBackoffMillis << exponent, maxBackoffMillis);
+    }
+
+    /**
+     * Probes the process of a started unit.
+     *
+     * @param properties The execution properties of the start command.
+     * @return {@code true} in case a probe is available and all available probes succeeded.
+     */
+    static boolean isAlive(Properties properties) {
+        boolean probed = false;
+
+        final String pidFile = properties.getProperty(DccProperties.DCC_WATCHDOG_PID_FILE);
+        if (pidFile != null) {
+            final Boolean alive = isProcessAlive(new File(pidFile));
+            if (Boolean.FALSE.equals(alive)) {
+                return false;
+            }
+            probed |= alive != null;
+        }
+
+        final String port = properties.getProperty(DccProperties.DCC_WATCHDOG_PORT);
+        if (port != null) {
+            if (!isPortOpen(Integer.parseInt(port.trim()))) {
+                return false;
+            }
+            probed = true;
+        }
+        return probed;
+    }
+
+    /**
+     * @return Whether the process referenced by the pid file exists or {@code null} in case the
+     *   process table cannot be inspected on this platform.
+     */
+    private static Boolean isProcessAlive(File pidFile) {
+        if (!pidFile.isFile()) {
+            return false;
+        }
+        final File processTable = new File("/proc");
+        if (!processTable.isDirectory()) {
+            return null;
+        }
+        try {
+            final String pid = FileUtils.readFileToString(pidFile, StandardCharsets.ISO_8859_1).trim();
+            return pid.matches("\\d+") && new File(processTable, pid).isDirectory();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isPortOpen(int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), PROBE_TIMEOUT_MILLIS);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses the unit location from the header comment of the start properties.
+     *
+     * @return The deployment id, the unit id and the package id.
+     */
+    static String[] parseUnitLocation(String content) {
+        final int start = content.indexOf('(');
+        final int end = content.indexOf(')', start + 1);
+        if (start < 0 || end < 0) {
+            throw new IllegalArgumentException("Unable to parse meta data from properties file.");
+        }
+        final String[] unitLocation = content.substring(start + 1, end).split(":");
+        if (unitLocation.length < 3) {
+            throw new IllegalArgumentException("Unable to parse meta data from properties file.");
+        }
+        return unitLocation;
+    }
+
+    private static final class WatchedUnit {
+
+        private final File file;
+
+        private int failures;
+
+        private ScheduledFuture<?> future;
+
+        private WatchedUnit(File file) {
+            this.file = file;
+        }
+    }
+
+    private static final class WatchedDir {
+
+        private final Path path;
+
+        private final int level;
+
+        private WatchedDir(Path path, int level) {
+            this.path = path;
+            this.level = level;
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.agent;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.metaeffekt.core.commons.annotation.Public;
+import org.metaeffekt.dcc.commons.DccUtils;
+
+/**
+ * Describes the content of a solution location as list of relative paths and the SHA-256 hashes of
+ * the file contents. Directories are listed with {@link #DIRECTORY} instead of a hash.
+ * <p>
+ * The manifest is exchanged between controller and agent in a line-based format similar to the
+ * output of {@code sha256sum}: {@code <hash> <path>}.
+ */
+@Public
+public class SolutionManifest {
+
+    public static final String DIRECTORY = "-";
+
+    private final Map<String, String> entries = new LinkedHashMap<>();
+
+    /**
+     * Maps the hashes to the first path with the hash. Built on first lookup; the entries are not
+     * modified after the manifest was created or read.
+     */
+    private volatile Map<String, String> paths;
+
+    /**
+     * Creates a manifest for the given solution directory.
+     *
+     * @param solutionDir The solution directory.
+     * @param includedFolders The top-level folders to include. All folders are included in case the set is
+     *   empty.
+     * @return The manifest.
+     * @throws IOException In case the solution directory cannot be read.
+     */
+    public static SolutionManifest create(File solutionDir, Set<String> includedFolders) throws IOException {
+        final SolutionManifest manifest = new SolutionManifest();
+        final Path rootDirectory = solutionDir.toPath().toAbsolutePath();
+        manifest.addDirectoryContents(rootDirectory, rootDirectory, includedFolders);
+        return manifest;
+    }
+
+    /**
+     * Reads a manifest written with {@link #write(OutputStream)}.
+     *
+     * @param in The stream to read from. The stream is not closed.
+     * @return The manifest.
+     * @throws IOException In case the stream cannot be read.
+     */
+    public static SolutionManifest read(InputStream in) throws IOException {
+        final SolutionManifest manifest = new SolutionManifest();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                final int separator = line.indexOf(' ');
+                if (separator <= 0) {
+                    throw new IOException("Malformed manifest entry: " + line);
+                }
+                manifest.entries.put(line.substring(separator + 1), line.substring(0, separator));
+            }
+        }
+        return manifest;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            writer.write(entry.getValue());
+            writer.write(' ');
+            writer.write(entry.getKey());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * @return The entries of the manifest mapping the relative path to the hash (or {@link #DIRECTORY}).
+     */
+    public Map<String, String> getEntries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * @return The distinct hashes of all files in the manifest.
+     */
+    public Set<String> getHashes() {
+        final Set<String> hashes = new LinkedHashSet<>();
+        for (String hash : entries.values()) {
+            if (!DIRECTORY.equals(hash)) {
+                hashes.add(hash);
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Returns a path of a file with the given hash.
+     *
+     * @param hash The hash.
+     * @return The relative path or {@code null} in case no file with the hash is included.
+     */
+    public String getPath(String hash) {
+        Map<String, String> paths = this.paths;
+        if (paths == null) {
+            paths = new HashMap<>();
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                if (!DIRECTORY.equals(entry.getValue())) {
+                    paths.putIfAbsent(entry.getValue(), entry.getKey());
+                }
+            }
+            this.paths = paths;
+        }
+        return paths.get(hash);
+    }
+
+    private void addDirectoryContents(Path rootDirectory, Path directory, Set<String> includes)
+            throws IOException {
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+            for (Path path : directoryStream) {
+                final String name = rootDirectory.relativize(path).toString().replace('\\', '/');
+                if (includes == null || includes.isEmpty() || includes.contains(name)) {
+                    if (Files.isDirectory(path)) {
+                        entries.put(name + "/", DIRECTORY);
+                        addDirectoryContents(rootDirectory, path, null);
+                    } else {
+                        entries.put(name, DccUtils.sha256Hex(path.toFile()));
+                    }
+                }
+            }
+        }
+    }
+
+}
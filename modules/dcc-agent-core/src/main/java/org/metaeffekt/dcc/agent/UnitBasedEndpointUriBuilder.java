@@ -17,6 +17,7 @@ package org.metaeffekt.dcc.agent;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
 import java.util.Map;
 
 import org.apache.commons.lang3.Validate;
@@ -40,6 +41,12 @@ import org.metaeffekt.core.commons.annotation.Public;
 public class UnitBasedEndpointUriBuilder extends DccAgentUriBuilder {
 
     public HttpUriRequest buildHttpUriRequest(Commands command, Id<DeploymentId> deploymentId, Id<UnitId> unitId, Id<PackageId> packageId, Map<String, byte[]> executionProperties) {
+        return buildHttpUriRequest(command, deploymentId, unitId, packageId, executionProperties,
+            Collections.<String, String>emptyMap());
+    }
+
+    public HttpUriRequest buildHttpUriRequest(Commands command, Id<DeploymentId> deploymentId, Id<UnitId> unitId,
+            Id<PackageId> packageId, Map<String, byte[]> executionProperties, Map<String, String> parameters) {
         Validate.isTrue(executionProperties != null && !executionProperties.isEmpty());
 
         StringBuilder sb = new StringBuilder("/");
@@ -52,6 +59,9 @@ public class UnitBasedEndpointUriBuilder extends DccAgentUriBuilder {
 
         URIBuilder uriBuilder = createUriBuilder();
         uriBuilder.setPath(path);
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            uriBuilder.addParameter(parameter.getKey(), parameter.getValue());
+        }
         URI uri;
         try {
             uri = uriBuilder.build();
@@ -72,6 +82,51 @@ public class UnitBasedEndpointUriBuilder extends DccAgentUriBuilder {
         return put;
     }
 
+    /**
+     * Builds the request executing a {@link CommandBatch}.
+     * 
+     * @param deploymentId The deployment id.
+     * @param parts The multipart parts; the batch descriptor and the properties of the entries.
+     * @param parameters Query parameters (e.g. the revision of the state last received).
+     * @return The request.
+     */
+    public HttpUriRequest buildBatchHttpUriRequest(Id<DeploymentId> deploymentId, Map<String, byte[]> parts,
+            Map<String, String> parameters) {
+        StringBuilder sb = new StringBuilder("/");
+        sb.append(PATH_ROOT).append("/");
+        sb.append(deploymentId).append("/");
+        sb.append(BATCH);
+        String path = sb.toString();
+
+        URIBuilder uriBuilder = createUriBuilder();
+        uriBuilder.setPath(path);
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            uriBuilder.addParameter(parameter.getKey(), parameter.getValue());
+        }
+        URI uri;
+        try {
+            uri = uriBuilder.build();
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+        HttpPut put = new HttpPut(uri);
+
+        final MultipartEntityBuilder multipartBuilder = MultipartEntityBuilder.create();
+        for (Map.Entry<String, byte[]> entry : parts.entrySet()) {
+            multipartBuilder.addBinaryBody(entry.getKey(), entry.getValue());
+        }
+
+        put.setEntity(multipartBuilder.build());
+        if (requestConfig != null) {
+            put.setConfig(requestConfig);
+        }
+        return put;
+    }
+
+    public String buildBatchRestletResourceUri() {
+        return "resource:" + PATH_ROOT + "/{" + DEPLOYMENT_ID + "}/" + BATCH + "?restletMethod=" + HTTP_PUT;
+    }
+
     public String buildRestletResourceUri() {
         return "resource:" + PATH_ROOT + "/{" + DEPLOYMENT_ID + "}/packages/{" + PACKAGE_ID + "}/units/{" 
                 + UNIT_ID + "}/{" + COMMAND + "}?restletMethod=" + HTTP_PUT;
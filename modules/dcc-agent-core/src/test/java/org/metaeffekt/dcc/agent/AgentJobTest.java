@@ -0,0 +1,78 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.agent;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class AgentJobTest {
+
+    @Test
+    public void progress() throws InterruptedException {
+        final AgentJob job = new AgentJob("test");
+        job.appendOutput("line 1");
+        job.appendOutput("line 2");
+
+        Properties progress = job.getProgress(0, 0);
+        assertEquals(AgentJob.STATUS_RUNNING, progress.getProperty(AgentJob.KEY_STATUS));
+        assertEquals("line 1\nline 2\n", progress.getProperty(AgentJob.KEY_OUTPUT));
+        assertEquals("2", progress.getProperty(AgentJob.KEY_OFFSET));
+
+        job.appendOutput("line 3");
+        job.failed("broken");
+
+        progress = job.getProgress(2, 1000);
+        assertEquals(AgentJob.STATUS_FAILED, progress.getProperty(AgentJob.KEY_STATUS));
+        assertEquals("line 3\n", progress.getProperty(AgentJob.KEY_OUTPUT));
+        assertEquals("broken", progress.getProperty(AgentJob.KEY_MESSAGE));
+    }
+
+    @Test
+    public void completedJob() throws Exception {
+        final AgentJobs jobs = new AgentJobs();
+        try {
+            final AgentJob job = jobs.submit("test", j -> j.appendOutput("done"));
+            final Properties progress = jobs.getJob(job.getId()).getProgress(1, 5000);
+            assertEquals(AgentJob.STATUS_SUCCESS, progress.getProperty(AgentJob.KEY_STATUS));
+        } finally {
+            jobs.shutdown();
+        }
+    }
+
+    @Test
+    public void jobFailedWithError() throws Exception {
+        final AgentJobs jobs = new AgentJobs();
+        try {
+            final AgentJob job = jobs.submit("test", j -> {
+                throw new NoClassDefFoundError("missing");
+            });
+            final Properties progress = jobs.getJob(job.getId()).getProgress(0, 5000);
+            assertEquals(AgentJob.STATUS_FAILED, progress.getProperty(AgentJob.KEY_STATUS));
+            assertEquals("java.lang.NoClassDefFoundError: missing", progress.getProperty(AgentJob.KEY_MESSAGE));
+        } finally {
+            jobs.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownJob() {
+        new AgentJobs().getJob("unknown");
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlobStoreTest {
+
+    private File solutionDir;
+    private File targetDir;
+    private BlobStore blobStore;
+
+    @Before
+    public void prepare() throws IOException {
+        final File baseDir = new File("target/blob-store-test");
+        FileUtils.deleteQuietly(baseDir);
+
+        solutionDir = new File(baseDir, "solution");
+        targetDir = new File(baseDir, "target");
+        blobStore = new BlobStore(new File(baseDir, "blobs"));
+
+        FileUtils.write(new File(solutionDir, "lib/a.jar"), "a", StandardCharsets.UTF_8);
+        FileUtils.write(new File(solutionDir, "lib/copy-of-a.jar"), "a", StandardCharsets.UTF_8);
+        FileUtils.write(new File(solutionDir, "packages/b.xml"), "b", StandardCharsets.UTF_8);
+        FileUtils.write(new File(solutionDir, "excluded/c.txt"), "c", StandardCharsets.UTF_8);
+        new File(solutionDir, "hooks").mkdirs();
+    }
+
+    @Test
+    public void manifest() throws IOException {
+        final SolutionManifest manifest = createManifest();
+
+        assertTrue(manifest.getEntries().containsKey("lib/a.jar"));
+        assertTrue(manifest.getEntries().containsKey("hooks/"));
+        assertFalse(manifest.getEntries().containsKey("excluded/c.txt"));
+        assertEquals(2, manifest.getHashes().size());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifest.write(out);
+        final SolutionManifest readManifest = SolutionManifest.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(manifest.getEntries(), readManifest.getEntries());
+    }
+
+    @Test
+    public void storeAndMaterialize() throws IOException {
+        final SolutionManifest manifest = createManifest();
+
+        final Set<String> missing = blobStore.findMissing(manifest.getHashes());
+        assertEquals(manifest.getHashes(), missing);
+
+        for (String hash : missing) {
+            try (InputStream in = new FileInputStream(new File(solutionDir, manifest.getPath(hash)))) {
+                blobStore.store(hash, in);
+            }
+        }
+        assertTrue(blobStore.findMissing(manifest.getHashes()).isEmpty());
+
+        blobStore.materialize(manifest, targetDir);
+
+        assertEquals("a", FileUtils.readFileToString(new File(targetDir, "lib/copy-of-a.jar"), StandardCharsets.UTF_8));
+        assertEquals("b", FileUtils.readFileToString(new File(targetDir, "packages/b.xml"), StandardCharsets.UTF_8));
+        assertTrue(new File(targetDir, "hooks").isDirectory());
+        assertFalse(new File(targetDir, "excluded").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectCorruptBlob() throws IOException {
+        final String hash = createManifest().getEntries().get("lib/a.jar");
+        blobStore.store(hash, new ByteArrayInputStream("corrupt".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void materializeWithMissingBlobs() throws IOException {
+        blobStore.materialize(createManifest(), targetDir);
+    }
+
+    private SolutionManifest createManifest() throws IOException {
+        return SolutionManifest.create(solutionDir, new HashSet<>(Arrays.asList("lib", "packages", "hooks")));
+    }
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.agent;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import org.metaeffekt.dcc.commons.domain.Id;
+
+public class CommandBatchTest {
+
+    @Test
+    public void roundTrip() {
+        final CommandBatch batch = new CommandBatch();
+        batch.add(Id.createUnitId("unit-a"), Id.createPackageId("package-a"), "install");
+        batch.add(Id.createUnitId("unit-b"), Id.createPackageId("package-b"), "install");
+
+        final CommandBatch readBatch = CommandBatch.fromProperties(batch.toProperties());
+
+        assertEquals(2, readBatch.getEntries().size());
+        assertEquals(Id.createUnitId("unit-a"), readBatch.getEntries().get(0).getUnitId());
+        assertEquals(Id.createUnitId("unit-b"), readBatch.getEntries().get(1).getUnitId());
+        assertEquals(Id.createPackageId("package-b"), readBatch.getEntries().get(1).getPackageId());
+        assertEquals("install", readBatch.getEntries().get(1).getCommand());
+    }
+
+}
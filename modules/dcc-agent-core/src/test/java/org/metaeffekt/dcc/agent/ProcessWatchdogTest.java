@@ -0,0 +1,176 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.agent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.metaeffekt.dcc.commons.DccProperties;
+import org.metaeffekt.dcc.commons.domain.Id;
+import org.metaeffekt.dcc.commons.domain.Type.DeploymentId;
+import org.metaeffekt.dcc.commons.domain.Type.PackageId;
+import org.metaeffekt.dcc.commons.domain.Type.UnitId;
+
+public class ProcessWatchdogTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final Map<String, AtomicInteger> starts = new ConcurrentHashMap<>();
+
+    private File baseDir;
+
+    private ProcessWatchdog watchdog;
+
+    @Before
+    public void prepare() throws IOException {
+        baseDir = new File("target/process-watchdog-test");
+        FileUtils.deleteQuietly(baseDir);
+        baseDir.mkdirs();
+
+        final AgentScriptExecutor scriptExecutor = new AgentScriptExecutor(new File(baseDir, "data"), baseDir) {
+            @Override
+            public void executeScript(Id<DeploymentId> deploymentId, Id<PackageId> packageId,
+                    Id<UnitId> unitId, String commandString, File executionPropertiesFile,
+                    File prerequisitesPropertiesFile) {
+                assertEquals("start", commandString);
+                starts.computeIfAbsent(unitId.getValue(), id -> new AtomicInteger()).incrementAndGet();
+            }
+        };
+        watchdog = new ProcessWatchdog(scriptExecutor, 200, 100, 400, 2);
+    }
+
+    @After
+    public void cleanup() {
+        watchdog.stop();
+    }
+
+    @Test
+    public void restartsRegisteredUnits() throws Exception {
+        final File existing = writeStartProperties("unit-a", new Properties());
+        watchdog.start();
+        assertTrue(watchdog.isWatched(existing));
+        awaitStarts("unit-a", 2);
+
+        // units started after the watchdog are registered through file system events
+        final File created = writeStartProperties("unit-b", new Properties());
+        awaitWatched(created, true);
+        awaitStarts("unit-b", 1);
+
+        // stopped units are no longer restarted
+        FileUtils.forceDelete(created);
+        awaitWatched(created, false);
+        Thread.sleep(300);
+        final int count = starts.get("unit-b").get();
+        Thread.sleep(600);
+        assertEquals(count, starts.get("unit-b").get());
+    }
+
+    @Test
+    public void skipsUnitsWithOpenPort() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final Properties properties = new Properties();
+            properties.setProperty(DccProperties.DCC_WATCHDOG_PORT, String.valueOf(serverSocket.getLocalPort()));
+            assertTrue(ProcessWatchdog.isAlive(properties));
+
+            writeStartProperties("unit-a", properties);
+            writeStartProperties("unit-b", new Properties());
+            watchdog.start();
+            awaitStarts("unit-b", 3);
+            assertFalse(starts.containsKey("unit-a"));
+        }
+    }
+
+    @Test
+    public void probes() throws IOException {
+        assertFalse(ProcessWatchdog.isAlive(new Properties()));
+
+        final Properties properties = new Properties();
+        properties.setProperty(DccProperties.DCC_WATCHDOG_PID_FILE, new File(baseDir, "missing.pid").getPath());
+        assertFalse(ProcessWatchdog.isAlive(properties));
+
+        if (new File("/proc/self").isDirectory()) {
+            final File pidFile = new File(baseDir, "test.pid");
+            FileUtils.write(pidFile, new File("/proc/self").getCanonicalFile().getName(), StandardCharsets.ISO_8859_1);
+            properties.setProperty(DccProperties.DCC_WATCHDOG_PID_FILE, pidFile.getPath());
+            assertTrue(ProcessWatchdog.isAlive(properties));
+        }
+    }
+
+    @Test
+    public void backoff() {
+        assertEquals(100, watchdog.backoff(1));
+        assertEquals(200, watchdog.backoff(2));
+        assertEquals(400, watchdog.backoff(3));
+        assertEquals(400, watchdog.backoff(100));
+    }
+
+    @Test
+    public void parseUnitLocation() {
+        assertArrayEquals(new String[] {"deployment", "unit", "package"},
+            ProcessWatchdog.parseUnitLocation("#Execution properties (deployment:unit:package)\na=(b)\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnitLocationWithoutComment() {
+        ProcessWatchdog.parseUnitLocation("a=b\n");
+    }
+
+    private File writeStartProperties(String unitId, Properties properties) throws IOException {
+        final File unitDir = new File(baseDir, "deployment/config/" + unitId);
+        unitDir.mkdirs();
+        final File file = new File(unitDir, ProcessWatchdog.START_PROPERTIES);
+        final StringBuilder content = new StringBuilder("#Execution properties (deployment:" + unitId + ":package)\n");
+        for (String key : properties.stringPropertyNames()) {
+            content.append(key).append('=').append(properties.getProperty(key)).append('\n');
+        }
+        FileUtils.write(file, content, StandardCharsets.ISO_8859_1);
+        return file;
+    }
+
+    private void awaitStarts(String unitId, int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!starts.containsKey(unitId) || starts.get(unitId).get() < count) {
+            assertTrue("Unit [" + unitId + "] not started " + count + " times.", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private void awaitWatched(File file, boolean watched) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (watchdog.isWatched(file) != watched) {
+            assertTrue("Watch state of [" + file + "] not updated.", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+}
@@ -26,6 +26,9 @@ public final class DccProperties {
     public static final String DCC_PREREQUISITES_PROPERTIES = "dcc.prerequisites.properties";
     public static final String DCC_UPGRADE_PROPERTIES = "dcc.upgrade.properties";
 
+    // hash of the content of a generated execution or prerequisites properties file
+    public static final String DCC_PROPERTIES_HASH = "dcc.properties.hash";
+
     // NOTE: base dir properties are not exposed to script, but used in shell/agent configuration
     public static final String DCC_SOLUTION_BASE_DIR = "dcc.solution.base.dir";
 
@@ -97,7 +100,27 @@ public final class DccProperties {
 
     public static final String DCC_LOCAL_DESTINATION_DIR = "dcc.local.destination.dir";
 
+    // optional unit properties; allow the agent watchdog to probe a started unit without running
+    // the start script (absolute path of a file containing the pid / port accepting connections)
+    public static final String DCC_WATCHDOG_PID_FILE = "dcc.watchdog.pid.file";
+
+    public static final String DCC_WATCHDOG_PORT = "dcc.watchdog.port";
+
     public static final String DCC_SYSTEM_PROPERTY_PROFILE_VALIDATION = "dcc.profile.validation";
+
+    public static final String DCC_SYSTEM_PROPERTY_PROFILE_EVALUATION_PARALLEL = "dcc.profile.evaluation.parallel";
+
+    // execute forked ant scripts in a pool of long-living worker processes (default: false)
+    public static final String DCC_SYSTEM_PROPERTY_ANT_WORKER_POOL = "dcc.ant.worker.pool";
+
+    // maximum number of idle ant worker processes kept per ant installation
+    public static final String DCC_SYSTEM_PROPERTY_ANT_WORKER_COUNT = "dcc.ant.worker.count";
+
+    // number of scripts executed by an ant worker process before it is replaced
+    public static final String DCC_SYSTEM_PROPERTY_ANT_WORKER_RUNS = "dcc.ant.worker.runs";
+
+    // maximum time in seconds a script may run in an ant worker process before the process is killed
+    public static final String DCC_SYSTEM_PROPERTY_ANT_WORKER_TIMEOUT = "dcc.ant.worker.timeout";
     
     public static String[] DCC_DEPLOYMENT_PROPERTIES_WHITELIST = new String[] {
             DCC_LOCAL_DESTINATION_DIR,
@@ -17,7 +17,14 @@ package org.metaeffekt.dcc.commons;
 
 import static org.metaeffekt.dcc.commons.DccProperties.DCC_WORK_DIR;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import org.apache.commons.lang3.Validate;
 
@@ -215,6 +222,51 @@ public final class DccUtils {
         }
     }
     
+    /**
+     * Computes the SHA-256 hash of the given file.
+     *
+     * @param file The file to hash.
+     * @return The hash as lower-case hex string.
+     * @throws IOException In case the file cannot be read.
+     */
+    public static String sha256Hex(File file) throws IOException {
+        final MessageDigest digest = createSha256Digest();
+        try (InputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(file)), digest)) {
+            final byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // digest is updated while reading
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Computes the SHA-256 hash of the given bytes.
+     *
+     * @param bytes The bytes to hash.
+     * @return The hash as lower-case hex string.
+     */
+    public static String sha256Hex(byte[] bytes) {
+        return toHex(createSha256Digest().digest(bytes));
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest createSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported by the runtime.", e);
+        }
+    }
+
     public static final String deriveAttributeIdentifier(String uniqueContextId, String key) {
         return uniqueContextId + DccConstants.SEPARATOR_UNIT_KEY + key;
     }
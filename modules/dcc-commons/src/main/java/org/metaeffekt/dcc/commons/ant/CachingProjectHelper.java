@@ -0,0 +1,314 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.ant;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Location;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.ProjectHelperRepository;
+import org.apache.tools.ant.helper.AntXMLContext;
+import org.apache.tools.ant.helper.ProjectHelper2;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.resources.FileProvider;
+import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.ant.util.JAXPUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.LocatorImpl;
+
+/**
+ * {@link ProjectHelper2} caching the parsed content of build files. The XML of each build file
+ * (including imported files like the core macros) is parsed once per JVM; subsequent executions
+ * replay the recorded SAX events into the Ant handlers of the fresh project. The handlers still
+ * create the targets and tasks for each project, such that no state is shared between executions.
+ * <p>
+ * Cache entries are keyed by the normalized path of the file and invalidated when the modification
+ * time or the length of the file changes. Build files depending on entity resolution are not
+ * cached.
+ */
+public class CachingProjectHelper extends ProjectHelper2 {
+
+    private static final String REFID_CONTEXT = "ant.parsing.context";
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    private static final Map<File, ParsedFile> CACHE = new ConcurrentHashMap<>();
+
+    private static volatile boolean registered;
+
+    /**
+     * Registers the helper with the {@link ProjectHelperRepository} to cover imported build files.
+     */
+    public static void register() {
+        if (!registered) {
+            synchronized (CachingProjectHelper.class) {
+                if (!registered) {
+                    ProjectHelperRepository.getInstance().registerProjectHelper(CachingProjectHelper.class);
+                    registered = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears the cached build files.
+     */
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    @Override
+    public boolean canParseAntlibDescriptor(Resource resource) {
+        return false;
+    }
+
+    @Override
+    public boolean canParseBuildFile(Resource buildFile) {
+        return buildFile.as(FileProvider.class) != null;
+    }
+
+    @Override
+    public void parse(Project project, Object source, RootHandler handler) throws BuildException {
+        File buildFile = null;
+        if (source instanceof File) {
+            buildFile = (File) source;
+        } else if (source instanceof Resource) {
+            final FileProvider fileProvider = ((Resource) source).as(FileProvider.class);
+            if (fileProvider != null) {
+                buildFile = fileProvider.getFile();
+            }
+        }
+
+        final AntXMLContext context = (AntXMLContext) project.getReference(REFID_CONTEXT);
+        if (buildFile == null || context == null) {
+            super.parse(project, source, handler);
+            return;
+        }
+
+        buildFile = FILE_UTILS.normalize(buildFile.getAbsolutePath());
+        ParsedFile parsedFile = getCachedFile(buildFile);
+        if (parsedFile != null) {
+            project.log("parsing buildfile " + buildFile + " from cache", Project.MSG_VERBOSE);
+        } else {
+            parsedFile = parseFile(buildFile);
+            if (parsedFile == null) {
+                super.parse(project, source, handler);
+                return;
+            }
+            project.log("parsing buildfile " + buildFile + " into cache", Project.MSG_VERBOSE);
+        }
+
+        context.setBuildFile(buildFile);
+        try {
+            parsedFile.replay(handler);
+        } catch (SAXParseException e) {
+            final Location location = new Location(e.getSystemId(), e.getLineNumber(), e.getColumnNumber());
+            final Throwable t = e.getException();
+            if (t instanceof BuildException) {
+                final BuildException be = (BuildException) t;
+                if (be.getLocation() == Location.UNKNOWN_LOCATION) {
+                    be.setLocation(location);
+                }
+                throw be;
+            }
+            throw new BuildException(e.getMessage(), t == null ? e : t, location);
+        } catch (SAXException e) {
+            final Throwable t = e.getException();
+            if (t instanceof BuildException) {
+                throw (BuildException) t;
+            }
+            throw new BuildException(e.getMessage(), t == null ? e : t);
+        }
+    }
+
+    private static ParsedFile getCachedFile(File buildFile) {
+        final ParsedFile parsedFile = CACHE.get(buildFile);
+        if (parsedFile != null && parsedFile.lastModified == buildFile.lastModified()
+                && parsedFile.length == buildFile.length()) {
+            return parsedFile;
+        }
+        return null;
+    }
+
+    /**
+     * Parses the build file into the cache. Returns <code>null</code> in case the file cannot be
+     * cached. Errors are left to the regular parser to report them in the usual way.
+     */
+    private static ParsedFile parseFile(File buildFile) {
+        final long lastModified = buildFile.lastModified();
+        final long length = buildFile.length();
+
+        final String systemId = FILE_UTILS.toURI(buildFile.getAbsolutePath());
+        final Recorder recorder = new Recorder();
+        try (InputStream in = Files.newInputStream(buildFile.toPath())) {
+            final InputSource inputSource = new InputSource(in);
+            inputSource.setSystemId(systemId);
+            final XMLReader parser = JAXPUtils.getNamespaceXMLReader();
+            parser.setContentHandler(recorder);
+            parser.setEntityResolver(recorder);
+            parser.setErrorHandler(recorder);
+            parser.setDTDHandler(recorder);
+            parser.parse(inputSource);
+        } catch (IOException | SAXException | BuildException e) {
+            CACHE.remove(buildFile);
+            return null;
+        }
+
+        final ParsedFile parsedFile = new ParsedFile(lastModified, length, systemId, recorder.events);
+        CACHE.put(buildFile, parsedFile);
+        return parsedFile;
+    }
+
+    private static final class ParsedFile {
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final String systemId;
+
+        private final Event[] events;
+
+        ParsedFile(long lastModified, long length, String systemId, List<Event> events) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.systemId = systemId;
+            this.events = events.toArray(new Event[events.size()]);
+        }
+
+        void replay(ContentHandler handler) throws SAXException {
+            final LocatorImpl locator = new LocatorImpl();
+            locator.setSystemId(systemId);
+            handler.setDocumentLocator(locator);
+            for (Event event : events) {
+                locator.setLineNumber(event.line);
+                locator.setColumnNumber(event.column);
+                event.replay(handler);
+            }
+        }
+    }
+
+    /**
+     * Records the SAX events evaluated by the Ant handlers.
+     */
+    private static final class Recorder extends DefaultHandler {
+
+        private final List<Event> events = new ArrayList<>();
+
+        private Locator locator;
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            this.locator = locator;
+        }
+
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId) throws SAXException {
+            // entities are resolved relative to the importing build file; do not cache
+            throw new SAXException("Entity resolution not supported.");
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+            events.add(new Event(locator) {
+                @Override
+                void replay(ContentHandler handler) throws SAXException {
+                    handler.startPrefixMapping(prefix, uri);
+                }
+            });
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix) {
+            events.add(new Event(locator) {
+                @Override
+                void replay(ContentHandler handler) throws SAXException {
+                    handler.endPrefixMapping(prefix);
+                }
+            });
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName,
+                Attributes attributes) {
+            final Attributes attributesCopy = new AttributesImpl(attributes);
+            events.add(new Event(locator) {
+                @Override
+                void replay(ContentHandler handler) throws SAXException {
+                    handler.startElement(uri, localName, qName, attributesCopy);
+                }
+            });
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName, final String qName) {
+            events.add(new Event(locator) {
+                @Override
+                void replay(ContentHandler handler) throws SAXException {
+                    handler.endElement(uri, localName, qName);
+                }
+            });
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            final char[] chars = new char[length];
+            System.arraycopy(ch, start, chars, 0, length);
+            events.add(new Event(locator) {
+                @Override
+                void replay(ContentHandler handler) throws SAXException {
+                    handler.characters(chars, 0, chars.length);
+                }
+            });
+        }
+
+        @Override
+        public void fatalError(SAXParseException e) throws SAXException {
+            throw e;
+        }
+    }
+
+    private abstract static class Event {
+
+        private final int line;
+
+        private final int column;
+
+        Event(Locator locator) {
+            this.line = locator != null ? locator.getLineNumber() : -1;
+            this.column = locator != null ? locator.getColumnNumber() : -1;
+        }
+
+        abstract void replay(ContentHandler handler) throws SAXException;
+    }
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.ant;
+
+import org.apache.tools.ant.ComponentHelper;
+import org.apache.tools.ant.Project;
+
+/**
+ * Initializes projects using the task and type definitions of a template project. The default
+ * definitions are loaded once per JVM instead of once per {@link Project#init()}.
+ */
+public final class ProjectTemplate {
+
+    private ProjectTemplate() {
+    }
+
+    private static class Holder {
+        private static final Project TEMPLATE = createTemplate();
+
+        private static Project createTemplate() {
+            final Project project = new Project();
+            project.init();
+            return project;
+        }
+    }
+
+    /**
+     * Equivalent of {@link Project#init()} copying the definitions of the template project.
+     * Definitions added by the initialized project do not affect the template.
+     */
+    public static void init(Project project) {
+        ComponentHelper.getComponentHelper(project)
+            .initSubProject(ComponentHelper.getComponentHelper(Holder.TEMPLATE));
+        project.initProperties();
+    }
+
+}
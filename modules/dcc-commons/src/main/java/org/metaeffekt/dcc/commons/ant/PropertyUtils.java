@@ -31,6 +31,7 @@ import org.apache.tools.ant.util.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.metaeffekt.dcc.commons.properties.ImmutableSortedProperties;
 import org.metaeffekt.dcc.commons.properties.SortedProperties;
 
 public class PropertyUtils {
@@ -163,18 +164,25 @@ public class PropertyUtils {
     }
     
     public static void writeToFile(Properties properties, File file, String comment) throws IOException {
-        // write to memory first to prevent other side-effects
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try {
-            properties.store(baos, comment);
-        } finally {
-            baos.close();
-        }
-        
+        // take a snapshot first to prevent other side-effects
+        writeToFile(ImmutableSortedProperties.of(properties), file, comment);
+    }
+
+    /**
+     * Writes the properties sorted by key and without timestamp. The file content only depends on the
+     * properties and the comment.
+     *
+     * @param properties The properties.
+     * @param file The file.
+     * @param comment The comment. May be {@code null}.
+     * @throws IOException In case the file cannot be written.
+     */
+    public static void writeToFile(ImmutableSortedProperties properties, File file, String comment) throws IOException {
         OutputStream os = new FileOutputStream(file);
         try {
-            os.write(baos.toByteArray());
+            properties.write(os, comment);
         } catch (IOException ex) {
+            os.close();
             FileUtils.getFileUtils().tryHardToDelete(file);
             throw ex;
         } finally {
@@ -23,27 +23,55 @@ import org.metaeffekt.dcc.commons.domain.Type.UnitId;
 import org.metaeffekt.dcc.commons.exception.CyclicBindingException;
 import org.metaeffekt.dcc.commons.mapping.ConfigurationUnit;
 
+/**
+ * Dependencies between configuration units. The units are assigned dense indexes; the upstream and
+ * downstream dependencies of a unit are kept as bitset rows over these indexes. The maps returned by
+ * {@link #getUpstreamMatrix()} and {@link #getDownstreamMatrix()} are read-only views of the rows.
+ */
 public class UnitDependencies {
 
-    private Map<Id<UnitId>, List<Id<UnitId>>> upstreamMatrix;
-    private Map<Id<UnitId>, List<Id<UnitId>>> downstreamMatrix;
+    private static final byte UNVISITED = 0;
+    private static final byte ON_PATH = 1;
+    private static final byte VISITED = 2;
+
+    private final Map<Id<UnitId>, Integer> indexOfUnit;
+    private final List<Id<UnitId>> unitIds;
+
+    private final List<Row> upstreamRows;
+    private final List<Row> downstreamRows;
+
+    private final Map<Id<UnitId>, List<Id<UnitId>>> upstreamMatrix;
+    private final Map<Id<UnitId>, List<Id<UnitId>>> downstreamMatrix;
 
     private Map<String, List<Id<UnitId>>> upstreamCapabilityMatrix;
     private Map<String, List<Id<UnitId>>> downstreamCapabilityMatrix;
 
     public UnitDependencies() {
-        this.upstreamMatrix = new HashMap<>();
-        this.downstreamMatrix = new HashMap<>();
+        this.indexOfUnit = new HashMap<>();
+        this.unitIds = new ArrayList<>();
+        this.upstreamRows = new ArrayList<>();
+        this.downstreamRows = new ArrayList<>();
+        this.upstreamMatrix = new MatrixView(upstreamRows);
+        this.downstreamMatrix = new MatrixView(downstreamRows);
         this.upstreamCapabilityMatrix = new HashMap<>();
         this.downstreamCapabilityMatrix = new HashMap<>();
     }
 
+    /**
+     * @return Read-only view mapping a unit id to the ids of the units it depends on. Direct dependencies
+     *   are listed first in the order they were added. After {@link #resolveTransitiveDependencies()}
+     *   the lists include the transitive dependencies.
+     */
     public Map<Id<UnitId>, List<Id<UnitId>>> getUpstreamMatrix() {
-        return Collections.unmodifiableMap(upstreamMatrix);
+        return upstreamMatrix;
     }
-    
+
+    /**
+     * @return Read-only view mapping a unit id to the ids of the units depending on it. See
+     *   {@link #getUpstreamMatrix()}.
+     */
     public Map<Id<UnitId>, List<Id<UnitId>>> getDownstreamMatrix() {
-        return Collections.unmodifiableMap(downstreamMatrix);
+        return downstreamMatrix;
     }
 
     public List<Id<UnitId>> getDirectUpstreamUnits(Id<UnitId> unitId, Id<CapabilityId> capabilityId) {
@@ -67,45 +95,18 @@ public class UnitDependencies {
         }
     }
     
+    /**
+     * Sorts the given units in dependency order; upstream units come first. Units on the same level are
+     * kept in the given order.
+     *
+     * @param units The units to sort. The list is modified.
+     */
     public void sort(List<ConfigurationUnit> units) {
-        final Map<Id<UnitId>, ConfigurationUnit> idUnitMap = new HashMap<>();
-        final Map<Id<UnitId>, List<Id<UnitId>>> idListMap = new HashMap<>();
-        final Map<Id<UnitId>, List<Id<UnitId>>> downstreamMatrix = getDownstreamMatrix();
-        
-        for (ConfigurationUnit unit : units) {
-            idUnitMap.put(unit.getId(), unit);
-        }
-        
-        for (ConfigurationUnit unit : units) {
-            List<Id<UnitId>> list = idListMap.get(unit.getId());
-            if (list == null) {
-                list = new LinkedList<>();
-                idListMap.put(unit.getId(), list);
-            }
-
-            final List<Id<UnitId>> downstreamList = downstreamMatrix.get(unit.getId());
-            if (downstreamList != null) {
-                for (Id<UnitId> id : downstreamList) {
-                    if (idUnitMap.containsKey(id)) {
-                        list.add(id);
-                        if (!idListMap.containsKey(id)) {
-                            idListMap.put(id, list);
-                        }
-                    }
-                }
-            }
-        }
-        
-        // reorder the units based on the ordered lists
-        for (List<Id<UnitId>> ids : idListMap.values()) {
-            final List<Id<UnitId>> sortedIds = sortIds(ids, downstreamMatrix);
-            for (Id<UnitId> id : sortedIds) {
-                units.remove(idUnitMap.get(id));
-                units.add(idUnitMap.get(id));
-            }
+        final List<List<ConfigurationUnit>> levels = evaluateLevels(units);
+        units.clear();
+        for (List<ConfigurationUnit> level : levels) {
+            units.addAll(level);
         }
-        
-        sort(units, downstreamMatrix);
     }
 
     /**
@@ -114,58 +115,18 @@ public class UnitDependencies {
      * on first level. The units in the second level are independent and can be ordered arbitrarily in terms of
      * execution.
      *
-     * @param unitList The list of units to analyze.
+     * @param unitList The list of units to analyze. The list is sorted (see {@link #sort(List)}).
      * @return A list of lists. The first level must be executed in the given order. Within the second level the units
      *   are independent and can be executed in any order. In particular, these can be executed concurrently.
      */
     public List<List<ConfigurationUnit>> evaluateDependencyGroups(final List<ConfigurationUnit> unitList) {
-        final List<List<ConfigurationUnit>> groupList = new LinkedList<>();
-        final HashSet<Id<UnitId>> consumed = new HashSet<>();
-
-        // the algorithm requires that the units are sorted (downstream)
-        sort(unitList);
-
-        for (int i = 0; i < unitList.size(); i++) {
-            final ConfigurationUnit unitA = unitList.get(i);
-
-            // check whether unitA was already processed
-            if (consumed.contains(unitA.getId())) {
-                continue;
-            }
-
-            // create a group for unitA and add it to the result data structure
-            final List<ConfigurationUnit> unitGroup = new LinkedList<>();
-            unitGroup.add(unitA);
-            groupList.add(unitGroup);
-
-            final List<Id<UnitId>> groupIdList = new LinkedList<>();
-            groupIdList.add(unitA.getId());
-
-            final List<Id<UnitId>> excludedList = new LinkedList<>();
+        final List<List<ConfigurationUnit>> levels = evaluateLevels(unitList);
 
-            // evaluate unitList with respect to unitA; collect those, which are independent of A
-            for (int j = i + 1; j < unitList.size(); j++) {
-                final ConfigurationUnit unitB = unitList.get(j);
-
-                if (consumed.contains(unitB.getId())) {
-                    continue;
-                }
-
-                // check whether unit unitB is dependent on unit unitA
-                if (dependsOnAny(unitB.getId(), groupIdList)) {
-                    // keep; cannot be parallel to unitA
-                    excludedList.add(unitB.getId());
-                } else {
-                    if (dependsOnAny(unitB.getId(), excludedList)) {
-                        // skip
-                    } else {
-                        // unit unitB is independent of unitA and can be parallelized with unitA
-                        consumed.add(unitB.getId());
-                        unitGroup.add(unitB);
-                        groupIdList.add(unitB.getId());
-                    }
-                }
-            }
+        final List<List<ConfigurationUnit>> groupList = new ArrayList<>(levels.size());
+        unitList.clear();
+        for (List<ConfigurationUnit> level : levels) {
+            unitList.addAll(level);
+            groupList.add(new ArrayList<>(level));
         }
 
         // within a group the units are sorted alphanumerically
@@ -182,101 +143,89 @@ public class UnitDependencies {
     }
 
     /**
-     * Evaluates whether unitId depends on any other unitId in unitIdList.
+     * Assigns the units to levels (Kahn's algorithm). A unit is on the level following the highest level of
+     * the units it depends on; only dependencies between the given units are considered. The units of a
+     * level are kept in the given order. Units on a cycle are added as last level.
      *
-     * @param unitId
-     * @param unitIdList
-     * @return Returns {@code true} in case unitId depends on any unitId in unitIdList.
+     * @param units The units.
+     * @return The levels.
      */
-    private boolean dependsOnAny(final Id<UnitId> unitId, final List<Id<UnitId>> unitIdList) {
-        for (final Id<UnitId> u: unitIdList) {
-            final List<Id<UnitId>> ids = upstreamMatrix.get(unitId);
-            if (ids != null && ids.contains(u)) {
-                return true;
+    private List<List<ConfigurationUnit>> evaluateLevels(final List<ConfigurationUnit> units) {
+        final int size = units.size();
+        final int[] globalIndexes = new int[size];
+        final int[] localIndexes = new int[unitIds.size()];
+        Arrays.fill(localIndexes, -1);
+        for (int i = 0; i < size; i++) {
+            final Integer index = indexOfUnit.get(units.get(i).getId());
+            globalIndexes[i] = index == null ? -1 : index;
+            if (index != null) {
+                localIndexes[index] = i;
             }
         }
-        return false;
-    }
 
-    private int compare(Id<UnitId> o1, Id<UnitId> o2, final Map<Id<UnitId>, List<Id<UnitId>>> matrix) {
-        final List<Id<UnitId>> ids1 = matrix.get(o1);
-        final List<Id<UnitId>> ids2 = matrix.get(o2);
-        if (ids1 != null && ids1.contains(o2)) {
-            return -1;
-        } else {
-            if (ids2 != null && ids2.contains(o1)) {
-                return 1;
-            } else {
-                return 0;
+        // downstream adjacency over the positions in the given list
+        final int[] upstreamCount = new int[size];
+        final int[][] downstream = new int[size][];
+        final int[] downstreamCount = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (globalIndexes[i] < 0) {
+                continue;
             }
-        }
-    }
-
-    /**
-     * Sort implementation that does not rely on symmetric compare results.
-     *
-     * @param units The units to be sorted.
-     * @param matrix The dependency matrix.
-     *
-     * @return The sorted list.
-     */
-    private List<Id<UnitId>> sortIds(List<Id<UnitId>> units, final Map<Id<UnitId>, List<Id<UnitId>>> matrix) {
-        final List<Id<UnitId>> ordered = new ArrayList<>();
-        for (final Id<UnitId> unitId : units) {
-            int index = -1;
-            // find position in ordered list
-            for (int i = 0; i < ordered.size(); i++) {
-                final Id<UnitId> otherUnitId = ordered.get(i);
-                final int compare = compare(unitId, otherUnitId, matrix);
-                if (compare == -1) {
-                    index = i;
-                    break;
-                } else if (compare == 1) {
-                    // keep searching
-                } else {
-                    // not dependent (on this unit), keep searching
+            final BitSet upstreamBits = upstreamRows.get(globalIndexes[i]).bits;
+            for (int u = upstreamBits.nextSetBit(0); u >= 0; u = upstreamBits.nextSetBit(u + 1)) {
+                final int j = localIndexes[u];
+                if (j >= 0 && j != i) {
+                    upstreamCount[i]++;
+                    if (downstream[j] == null) {
+                        downstream[j] = new int[4];
+                    } else if (downstreamCount[j] == downstream[j].length) {
+                        downstream[j] = Arrays.copyOf(downstream[j], downstreamCount[j] * 2);
+                    }
+                    downstream[j][downstreamCount[j]++] = i;
                 }
             }
-            // in case not other units depends on the unit, just add it at the end.
-            if (index == -1) {
-                ordered.add(unitId);
-            } else {
-                // otherwise insert the unit, so that it's dependent units come after
-                ordered.add(index, unitId);
+        }
+
+        final List<List<ConfigurationUnit>> levels = new ArrayList<>();
+        final BitSet placed = new BitSet(size);
+        int[] level = new int[size];
+        int[] nextLevel = new int[size];
+        int levelSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (upstreamCount[i] == 0) {
+                level[levelSize++] = i;
             }
         }
-        return ordered;
-    }
-    
-    private void sort(List<ConfigurationUnit> units, final Map<Id<UnitId>, List<Id<UnitId>>> matrix) {
-        List<ConfigurationUnit> ordered = new ArrayList<>();
-        for (ConfigurationUnit unit : units) {
-            int index = -1;
-            // find position in ordered list
-            for (int i = 0; i < ordered.size(); i++) {
-                ConfigurationUnit otherUnit = ordered.get(i);
-                final int compare = compare(unit.getId(), otherUnit.getId(), matrix);
-                if (compare == -1) {
-                    index = i;
-                    break;
-                } else if (compare == 1) {
-                    // keep searching
-                } else {
-                    // not dependent (on this unit), keep searching
+        while (levelSize > 0) {
+            final List<ConfigurationUnit> levelUnits = new ArrayList<>(levelSize);
+            int nextLevelSize = 0;
+            for (int k = 0; k < levelSize; k++) {
+                final int i = level[k];
+                placed.set(i);
+                levelUnits.add(units.get(i));
+                for (int d = 0; d < downstreamCount[i]; d++) {
+                    final int j = downstream[i][d];
+                    if (--upstreamCount[j] == 0) {
+                        nextLevel[nextLevelSize++] = j;
+                    }
                 }
             }
-            // in case not other units depends on the unit, just add it at the end.
-            if (index == -1) {
-                ordered.add(unit);
-            } else {
-                // otherwise insert the unit, so that it's dependent units come after
-                ordered.add(index, unit);
-            }
+            levels.add(levelUnits);
+            Arrays.sort(nextLevel, 0, nextLevelSize);
+            final int[] processedLevel = level;
+            level = nextLevel;
+            nextLevel = processedLevel;
+            levelSize = nextLevelSize;
         }
 
-        // replace lists internally
-        units.clear();
-        units.addAll(ordered);
+        if (placed.cardinality() < size) {
+            final List<ConfigurationUnit> remainingUnits = new ArrayList<>();
+            for (int i = placed.nextClearBit(0); i < size; i = placed.nextClearBit(i + 1)) {
+                remainingUnits.add(units.get(i));
+            }
+            levels.add(remainingUnits);
+        }
+        return levels;
     }
 
     static String createKey(Id<UnitId> unitId, Id<CapabilityId> capabilityId) {
@@ -295,25 +244,22 @@ public class UnitDependencies {
     }
 
     void addDependency(Id<UnitId> sourceUnitId, Id<UnitId> targetUnitId) {
-        addDependency(targetUnitId, sourceUnitId, upstreamMatrix);
-        addDependency(sourceUnitId, targetUnitId, downstreamMatrix);
+        final int sourceIndex = indexOf(sourceUnitId);
+        final int targetIndex = indexOf(targetUnitId);
+        upstreamRows.get(targetIndex).add(sourceIndex);
+        downstreamRows.get(sourceIndex).add(targetIndex);
     }
 
-    private void addDependency(Id<UnitId> unitB, Id<UnitId> unitA, Map<Id<UnitId>, List<Id<UnitId>>> matrix) {
-        List<Id<UnitId>> upstreamList = matrix.get(unitB);
-        if (upstreamList == null) {
-            upstreamList = new LinkedList<>();
-            matrix.put(unitB, upstreamList);
-        }
-        upstreamList.add(unitA);
-
-        // create also empty list
-        upstreamList = matrix.get(unitA);
-        if (upstreamList == null) {
-            upstreamList = new LinkedList<>();
-            matrix.put(unitA, upstreamList);
+    private int indexOf(Id<UnitId> unitId) {
+        Integer index = indexOfUnit.get(unitId);
+        if (index == null) {
+            index = unitIds.size();
+            indexOfUnit.put(unitId, index);
+            unitIds.add(unitId);
+            upstreamRows.add(new Row());
+            downstreamRows.add(new Row());
         }
-
+        return index;
     }
 
     void addBinding(Id<UnitId> sourceUnitId, Id<CapabilityId> sourceCapabilityId,
@@ -339,41 +285,199 @@ public class UnitDependencies {
         }
     }
 
+    /**
+     * Extends the matrices by the transitive dependencies. The closure is computed along a topological
+     * order of the units; the rows of the upstream units are complete when a unit is processed.
+     *
+     * @throws CyclicBindingException In case the dependencies contain cycles. The message lists the unit
+     *   ids along each detected cycle in binding direction.
+     */
     public void resolveTransitiveDependencies() {
-        resolveTransitiveDependencies(upstreamMatrix);
-        resolveTransitiveDependencies(downstreamMatrix);
+        final int[] order = evaluateTopologicalOrder();
+
+        for (int unit : order) {
+            final Row row = upstreamRows.get(unit);
+            row.resetToDirect();
+            for (int d = 0; d < row.directCount; d++) {
+                row.bits.or(upstreamRows.get(row.direct[d]).bits);
+            }
+        }
+
+        // the downstream matrix is the transposed upstream matrix
+        for (Row row : downstreamRows) {
+            row.resetToDirect();
+        }
+        for (int unit = 0; unit < unitIds.size(); unit++) {
+            final BitSet upstreamBits = upstreamRows.get(unit).bits;
+            for (int u = upstreamBits.nextSetBit(0); u >= 0; u = upstreamBits.nextSetBit(u + 1)) {
+                downstreamRows.get(u).bits.set(unit);
+            }
+        }
     }
 
-    private void resolveTransitiveDependencies(final Map<Id<UnitId>, List<Id<UnitId>>> matrix) {
-        for (Id<UnitId> unit : matrix.keySet()) {
-            for (Id<UnitId> other : matrix.keySet()) {
-                if (unit.equals(other)) {continue;}
-
-                List<Id<UnitId>> units = matrix.get(other);
-                if (units != null && units.contains(unit)) {
-                    List<Id<UnitId>> dependenciesToAdd = matrix.get(unit);
-                    for (Id<UnitId> dep : new LinkedList<>(dependenciesToAdd)) {
-                        if (!units.contains(dep)) {
-                            units.add(dep);
-                        }
+    /**
+     * Depth-first search along the direct upstream dependencies.
+     *
+     * @return The unit indexes; each unit follows the units it depends on.
+     */
+    private int[] evaluateTopologicalOrder() {
+        final int size = unitIds.size();
+        final int[] order = new int[size];
+        int orderSize = 0;
+
+        final byte[] state = new byte[size];
+        final int[] path = new int[size];
+        final int[] position = new int[size];
+        final Set<String> cycles = new LinkedHashSet<>();
+
+        for (int root = 0; root < size; root++) {
+            if (state[root] != UNVISITED) {
+                continue;
+            }
+            int top = 0;
+            path[top] = root;
+            position[top] = 0;
+            state[root] = ON_PATH;
+            while (top >= 0) {
+                final int unit = path[top];
+                final Row row = upstreamRows.get(unit);
+                if (position[top] < row.directCount) {
+                    final int upstream = row.direct[position[top]++];
+                    if (state[upstream] == UNVISITED) {
+                        top++;
+                        path[top] = upstream;
+                        position[top] = 0;
+                        state[upstream] = ON_PATH;
+                    } else if (state[upstream] == ON_PATH) {
+                        cycles.add(describeCycle(path, top, upstream));
                     }
+                } else {
+                    state[unit] = VISITED;
+                    order[orderSize++] = unit;
+                    top--;
                 }
             }
         }
-        checkForCycle(matrix);
+
+        if (!cycles.isEmpty()) {
+            throw new CyclicBindingException(cycles);
+        }
+        return order;
+    }
+
+    private String describeCycle(int[] path, int top, int upstream) {
+        // the path follows the upstream dependencies; it is reported from source to target unit
+        final StringBuilder cycle = new StringBuilder().append(unitIds.get(upstream));
+        int k = top;
+        do {
+            cycle.append(" -> ").append(unitIds.get(path[k]));
+        } while (path[k--] != upstream);
+        return cycle.toString();
     }
 
-    private void checkForCycle(Map<Id<UnitId>, List<Id<UnitId>>> graph) {
-        Set<String> cycles = new HashSet<>();
-        for (Id<UnitId> key : graph.keySet()) {
-            if (graph.get(key).contains(key)) {
-                LinkedList<Id<UnitId>> deps = new LinkedList<>(graph.get(key));
-                Collections.sort(deps);
-                cycles.add(deps.toString());
+    private List<Id<UnitId>> toList(Row row) {
+        List<Id<UnitId>> list = row.view;
+        if (list == null) {
+            final List<Id<UnitId>> ids = new ArrayList<>(row.bits.cardinality());
+            for (int d = 0; d < row.directCount; d++) {
+                ids.add(unitIds.get(row.direct[d]));
             }
+            for (int u = row.bits.nextSetBit(0); u >= 0; u = row.bits.nextSetBit(u + 1)) {
+                if (!row.directBits.get(u)) {
+                    ids.add(unitIds.get(u));
+                }
+            }
+            list = Collections.unmodifiableList(ids);
+            row.view = list;
         }
-        if (!cycles.isEmpty()) {
-            throw new CyclicBindingException(cycles);
+        return list;
+    }
+
+    /**
+     * Dependencies of a single unit. The direct dependencies are kept in the order they were added;
+     * {@link #bits} additionally covers the transitive dependencies once resolved.
+     */
+    private static final class Row {
+
+        private final BitSet directBits = new BitSet();
+        private int[] direct = new int[4];
+        private int directCount;
+
+        private BitSet bits = new BitSet();
+
+        private volatile List<Id<UnitId>> view;
+
+        void add(int index) {
+            if (!directBits.get(index)) {
+                directBits.set(index);
+                if (directCount == direct.length) {
+                    direct = Arrays.copyOf(direct, directCount * 2);
+                }
+                direct[directCount++] = index;
+                bits.set(index);
+                view = null;
+            }
+        }
+
+        void resetToDirect() {
+            bits = (BitSet) directBits.clone();
+            view = null;
+        }
+    }
+
+    private final class MatrixView extends AbstractMap<Id<UnitId>, List<Id<UnitId>>> {
+
+        private final List<Row> rows;
+
+        MatrixView(List<Row> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public List<Id<UnitId>> get(Object key) {
+            final Integer index = indexOfUnit.get(key);
+            return index == null ? null : toList(rows.get(index));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOfUnit.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return unitIds.size();
+        }
+
+        @Override
+        public Set<Entry<Id<UnitId>, List<Id<UnitId>>>> entrySet() {
+            return new AbstractSet<Entry<Id<UnitId>, List<Id<UnitId>>>>() {
+                @Override
+                public Iterator<Entry<Id<UnitId>, List<Id<UnitId>>>> iterator() {
+                    return new Iterator<Entry<Id<UnitId>, List<Id<UnitId>>>>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < unitIds.size();
+                        }
+
+                        @Override
+                        public Entry<Id<UnitId>, List<Id<UnitId>>> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final int i = index++;
+                            return new SimpleImmutableEntry<>(unitIds.get(i), toList(rows.get(i)));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return unitIds.size();
+                }
+            };
         }
     }
 
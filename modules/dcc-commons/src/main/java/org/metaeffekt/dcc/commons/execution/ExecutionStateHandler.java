@@ -17,18 +17,31 @@ package org.metaeffekt.dcc.commons.execution;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.AutoCloseInputStream;
 import org.apache.commons.lang3.Validate;
@@ -36,13 +49,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.metaeffekt.dcc.commons.DccConstants;
+import org.metaeffekt.dcc.commons.DccProperties;
 import org.metaeffekt.dcc.commons.DccUtils;
+import org.metaeffekt.dcc.commons.ant.PropertyUtils;
 import org.metaeffekt.dcc.commons.commands.Commands;
 import org.metaeffekt.dcc.commons.domain.Id;
 import org.metaeffekt.dcc.commons.domain.Type;
 import org.metaeffekt.dcc.commons.domain.Type.DeploymentId;
 import org.metaeffekt.dcc.commons.domain.Type.HostName;
 import org.metaeffekt.dcc.commons.domain.Type.UnitId;
+import org.metaeffekt.dcc.commons.properties.SortedProperties;
 
 /**
  * The {@link ExecutionStateHandler} manages the state of the executed commands. In general,
@@ -55,6 +71,16 @@ import org.metaeffekt.dcc.commons.domain.Type.UnitId;
  * It is important to note, that the zip does not include host details (as the zip itself) is
  * host-bound. In the cache nevertheless the host is on level in the folder structure.
  * 
+ * To avoid transferring the complete state on every request the state is versioned. The handler
+ * maintains a manifest of the state files (path, hash and modification time) and a monotonically
+ * increasing revision. A controller passing the revision (and epoch) it received last only retrieves
+ * the files changed since this revision together with the paths that have been removed.
+ * 
+ * On the controller side the handler keeps an in-memory index of the state cache. The index of a cache
+ * location (deployment and host) is loaded from disk on first access and maintained with every update
+ * applied via the handler. Checks whether a command was already executed are answered from the index.
+ * The handler is therefore expected to be shared by all threads operating on the same state cache.
+ * 
  * @author Alexander D.
  * @author Karsten Klein
  */
@@ -64,6 +90,45 @@ public class ExecutionStateHandler {
 
     static final String ZIP_FILE_NAME = "consolidated-status.zip";
 
+    /**
+     * Name of the manifest entry. The manifest is the first entry in a versioned state zip. The controller
+     * preserves the manifest in the root of the host-specific state cache.
+     */
+    public static final String STATE_MANIFEST_FILE_NAME = "state-manifest.properties";
+
+    public static final String STATE_MANIFEST_REVISION = "revision";
+    public static final String STATE_MANIFEST_EPOCH = "epoch";
+    public static final String STATE_MANIFEST_FULL = "full";
+    public static final String STATE_MANIFEST_REMOVED_PREFIX = "removed.";
+
+    /**
+     * Identifies the life-cycle of the revisions managed by this instance.
+     */
+    private final String stateEpoch = UUID.randomUUID().toString();
+
+    private long stateRevision = 0;
+
+    private final Map<String, StateEntry> stateManifest = new HashMap<>();
+
+    /**
+     * Maximum number of removed paths remembered for incremental updates. Controllers with a revision
+     * older than the removals dropped from the map receive the full state.
+     */
+    static final int MAX_REMOVED_STATE_ENTRIES = 1000;
+
+    private final Map<String, Long> removedStateEntries = new HashMap<>();
+
+    /**
+     * The latest revision of the removals dropped from {@link #removedStateEntries}.
+     */
+    private long prunedStateRevision = 0;
+
+    /**
+     * Maps the cache location of a deployment and host to the paths of the execution properties files
+     * (relative to the cache location).
+     */
+    private final Map<File, Set<String>> stateIndex = new ConcurrentHashMap<>();
+
     private final File configurationDirectory;
 
     private final File stateCacheDirectory;
@@ -82,7 +147,7 @@ public class ExecutionStateHandler {
      *
      * @return An InputStream
      */
-    public InputStream consolidateState(Id<DeploymentId> deploymentId) {
+    public synchronized InputStream consolidateState(Id<DeploymentId> deploymentId) {
         Validate.notNull(deploymentId);
         Validate.notNull(deploymentId.getValue());
 
@@ -97,8 +162,10 @@ public class ExecutionStateHandler {
         if (allExecutionProperties.size() > 0) {
             final URI configurationFolderURI = configurationDirectory.toURI();
             try {
-                final File targetFile = new File(configurationDirectory, ZIP_FILE_NAME);
-                deleteFile(targetFile);
+                // use a unique file; concurrent state requests must not interfere
+                final File targetFile = File.createTempFile(
+                    FilenameUtils.getBaseName(ZIP_FILE_NAME), "." + FilenameUtils.getExtension(ZIP_FILE_NAME),
+                    configurationDirectory);
                 try (OutputStream out = new FileOutputStream(targetFile);
                         ZipOutputStream zos = new ZipOutputStream(out)) {
                     for (File file : allExecutionProperties) {
@@ -137,6 +204,139 @@ public class ExecutionStateHandler {
         return null;
     }
 
+    /**
+     * Collects the execution properties files changed since the given revision into a zip file and
+     * returns it as an InputStream. The first entry of the zip is the manifest (see
+     * {@link #STATE_MANIFEST_FILE_NAME}) providing the current revision, the epoch and the paths removed
+     * since the given revision. In case the epoch does not match or the revision is not known all files
+     * are included and the manifest is flagged as full.
+     *
+     * @param deploymentId The deployment id.
+     * @param epoch The epoch the revision refers to. May be {@code null}.
+     * @param sinceRevision The revision last received by the caller or -1.
+     * @return An InputStream
+     */
+    public synchronized InputStream consolidateState(Id<DeploymentId> deploymentId, String epoch, long sinceRevision) {
+        Validate.notNull(deploymentId);
+        Validate.notNull(deploymentId.getValue());
+
+        refreshStateManifest();
+
+        final boolean full = !stateEpoch.equals(epoch) || sinceRevision < prunedStateRevision
+            || sinceRevision < 0 || sinceRevision > stateRevision;
+
+        final Properties manifest = new SortedProperties();
+        manifest.setProperty(STATE_MANIFEST_REVISION, String.valueOf(stateRevision));
+        manifest.setProperty(STATE_MANIFEST_EPOCH, stateEpoch);
+        manifest.setProperty(STATE_MANIFEST_FULL, String.valueOf(full));
+        if (!full) {
+            int index = 0;
+            for (Map.Entry<String, Long> entry : removedStateEntries.entrySet()) {
+                if (entry.getValue() > sinceRevision) {
+                    manifest.setProperty(STATE_MANIFEST_REMOVED_PREFIX + index++, entry.getKey());
+                }
+            }
+        }
+
+        LOG.debug("Collecting execution properties changed since revision [{}]; current revision [{}].",
+            full ? "none" : sinceRevision, stateRevision);
+
+        try {
+            final File targetFile = File.createTempFile(
+                FilenameUtils.getBaseName(ZIP_FILE_NAME), "." + FilenameUtils.getExtension(ZIP_FILE_NAME),
+                configurationDirectory.exists() ? configurationDirectory : null);
+            try (OutputStream out = new FileOutputStream(targetFile);
+                    ZipOutputStream zos = new ZipOutputStream(out)) {
+                zos.putNextEntry(new ZipEntry(STATE_MANIFEST_FILE_NAME));
+                manifest.store(zos, null);
+
+                for (Map.Entry<String, StateEntry> entry : stateManifest.entrySet()) {
+                    if (full || entry.getValue().revision > sinceRevision) {
+                        final File file = new File(configurationDirectory, entry.getKey());
+                        try (FileInputStream fis = new FileInputStream(file)) {
+                            zos.putNextEntry(new ZipEntry(entry.getKey()));
+                            IOUtils.copy(fis, zos);
+                        } catch (FileNotFoundException e) {
+                            // removed in the meantime; the next refresh records the removal
+                            LOG.debug("Skipping [{}] as it was removed.", entry.getKey());
+                        }
+                    }
+                }
+                zos.finish();
+            }
+            return new AutoCloseInputStream(new FileInputStream(targetFile)) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    targetFile.delete();
+                }
+            };
+        } catch (IOException e) {
+            throw new IllegalStateException("Error while updating execution status:", e);
+        }
+    }
+
+    /**
+     * Updates the manifest with the files currently in the configuration directory. Files are only
+     * hashed in case the modification time or the size changed. Every change increments the revision.
+     */
+    private void refreshStateManifest() {
+        final Map<String, File> files = new HashMap<>();
+        if (configurationDirectory.exists()) {
+            final URI configurationFolderURI = configurationDirectory.toURI();
+            for (File file : FileUtils.listFiles(configurationDirectory, new String[] { "properties" }, true)) {
+                String name = configurationFolderURI.relativize(file.toURI()).getPath();
+                if (!name.contains("/tmp/") && !name.contains("\\tmp\\")) {
+                    files.put(name, file);
+                }
+            }
+        }
+
+        for (Iterator<String> iterator = stateManifest.keySet().iterator(); iterator.hasNext();) {
+            final String name = iterator.next();
+            if (!files.containsKey(name)) {
+                iterator.remove();
+                removedStateEntries.put(name, ++stateRevision);
+            }
+        }
+
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            final String name = entry.getKey();
+            final File file = entry.getValue();
+            final StateEntry stateEntry = stateManifest.get(name);
+            final long lastModified = file.lastModified();
+            final long length = file.length();
+            if (stateEntry == null || stateEntry.lastModified != lastModified || stateEntry.length != length) {
+                try {
+                    final String hash = DccUtils.sha256Hex(file);
+                    if (stateEntry == null || !stateEntry.hash.equals(hash)) {
+                        stateManifest.put(name, new StateEntry(hash, lastModified, length, ++stateRevision));
+                        removedStateEntries.remove(name);
+                    } else {
+                        stateManifest.put(name, new StateEntry(hash, lastModified, length, stateEntry.revision));
+                    }
+                } catch (IOException e) {
+                    // removed in the meantime; handled with the next refresh
+                    LOG.debug("Unable to hash [{}]: {}", name, e.getMessage());
+                }
+            }
+        }
+
+        pruneRemovedStateEntries();
+    }
+
+    private void pruneRemovedStateEntries() {
+        final int excess = removedStateEntries.size() - MAX_REMOVED_STATE_ENTRIES;
+        if (excess > 0) {
+            final List<Map.Entry<String, Long>> entries = new ArrayList<>(removedStateEntries.entrySet());
+            entries.sort(Map.Entry.comparingByValue());
+            for (Map.Entry<String, Long> entry : entries.subList(0, excess)) {
+                removedStateEntries.remove(entry.getKey());
+                prunedStateRevision = Math.max(prunedStateRevision, entry.getValue());
+            }
+        }
+    }
+
     /**
      * Called by the controller to update the local consolidated state,
      * i.e. collection of execution properties files, in the state cache directory.
@@ -146,7 +346,7 @@ public class ExecutionStateHandler {
      * @param host 
      * @param deploymentId 
      */
-    public void updateConsolidatedState(InputStream inputStream, Id<HostName> host, Id<DeploymentId> deploymentId) {
+    public synchronized void updateConsolidatedState(InputStream inputStream, Id<HostName> host, Id<DeploymentId> deploymentId) {
         Validate.notNull(deploymentId);
         Validate.notNull(deploymentId.getValue());
         
@@ -160,32 +360,148 @@ public class ExecutionStateHandler {
         // recreate folder
         stateDir.mkdirs();
 
+        final Set<String> index = ConcurrentHashMap.newKeySet();
         if (inputStream != null) {
             try (ZipInputStream zis = new ZipInputStream(inputStream)) {
                 ZipEntry zipEntry;
                 while ((zipEntry = zis.getNextEntry()) != null) {
-                    String filename = zipEntry.getName();
-                    LOG.debug("Received [{}]", filename);
-                    File file = new File(stateDir, filename);
-                    file.getParentFile().mkdirs();
-                    FileOutputStream fos = new FileOutputStream(file);
-                    try {
-                        final byte[] buf = new byte[8192];
-                        int length;
-                        while ((length = zis.read(buf, 0, buf.length)) >= 0) {
-                            fos.write(buf, 0, length);
-                        }
-                    } finally {
-                        IOUtils.closeQuietly(fos);
-                    }
+                    writeZipEntry(zis, stateDir, zipEntry.getName());
+                    index.add(zipEntry.getName());
                 }
             } catch (IOException e) {
                 LOG.error("Unable to update local execution state: ", e.getMessage());
                 LOG.debug("Error details:", e);
+
+                // reload the index from disk on next access
+                stateIndex.remove(stateDir);
+                return;
+            }
+        }
+        stateIndex.put(stateDir, index);
+    }
+
+    /**
+     * Called by the controller to apply a state retrieved with
+     * {@link #consolidateState(Id, String, long)} to the local state cache directory. In case the state
+     * is incremental only the included files are written and the removed files are deleted. A state
+     * without manifest (provided by agents not supporting versioned states) replaces the cache
+     * completely.
+     *
+     * @param inputStream An InputStream representing a zip file as produced by
+     *            {@link #consolidateState(Id, String, long)}.
+     * @param host The host the state was retrieved from.
+     * @param deploymentId The deployment id.
+     */
+    public synchronized void updateState(InputStream inputStream, Id<HostName> host, Id<DeploymentId> deploymentId) {
+        Validate.notNull(deploymentId);
+        Validate.notNull(deploymentId.getValue());
+
+        if (inputStream == null) {
+            updateConsolidatedState(null, host, deploymentId);
+            return;
+        }
+
+        final File stateDir = getCacheLocation(host, deploymentId);
+
+        try (ZipInputStream zis = new ZipInputStream(inputStream)) {
+            ZipEntry zipEntry = zis.getNextEntry();
+            Properties manifest = null;
+            if (zipEntry != null && STATE_MANIFEST_FILE_NAME.equals(zipEntry.getName())) {
+                manifest = new Properties();
+                manifest.load(zis);
+                zipEntry = zis.getNextEntry();
+            }
+
+            final boolean full = manifest == null ||
+                Boolean.parseBoolean(manifest.getProperty(STATE_MANIFEST_FULL));
+            final Set<String> index;
+            if (full) {
+                deleteFile(stateDir);
+                index = ConcurrentHashMap.newKeySet();
+            } else {
+                index = getStateIndex(stateDir);
+                for (String key : manifest.stringPropertyNames()) {
+                    if (key.startsWith(STATE_MANIFEST_REMOVED_PREFIX)) {
+                        final String filename = manifest.getProperty(key);
+                        LOG.debug("Removed [{}]", filename);
+                        FileUtils.deleteQuietly(resolveStateFile(stateDir, filename));
+                        index.remove(filename);
+                    }
+                }
             }
+            stateDir.mkdirs();
+
+            while (zipEntry != null) {
+                writeZipEntry(zis, stateDir, zipEntry.getName());
+                index.add(zipEntry.getName());
+                zipEntry = zis.getNextEntry();
+            }
+            stateIndex.put(stateDir, index);
+
+            if (manifest != null) {
+                try (OutputStream out = new FileOutputStream(new File(stateDir, STATE_MANIFEST_FILE_NAME))) {
+                    manifest.store(out, null);
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to update local execution state: ", e.getMessage());
+            LOG.debug("Error details:", e);
+
+            // the cache is potentially incomplete; enforce a full update next time
+            FileUtils.deleteQuietly(new File(stateDir, STATE_MANIFEST_FILE_NAME));
+            stateIndex.remove(stateDir);
         }
     }
 
+    /**
+     * Reads the manifest of the state last applied with
+     * {@link #updateState(InputStream, Id, Id)}.
+     *
+     * @param host The host.
+     * @param deploymentId The deployment id.
+     * @return The manifest or {@code null} in case no versioned state is available.
+     */
+    public synchronized Properties getStateManifest(Id<HostName> host, Id<DeploymentId> deploymentId) {
+        final File manifestFile = new File(getCacheLocation(host, deploymentId), STATE_MANIFEST_FILE_NAME);
+        if (!manifestFile.exists()) {
+            return null;
+        }
+        final Properties manifest = new Properties();
+        try (InputStream in = new FileInputStream(manifestFile)) {
+            manifest.load(in);
+        } catch (IOException e) {
+            LOG.warn("Unable to read state manifest [{}]: {}", manifestFile, e.getMessage());
+            return null;
+        }
+        return manifest;
+    }
+
+    private void writeZipEntry(ZipInputStream zis, File stateDir, String filename) throws IOException {
+        LOG.debug("Received [{}]", filename);
+        File file = resolveStateFile(stateDir, filename);
+        file.getParentFile().mkdirs();
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            final byte[] buf = new byte[8192];
+            int length;
+            while ((length = zis.read(buf, 0, buf.length)) >= 0) {
+                fos.write(buf, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Resolves a path received from an agent within the state directory. Absolute paths and paths
+     * navigating to parent directories are rejected.
+     */
+    private static File resolveStateFile(File stateDir, String filename) throws IOException {
+        final String normalized = filename.replace('\\', '/');
+        if (normalized.startsWith("/") || new File(filename).isAbsolute() || normalized.matches("^[a-zA-Z]:.*")
+                || Arrays.asList(normalized.split("/")).contains("..")) {
+            throw new IOException("Invalid state entry [" + filename + "].");
+        }
+        return new File(stateDir, filename);
+    }
+
     /**
      * Deletes the passed in file or folder. In case the operation cannot be performed, waits and retries. Throws
      * an exception in case all attempts to delete fail.
@@ -215,6 +531,21 @@ public class ExecutionStateHandler {
                 }
             }
         }
+        invalidateStateIndex(file);
+    }
+
+    /**
+     * Invalidates the index of the state cache locations affected by a modification of the given file or
+     * folder that was not performed by this handler. The index is reloaded from disk on next access.
+     *
+     * @param file The modified file or folder.
+     */
+    public void invalidateStateIndex(File file) {
+        final Path path = file.toPath().toAbsolutePath().normalize();
+        stateIndex.keySet().removeIf(location -> {
+            final Path locationPath = location.toPath().toAbsolutePath().normalize();
+            return locationPath.startsWith(path) || path.startsWith(locationPath);
+        });
     }
 
     /**
@@ -223,7 +554,7 @@ public class ExecutionStateHandler {
      * 
      * @param executionPropertiesFile
      */
-    public void persistStateAfterSuccessfulExecution(Id<? extends Type> id, Commands command,
+    public synchronized void persistStateAfterSuccessfulExecution(Id<? extends Type> id, Commands command,
             File executionPropertiesFile) {
 
         File targetFolder = configurationDirectory;
@@ -243,6 +574,9 @@ public class ExecutionStateHandler {
                     if (!executionPropertiesFile.getCanonicalPath().equals(targetFile.getCanonicalPath())) {
                         FileUtils.deleteQuietly(targetFile);
                         FileUtils.moveFile(executionPropertiesFile, targetFile);
+
+                        // enforce the file to be rehashed with the next versioned consolidation
+                        stateManifest.remove(targetFolder.toURI().relativize(targetFile.toURI()).getPath());
                         if (!targetFile.exists()) {
                             throw new IllegalStateException(String.format(
                                 "Error while updating execution status: Moved execution properties are not in %s",
@@ -270,7 +604,44 @@ public class ExecutionStateHandler {
     public boolean alreadySuccessfullyExecuted(Id<? extends Type> id, Commands command, Id<HostName> host, Id<DeploymentId> deploymentId) {
         File cacheLocation = getCacheLocation(host, deploymentId);
         File propertiesFile = DccUtils.propertyFileForGenericId(cacheLocation, id, command);
-        return propertiesFile.exists();
+        return getStateIndex(cacheLocation).contains(relativePath(cacheLocation, propertiesFile));
+    }
+
+    /**
+     * Called by the controller to determine the properties the command was executed with last.
+     *
+     * @return The {@link DccProperties#DCC_PROPERTIES_HASH} of the properties of the last successful
+     *   execution or {@code null} in case the command was not executed or the properties carry no hash.
+     */
+    public String getExecutedPropertiesHash(Id<? extends Type> id, Commands command, Id<HostName> host, Id<DeploymentId> deploymentId) {
+        if (!alreadySuccessfullyExecuted(id, command, host, deploymentId)) {
+            return null;
+        }
+        File propertiesFile = DccUtils.propertyFileForGenericId(getCacheLocation(host, deploymentId), id, command);
+        return PropertyUtils.loadPropertyFile(propertiesFile).getProperty(DccProperties.DCC_PROPERTIES_HASH);
+    }
+
+    private Set<String> getStateIndex(File cacheLocation) {
+        return stateIndex.computeIfAbsent(cacheLocation, this::loadStateIndex);
+    }
+
+    private Set<String> loadStateIndex(File cacheLocation) {
+        final Set<String> index = ConcurrentHashMap.newKeySet();
+        if (cacheLocation.isDirectory()) {
+            for (File file : FileUtils.listFiles(cacheLocation, new String[] { "properties" }, true)) {
+                final String name = relativePath(cacheLocation, file);
+                if (!STATE_MANIFEST_FILE_NAME.equals(name)) {
+                    index.add(name);
+                }
+            }
+        }
+        LOG.debug("Loaded [{}] state entries from [{}].", index.size(), cacheLocation);
+        return index;
+    }
+
+    private static String relativePath(File baseFolder, File file) {
+        // files are derived from the base folder; no file system access is required
+        return file.getPath().substring(baseFolder.getPath().length() + 1).replace(File.separatorChar, '/');
     }
 
     public File getCacheLocation(Id<HostName> host, Id<DeploymentId> deploymentId) {
@@ -339,4 +710,19 @@ public class ExecutionStateHandler {
         }
     }
 
+    private static final class StateEntry {
+
+        private final String hash;
+        private final long lastModified;
+        private final long length;
+        private final long revision;
+
+        private StateEntry(String hash, long lastModified, long length, long revision) {
+            this.hash = hash;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.revision = revision;
+        }
+    }
+
 }
@@ -16,8 +16,12 @@
 package org.metaeffekt.dcc.commons.execution;
 
 import java.io.File;
+import java.util.List;
+import java.util.Map;
 
 import org.metaeffekt.dcc.commons.commands.Commands;
+import org.metaeffekt.dcc.commons.domain.Id;
+import org.metaeffekt.dcc.commons.domain.Type.UnitId;
 import org.metaeffekt.dcc.commons.mapping.ConfigurationUnit;
 
 /**
@@ -39,6 +43,19 @@ public interface Executor {
 
     boolean hostAvailable();
     void execute(Commands command, ConfigurationUnit unit);
+
+    /**
+     * Executes the command on the given units in the given order. The execution stops at the first
+     * failure.
+     * 
+     * @param command The command to execute.
+     * @param units The units in execution order.
+     * @return Map in execution order providing the units executed. The value is <code>null</code> in
+     *   case of a successful execution or the exception of the failed execution. Units not executed
+     *   are not included.
+     */
+    Map<Id<UnitId>, RuntimeException> execute(Commands command, List<ConfigurationUnit> units);
+
     void retrieveUpdatedState();
     void retrieveLogs();
 
@@ -15,7 +15,13 @@
  */
 package org.metaeffekt.dcc.commons.mapping;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.Validate;
@@ -23,11 +29,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.expression.EnvironmentAccessor;
 import org.springframework.core.env.StandardEnvironment;
+import org.springframework.expression.BeanResolver;
+import org.springframework.expression.ConstructorResolver;
+import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.EvaluationException;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
 import org.springframework.expression.ParseException;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.OperatorOverloader;
 import org.springframework.expression.ParserContext;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypeComparator;
+import org.springframework.expression.TypeConverter;
+import org.springframework.expression.TypeLocator;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
@@ -43,6 +61,41 @@ public abstract class AbstractPropertyExpression {
 
     protected final static Pattern REG_EX = Pattern.compile("\\$\\{([^\\}]*)\\}");
 
+    private static final int CACHE_SIZE = Integer.parseInt(System.getProperty("dcc.expression.cache.size", "10000"));
+
+    /**
+     * The parser is thread-safe. In mixed mode expressions evaluated repeatedly are compiled; in case
+     * compilation is not applicable the expression is interpreted.
+     */
+    private static final ExpressionParser PARSER = new SpelExpressionParser(
+        new SpelParserConfiguration(SpelCompilerMode.MIXED, AbstractPropertyExpression.class.getClassLoader()));
+
+    /**
+     * Evaluation context shared by all expressions. The {@link PropertiesHolder} is passed as root
+     * object on evaluation. The context is not modified after initialization.
+     */
+    private static final StandardEvaluationContext EVALUATION_CONTEXT = createEvaluationContext();
+
+    /**
+     * Name of the variable providing the values of the ${...} tokens to a parameterized template.
+     */
+    private static final String TOKENS_VARIABLE = "dccTokens";
+
+    private static final Pattern INTEGER_LITERAL = Pattern.compile("-?\\d+");
+
+    private static final Pattern REAL_LITERAL = Pattern.compile("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?");
+
+    /**
+     * Parameterized SpEL templates by the raw expression string (before substitution of the ${...}
+     * tokens).
+     */
+    private static final Map<String, ExpressionTemplate> TEMPLATE_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * The ${...} tokens by the raw expression string.
+     */
+    private static final Map<String, List<String>> TOKEN_CACHE = new ConcurrentHashMap<>();
+
     private final PropertiesHolder propertiesHolder;
 
     private final boolean resolveProvidedCapabilities;
@@ -63,14 +116,16 @@ public abstract class AbstractPropertyExpression {
         String value = expression;
 
         final Map<String, ParsedItem> itemsToBeEvaluated = parse(expression);
+        final Map<String, String> tokenValues = new HashMap<>();
         for (Map.Entry<String, ParsedItem> item : itemsToBeEvaluated.entrySet()) {
             final String evaluatedValue = evaluate(item.getValue());
             if (evaluatedValue != null) {
                 value = value.replace(item.getKey(), evaluatedValue);
+                tokenValues.put(item.getKey(), evaluatedValue);
             }
         }
 
-        return evaluateExpression(expression, value, type);
+        return evaluateExpression(expression, value, tokenValues, type);
     }
 
     protected String evaluate(ParsedItem parsedItem) {
@@ -102,22 +157,53 @@ public abstract class AbstractPropertyExpression {
 
     protected abstract Map<String, ParsedItem> parse(String expression);
 
+    /**
+     * Provides the ${...} tokens (including the delimiters) of the given expression in order of
+     * occurrence. The result is cached.
+     *
+     * @param expression The expression.
+     * @return The tokens; unmodifiable.
+     */
+    protected static List<String> findTokens(String expression) {
+        List<String> tokens = TOKEN_CACHE.get(expression);
+        if (tokens == null) {
+            final List<String> foundTokens = new ArrayList<>();
+            final Matcher matcher = REG_EX.matcher(expression);
+            while (matcher.find()) {
+                foundTokens.add(matcher.group());
+            }
+            tokens = foundTokens.isEmpty() ? Collections.<String>emptyList() : Collections.unmodifiableList(foundTokens);
+            cache(TOKEN_CACHE, expression, tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Evaluates the expression. The SpEL template is parsed once per raw expression; the values of the
+     * ${...} tokens are passed as parameters. Only in case the values cannot be passed as parameters the
+     * substituted expression is parsed and evaluated.
+     *
+     * @param originalExpression The raw expression.
+     * @param value The expression with the ${...} tokens substituted.
+     * @param tokenValues The values of the ${...} tokens; tokens without value are not included.
+     * @param type The expected type.
+     * @return The evaluated value.
+     */
     @SuppressWarnings("unchecked")
-    protected <T> T evaluateExpression(String originalExpression, String value, Class<T> type) {
-        final ExpressionParser parser = new SpelExpressionParser();
+    protected <T> T evaluateExpression(String originalExpression, String value, Map<String, String> tokenValues,
+            Class<T> type) {
+        // plain strings do not require the template to be evaluated
+        if (type == String.class && value.indexOf(PARSER_CONTEXT.getExpressionPrefix()) == -1) {
+            return (T) value;
+        }
 
         try {
-            final StandardEvaluationContext context = new StandardEvaluationContext();
-            context.setRootObject(propertiesHolder);
-            context.addPropertyAccessor(new EnvironmentAccessor());
-            context.setVariable(StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME,
-                    STANDARD_ENVIRONMENT);
-            context.setVariable(StandardEnvironment.SYSTEM_PROPERTIES_PROPERTY_SOURCE_NAME,
-                    STANDARD_ENVIRONMENT);
-
-            final Expression expression = parser.parseExpression(value, PARSER_CONTEXT);
-
-            return expression.getValue(context, type);
+            final ExpressionTemplate template = getTemplate(originalExpression);
+            final Object[] parameters = template.bind(tokenValues);
+            if (parameters != null) {
+                return template.expression.getValue(new TokenEvaluationContext(parameters), propertiesHolder, type);
+            }
+            return PARSER.parseExpression(value, PARSER_CONTEXT).getValue(EVALUATION_CONTEXT, propertiesHolder, type);
         } catch (ParseException | EvaluationException e) {
             LOG.debug(String.format(
                     "Failed to evaluate expression %s, and with replaced properties %s",
@@ -131,6 +217,297 @@ public abstract class AbstractPropertyExpression {
         return null;
     }
 
+    private static StandardEvaluationContext createEvaluationContext() {
+        final StandardEvaluationContext context = new StandardEvaluationContext();
+        context.addPropertyAccessor(new EnvironmentAccessor());
+        context.setVariable(StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME,
+                STANDARD_ENVIRONMENT);
+        context.setVariable(StandardEnvironment.SYSTEM_PROPERTIES_PROPERTY_SOURCE_NAME,
+                STANDARD_ENVIRONMENT);
+
+        // initialize the lazily created delegates before the context is shared between threads
+        context.getPropertyAccessors();
+        context.getMethodResolvers();
+        context.getConstructorResolvers();
+        context.getTypeLocator();
+        context.getTypeConverter();
+        return context;
+    }
+
+    /**
+     * Adds the entry to the cache. The cache is cleared when exceeding {@link #CACHE_SIZE}; the keys are
+     * the raw expressions of the profiles, so that the bound is only reached in exceptional cases.
+     */
+    private static <V> void cache(Map<String, V> cache, String key, V value) {
+        if (cache.size() >= CACHE_SIZE) {
+            cache.clear();
+        }
+        cache.put(key, value);
+    }
+
+    private static ExpressionTemplate getTemplate(String expression) {
+        ExpressionTemplate template = TEMPLATE_CACHE.get(expression);
+        if (template == null) {
+            template = ExpressionTemplate.create(expression);
+            cache(TEMPLATE_CACHE, expression, template);
+        }
+        return template;
+    }
+
+    /**
+     * Converts the value of a ${...} token used as code within a %{...} block to the literal SpEL would
+     * parse from the substituted text.
+     *
+     * @return The literal or {@code null} in case the value is not a boolean or numeric literal.
+     */
+    static Object toLiteral(String value) {
+        final String trimmed = value.trim();
+        if ("true".equalsIgnoreCase(trimmed) || "false".equalsIgnoreCase(trimmed)) {
+            return Boolean.valueOf(trimmed);
+        }
+        try {
+            if (INTEGER_LITERAL.matcher(trimmed).matches()) {
+                return Integer.valueOf(trimmed);
+            }
+            if (REAL_LITERAL.matcher(trimmed).matches()) {
+                return Double.valueOf(trimmed);
+            }
+        } catch (NumberFormatException e) {
+            // out of range; not a valid SpEL literal
+        }
+        return null;
+    }
+
+    /**
+     * SpEL template of a raw expression with the ${...} tokens replaced by references to the
+     * {@link #TOKENS_VARIABLE} variable:
+     * <ul>
+     * <li>tokens outside of %{...} blocks are provided as text: {@code %{#dccTokens[0]}}</li>
+     * <li>tokens within quoted strings are concatenated: {@code ('a' + #dccTokens[0] + 'b')}</li>
+     * <li>other tokens within %{...} blocks are provided as boolean or numeric literal</li>
+     * </ul>
+     */
+    static final class ExpressionTemplate {
+
+        private final String source;
+
+        private final Expression expression;
+
+        private final List<String> tokens;
+
+        /**
+         * Per token: {@code true} in case the value is used as code, {@code false} in case used as
+         * text within a block and {@code null} in case used as text outside a block.
+         */
+        private final List<Boolean> code;
+
+        private ExpressionTemplate(String source, Expression expression, List<String> tokens, List<Boolean> code) {
+            this.source = source;
+            this.expression = expression;
+            this.tokens = tokens;
+            this.code = code;
+        }
+
+        static ExpressionTemplate create(String rawExpression) {
+            final List<String> tokens = new ArrayList<>();
+            final List<Boolean> code = new ArrayList<>();
+            final String source = parameterize(rawExpression, tokens, code);
+            Expression expression = null;
+            if (source != null) {
+                try {
+                    expression = PARSER.parseExpression(source, PARSER_CONTEXT);
+                } catch (ParseException e) {
+                    LOG.debug("Expression [{}] cannot be parameterized: {}", rawExpression, e.getMessage());
+                }
+            }
+            return new ExpressionTemplate(source, expression, tokens, code);
+        }
+
+        String getSource() {
+            return source;
+        }
+
+        /**
+         * @return The parameters or {@code null} in case the values cannot be passed as parameters.
+         */
+        Object[] bind(Map<String, String> tokenValues) {
+            if (expression == null) {
+                return null;
+            }
+            final Object[] parameters = new Object[tokens.size()];
+            for (int i = 0; i < parameters.length; i++) {
+                final String value = tokenValues.get(tokens.get(i));
+                if (value == null) {
+                    return null;
+                }
+                final Boolean isCode = code.get(i);
+                if (Boolean.TRUE.equals(isCode)) {
+                    parameters[i] = toLiteral(value);
+                    if (parameters[i] == null) {
+                        return null;
+                    }
+                } else if (isCode == null && value.contains(PARSER_CONTEXT.getExpressionPrefix())) {
+                    // the substituted value is evaluated as template
+                    return null;
+                } else {
+                    parameters[i] = value;
+                }
+            }
+            return parameters;
+        }
+
+        /**
+         * Replaces the ${...} tokens by references to the {@link #TOKENS_VARIABLE} variable.
+         *
+         * @return The parameterized template or {@code null} in case the expression is not supported.
+         */
+        static String parameterize(String expression, List<String> tokens, List<Boolean> code) {
+            final String prefix = PARSER_CONTEXT.getExpressionPrefix();
+            final StringBuilder sb = new StringBuilder(expression.length() + 32);
+            final Matcher matcher = REG_EX.matcher(expression);
+            int depth = 0;
+            char quote = 0;
+            int quoteStart = -1;
+            boolean quoteWithTokens = false;
+            int i = 0;
+            while (i < expression.length()) {
+                final char c = expression.charAt(i);
+                if (c == '$' && matcher.find(i) && matcher.start() == i) {
+                    final String reference = "#" + TOKENS_VARIABLE + "[" + tokens.size() + "]";
+                    tokens.add(matcher.group());
+                    if (depth == 0) {
+                        code.add(null);
+                        sb.append(prefix).append(reference).append(PARSER_CONTEXT.getExpressionSuffix());
+                    } else if (quote != 0) {
+                        code.add(Boolean.FALSE);
+                        sb.append(quote).append(" + ").append(reference).append(" + ").append(quote);
+                        quoteWithTokens = true;
+                    } else {
+                        code.add(Boolean.TRUE);
+                        sb.append('(').append(reference).append(')');
+                    }
+                    i = matcher.end();
+                    continue;
+                }
+
+                if (depth == 0) {
+                    if (expression.startsWith(prefix, i)) {
+                        depth = 1;
+                        sb.append(prefix);
+                        i += prefix.length();
+                        continue;
+                    }
+                } else if (quote != 0) {
+                    if (c == quote) {
+                        if (i + 1 < expression.length() && expression.charAt(i + 1) == quote) {
+                            // escaped quote
+                            sb.append(c).append(c);
+                            i += 2;
+                            continue;
+                        }
+                        sb.append(c);
+                        if (quoteWithTokens) {
+                            sb.insert(quoteStart, '(').append(')');
+                        }
+                        quote = 0;
+                        i++;
+                        continue;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                    quoteStart = sb.length();
+                    quoteWithTokens = false;
+                } else if (c == '{') {
+                    depth++;
+                } else if (c == '}') {
+                    depth--;
+                }
+                sb.append(c);
+                i++;
+            }
+            return depth == 0 && quote == 0 ? sb.toString() : null;
+        }
+    }
+
+    /**
+     * Evaluation context providing the token values of a single evaluation. All other aspects are
+     * delegated to the shared {@link #EVALUATION_CONTEXT}.
+     */
+    private static final class TokenEvaluationContext implements EvaluationContext {
+
+        private final Object[] tokenValues;
+
+        private Map<String, Object> variables;
+
+        private TokenEvaluationContext(Object[] tokenValues) {
+            this.tokenValues = tokenValues;
+        }
+
+        @Override
+        public TypedValue getRootObject() {
+            return EVALUATION_CONTEXT.getRootObject();
+        }
+
+        @Override
+        public List<PropertyAccessor> getPropertyAccessors() {
+            return EVALUATION_CONTEXT.getPropertyAccessors();
+        }
+
+        @Override
+        public List<ConstructorResolver> getConstructorResolvers() {
+            return EVALUATION_CONTEXT.getConstructorResolvers();
+        }
+
+        @Override
+        public List<MethodResolver> getMethodResolvers() {
+            return EVALUATION_CONTEXT.getMethodResolvers();
+        }
+
+        @Override
+        public BeanResolver getBeanResolver() {
+            return EVALUATION_CONTEXT.getBeanResolver();
+        }
+
+        @Override
+        public TypeLocator getTypeLocator() {
+            return EVALUATION_CONTEXT.getTypeLocator();
+        }
+
+        @Override
+        public TypeConverter getTypeConverter() {
+            return EVALUATION_CONTEXT.getTypeConverter();
+        }
+
+        @Override
+        public TypeComparator getTypeComparator() {
+            return EVALUATION_CONTEXT.getTypeComparator();
+        }
+
+        @Override
+        public OperatorOverloader getOperatorOverloader() {
+            return EVALUATION_CONTEXT.getOperatorOverloader();
+        }
+
+        @Override
+        public void setVariable(String name, Object value) {
+            if (variables == null) {
+                variables = new HashMap<>();
+            }
+            variables.put(name, value);
+        }
+
+        @Override
+        public Object lookupVariable(String name) {
+            if (TOKENS_VARIABLE.equals(name)) {
+                return tokenValues;
+            }
+            if (variables != null && variables.containsKey(name)) {
+                return variables.get(name);
+            }
+            return EVALUATION_CONTEXT.lookupVariable(name);
+        }
+    }
+
     protected static class ParsedItem {
 
         public final Id<UnitId> unitId;
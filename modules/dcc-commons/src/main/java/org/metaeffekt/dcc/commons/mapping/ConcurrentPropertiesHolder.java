@@ -0,0 +1,48 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.mapping;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link PropertiesHolder} variant that can be populated by several threads concurrently. Used by the
+ * {@link ProfileEvaluator} to evaluate independent units in parallel.
+ * <p>
+ * Properties are managed per object. Each object is expected to be populated by a single thread; the
+ * holder only guarantees the consistency of the shared structures.
+ */
+public class ConcurrentPropertiesHolder extends PropertiesHolder {
+
+    public ConcurrentPropertiesHolder() {
+        super(new ConcurrentHashMap<String, Properties>(), ConcurrentHashMap.<String>newKeySet());
+    }
+
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    @Override
+    public Properties getProperties(String id) {
+        // concurrent maps do not support null keys; objects without id have no properties
+        if (id == null) {
+            return null;
+        }
+        return super.getProperties(id);
+    }
+
+}
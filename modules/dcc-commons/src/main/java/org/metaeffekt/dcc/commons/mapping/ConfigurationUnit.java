@@ -19,10 +19,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -65,6 +65,10 @@ public class ConfigurationUnit extends AbstractDocumented implements Identifiabl
 
     private String parentId;
 
+    private volatile CapabilityIndex providedCapabilityIndex;
+
+    private volatile CapabilityIndex requiredCapabilityIndex;
+
     public ConfigurationUnit(String id) {
         this(Id.createUnitId(id));
     }
@@ -88,6 +92,7 @@ public class ConfigurationUnit extends AbstractDocumented implements Identifiabl
 
     public void setProvidedCapabilities(List<Capability> providedCapabilities) {
         this.providedCapabilities = providedCapabilities;
+        this.providedCapabilityIndex = null;
     }
 
     public List<RequiredCapability> getRequiredCapabilities() {
@@ -96,6 +101,7 @@ public class ConfigurationUnit extends AbstractDocumented implements Identifiabl
 
     public void setRequiredCapabilities(List<RequiredCapability> requiredCapabilities) {
         this.requiredCapabilities = requiredCapabilities;
+        this.requiredCapabilityIndex = null;
     }
 
     public void add(Mapping mapping) {
@@ -149,92 +155,96 @@ public class ConfigurationUnit extends AbstractDocumented implements Identifiabl
     }
 
     public Capability findProvidedCapability(Id<CapabilityId> capabilityId) {
-        for (Capability capability : providedCapabilities) {
-            if (capability.getId().equals(capabilityId)) {
-                return capability;
-            }
-        }
-        return null;
+        return getProvidedCapabilityIndex().byId.get(capabilityId);
     }
 
     public Capability findRequiredCapability(Id<CapabilityId> capabilityId) {
-        for (Capability capability : requiredCapabilities) {
-            if (capability.getId().equals(capabilityId)) {
-                return capability;
-            }
-        }
-        return null;
+        return getRequiredCapabilityIndex().byId.get(capabilityId);
     }
 
     public Capability findProvidedCapabilityWithCapabilityDefinition(String capabilityDefinitionId) {
         if (capabilityDefinitionId == null) { // TODO review when deployment command is available
             return null;
         }
-        for (Capability capability : getProvidedCapabilities()) {
-            if (capabilityDefinitionId.equals(capability.getCapabilityDefinition().getId())) {
-                return capability;
-            }
-        }
-        return null;
+        return getProvidedCapabilityIndex().byDefinitionId.get(capabilityDefinitionId);
     }
 
     public Capability findRequiredCapabilityWithCapabilityDefinition(String capabilityDefinitionId) {
-        for (Capability capability : getRequiredCapabilities()) {
-            if (capabilityDefinitionId.equals(capability.getCapabilityDefinition().getId())) {
-                return capability;
-            }
+        return getRequiredCapabilityIndex().byDefinitionId.get(capabilityDefinitionId);
+    }
+
+    private CapabilityIndex getProvidedCapabilityIndex() {
+        CapabilityIndex index = providedCapabilityIndex;
+        if (index == null || !index.isCurrent(providedCapabilities)) {
+            index = new CapabilityIndex(providedCapabilities);
+            providedCapabilityIndex = index;
+        }
+        return index;
+    }
+
+    private CapabilityIndex getRequiredCapabilityIndex() {
+        CapabilityIndex index = requiredCapabilityIndex;
+        if (index == null || !index.isCurrent(requiredCapabilities)) {
+            index = new CapabilityIndex(requiredCapabilities);
+            requiredCapabilityIndex = index;
         }
-        return null;
+        return index;
     }
 
     public void evaluate(PropertiesHolder propertiesHolder, Profile profile) {
         // FIXME: we should have a better condition to determine whether a unit was already
         // evaluated
-        Properties unitProperties = propertiesHolder.getProperties(this);
-        if (unitProperties == null) {
+        if (!propertiesHolder.hasProperties(this)) {
 
             LOG.debug("Evaluating unit [{}]", getId());
 
-            // populate with technical attributes accessible using _ as prefix
-            propertiesHolder.setProperty(this, "_unit.id", getId().getValue());
-            
-            unitProperties = propertiesHolder.createPropertiesIfNecessary(this);
-
-            if (!isAbstract()) {
-                // evaluate bindings that represent an input for this unit
-                for (Capability capability : getRequiredCapabilities()) {
-                    Collection<Binding> bindings = profile.findBindings(capability);
-                    if (bindings != null) {
-                        for (Binding binding : bindings) {
-                            binding.evaluate(propertiesHolder, profile);
-                        }
+            propertiesHolder.getDependencies().enter(this);
+            try {
+                evaluateUnit(propertiesHolder, profile);
+            } finally {
+                propertiesHolder.getDependencies().exit();
+            }
+        }
+    }
+
+    private void evaluateUnit(PropertiesHolder propertiesHolder, Profile profile) {
+        // populate with technical attributes accessible using _ as prefix
+        propertiesHolder.setProperty(this, "_unit.id", getId().getValue());
+
+        if (!isAbstract()) {
+            // evaluate bindings that represent an input for this unit
+            for (Capability capability : getRequiredCapabilities()) {
+                Collection<Binding> bindings = profile.findBindings(capability);
+                if (bindings != null) {
+                    for (Binding binding : bindings) {
+                        binding.evaluate(propertiesHolder, profile);
                     }
                 }
             }
-            
-            // evaluate the configured attributes
-            List<Attribute> unitAttributes = getAttributes();
-            if (unitAttributes != null) {
-                for (Attribute attribute : unitAttributes) {
-                    attribute.evaluate(propertiesHolder, this);
-                }
+        }
+        
+        // evaluate the configured attributes
+        List<Attribute> unitAttributes = getAttributes();
+        if (unitAttributes != null) {
+            for (Attribute attribute : unitAttributes) {
+                attribute.evaluate(propertiesHolder, this);
             }
+        }
 
-            // evaluate bindings registered to this unit
-            if (!isAbstract()) {
-                List<Mapping> mappings = getMappings();
-                if (mappings != null) {
-                    for (Mapping mapping : mappings) {
-                        mapping.evaluate(propertiesHolder, profile);
-                    }
+        // evaluate bindings registered to this unit
+        if (!isAbstract()) {
+            List<Mapping> mappings = getMappings();
+            if (mappings != null) {
+                for (Mapping mapping : mappings) {
+                    mapping.evaluate(propertiesHolder, profile);
                 }
+            }
 
-                // FIXME need to discuss this; need to find strategy (nothing is implicit)
-                // this is an implicit mapping of the unit properties to the target capability
-                for (Capability capability : getProvidedCapabilities()) {
-                    propertiesHolder.createPropertiesIfNecessary(capability);
-                    new UnitToCapabilityAttributeMapper(null, null).evaluate(propertiesHolder, capability, profile);
-                }
+            // FIXME need to discuss this; need to find strategy (nothing is implicit)
+            // this is an implicit mapping of the unit properties to the target capability
+            for (Capability capability : getProvidedCapabilities()) {
+                propertiesHolder.createPropertiesIfNecessary(capability);
+                new UnitToCapabilityAttributeMapper(null, null).evaluate(propertiesHolder, capability, profile);
             }
         }
     }
@@ -283,6 +293,9 @@ public class ConfigurationUnit extends AbstractDocumented implements Identifiabl
         }
         filterOverwrittenCapabilities(requiredCapabilities);
 
+        this.providedCapabilityIndex = null;
+        this.requiredCapabilityIndex = null;
+
         // set targetCapability of the mappings to the correct Capability instance
         List<Mapping> mappings = getMappings();
         for (Mapping mapping : mappings) {
@@ -333,4 +346,36 @@ public class ConfigurationUnit extends AbstractDocumented implements Identifiabl
         }
     }
 
+    /**
+     * Maps capability ids and capability definition ids to the first matching capability of a list. The
+     * index is built on first lookup. It is rebuilt in case the list was replaced or changed its size;
+     * the capability lists are not expected to change once the unit is initialized.
+     */
+    private static final class CapabilityIndex {
+
+        private final List<? extends Capability> capabilities;
+        private final int size;
+
+        private final Map<Id<?>, Capability> byId = new HashMap<>();
+        private final Map<String, Capability> byDefinitionId = new HashMap<>();
+
+        CapabilityIndex(List<? extends Capability> capabilities) {
+            this.capabilities = capabilities;
+            this.size = capabilities.size();
+            for (Capability capability : capabilities) {
+                if (!byId.containsKey(capability.getId())) {
+                    byId.put(capability.getId(), capability);
+                }
+                final CapabilityDefinition definition = capability.getCapabilityDefinition();
+                if (definition != null && !byDefinitionId.containsKey(definition.getId())) {
+                    byDefinitionId.put(definition.getId(), capability);
+                }
+            }
+        }
+
+        boolean isCurrent(List<? extends Capability> capabilities) {
+            return this.capabilities == capabilities && size == capabilities.size();
+        }
+    }
+
 }
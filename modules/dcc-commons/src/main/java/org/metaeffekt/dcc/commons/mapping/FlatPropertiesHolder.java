@@ -0,0 +1,412 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.mapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.metaeffekt.dcc.commons.DccConstants;
+import org.metaeffekt.dcc.commons.DccUtils;
+import org.metaeffekt.dcc.commons.properties.SortedProperties;
+
+/**
+ * {@link PropertiesHolder} managing the properties of all objects in a single flat table. Object ids and
+ * property keys are interned to int ids; the values are stored in an open-addressing hash table keyed by
+ * the combination of both. Compared to a {@link Properties} instance per object the table requires a
+ * fraction of the heap and property lookups do not allocate.
+ * <p>
+ * Modifications are serialized. Lookups do not lock and may run while other threads modify the holder.
+ * {@link #getProperties(String)}, {@link #createPropertiesIfNecessary(Identifiable)} and
+ * {@link #getPropertiesMap()} provide snapshots; modifications of the returned {@link Properties} are
+ * not reflected in the holder.
+ */
+public class FlatPropertiesHolder extends PropertiesHolder {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // key id of the entry marking that properties were created for an object
+    private static final int OBJECT_MARKER = 0;
+
+    private final Names objectNames = new Names();
+    private final Names keyNames = new Names();
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    // key ids per object id to provide snapshots without scanning the table; guarded by this
+    private int[][] keysOfObject = new int[64][];
+    private int[] keyCountOfObject = new int[64];
+
+    // relevant properties not related to a single object (e.g. context-free fallback keys)
+    private final Set<String> relevantKeys = ConcurrentHashMap.newKeySet();
+
+    public FlatPropertiesHolder() {
+        super(Collections.<String, Properties>emptyMap(), Collections.<String>emptySet());
+    }
+
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    @Override
+    public Map<String, Properties> getObjectProperties() {
+        return getPropertiesMap();
+    }
+
+    @Override
+    public Map<String, Properties> getPropertiesMap() {
+        final Map<String, Properties> propertiesMap = new HashMap<>();
+        synchronized (this) {
+            for (int objectId = 1; objectId <= objectNames.size(); objectId++) {
+                final Properties properties = snapshot(objectId);
+                if (properties != null) {
+                    propertiesMap.put(objectNames.name(objectId), properties);
+                }
+            }
+        }
+        return propertiesMap;
+    }
+
+    @Override
+    public Properties getProperties(String id) {
+        final int objectId = objectNames.lookup(id);
+        if (objectId < 0) {
+            return null;
+        }
+        synchronized (this) {
+            return snapshot(objectId);
+        }
+    }
+
+    @Override
+    protected boolean hasProperties(String id) {
+        final int objectId = objectNames.lookup(id);
+        return objectId > 0 && table.get(objectId, OBJECT_MARKER) != null;
+    }
+
+    @Override
+    protected String lookupProperty(String id, String key) {
+        final int objectId = objectNames.lookup(id);
+        final int keyId = keyNames.lookup(key);
+        if (objectId < 0 || keyId < 0) {
+            return null;
+        }
+        return table.get(objectId, keyId);
+    }
+
+    @Override
+    public void setProperty(Identifiable identifiable, String key, String value) {
+        final int objectId = objectNames.intern(getIdentifiableStringId(identifiable));
+        final int keyId = keyNames.intern(key);
+        synchronized (this) {
+            createIfNecessary(objectId);
+            put(objectId, keyId, value, false);
+        }
+    }
+
+    @Override
+    public void removeProperties(Identifiable identifiable) {
+        final int objectId = objectNames.lookup(getIdentifiableStringId(identifiable));
+        if (objectId < 0) {
+            return;
+        }
+        synchronized (this) {
+            if (objectId < keysOfObject.length && keysOfObject[objectId] != null) {
+                final int[] keys = keysOfObject[objectId];
+                for (int i = 0; i < keyCountOfObject[objectId]; i++) {
+                    put(objectId, keys[i], null, false);
+                }
+            }
+            put(objectId, OBJECT_MARKER, null, false);
+        }
+    }
+
+    @Override
+    public Properties createPropertiesIfNecessary(Identifiable identifiable) {
+        final int objectId = objectNames.intern(getIdentifiableStringId(identifiable));
+        synchronized (this) {
+            createIfNecessary(objectId);
+            return snapshot(objectId);
+        }
+    }
+
+    @Override
+    public void markPropertyAsRelevant(String propertyKey) {
+        relevantKeys.add(propertyKey);
+    }
+
+    @Override
+    public void markPropertyAsRelevant(Identifiable id, String key) {
+        markPropertyAsRelevant(getIdentifiableStringId(id), key);
+    }
+
+    @Override
+    public void markPropertyAsRelevant(String id, String key) {
+        if (id == null) {
+            markPropertyAsRelevant(DccUtils.deriveAttributeIdentifier(id, key));
+            return;
+        }
+        int objectId = objectNames.lookup(id);
+        int keyId = keyNames.lookup(key);
+        if (objectId > 0 && keyId > 0 && table.isRelevant(objectId, keyId)) {
+            return;
+        }
+        objectId = objectNames.intern(id);
+        keyId = keyNames.intern(key);
+        synchronized (this) {
+            put(objectId, keyId, null, true);
+        }
+    }
+
+    @Override
+    public boolean isPropertyRelevant(String propertyKey) {
+        if (relevantKeys.contains(propertyKey)) {
+            return true;
+        }
+        // the separator may also be part of the object id or the key; check all candidates
+        final String separator = DccConstants.SEPARATOR_UNIT_KEY;
+        int index = propertyKey.indexOf(separator);
+        while (index >= 0) {
+            final int objectId = objectNames.lookup(propertyKey.substring(0, index));
+            final int keyId = keyNames.lookup(propertyKey.substring(index + separator.length()));
+            if (objectId > 0 && keyId > 0 && table.isRelevant(objectId, keyId)) {
+                return true;
+            }
+            index = propertyKey.indexOf(separator, index + 1);
+        }
+        return false;
+    }
+
+    private void createIfNecessary(int objectId) {
+        if (table.get(objectId, OBJECT_MARKER) == null) {
+            put(objectId, OBJECT_MARKER, "", false);
+        }
+    }
+
+    // guarded by this
+    private void put(int objectId, int keyId, String value, boolean relevant) {
+        Table current = table;
+        int index = current.indexOf(objectId, keyId);
+        boolean inserted = false;
+        if (index < 0) {
+            if (value == null && !relevant) {
+                // nothing to remove
+                return;
+            }
+            if (current.isFull()) {
+                current = current.resize();
+                table = current;
+            }
+            index = current.insert(objectId, keyId);
+            inserted = true;
+            if (keyId != OBJECT_MARKER) {
+                registerKey(objectId, keyId);
+            }
+        }
+        if (relevant) {
+            current.relevant[index] = true;
+        } else {
+            // removed properties keep their slot; the value is cleared
+            current.values[index] = value;
+        }
+        current.publish(inserted);
+    }
+
+    // guarded by this
+    private void registerKey(int objectId, int keyId) {
+        if (objectId >= keysOfObject.length) {
+            final int length = Math.max(objectId + 1, keysOfObject.length * 2);
+            keysOfObject = Arrays.copyOf(keysOfObject, length);
+            keyCountOfObject = Arrays.copyOf(keyCountOfObject, length);
+        }
+        int[] keys = keysOfObject[objectId];
+        final int count = keyCountOfObject[objectId];
+        if (keys == null) {
+            keys = new int[8];
+        } else if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+        }
+        keys[count] = keyId;
+        keysOfObject[objectId] = keys;
+        keyCountOfObject[objectId] = count + 1;
+    }
+
+    // guarded by this
+    private Properties snapshot(int objectId) {
+        final Table current = table;
+        if (current.get(objectId, OBJECT_MARKER) == null) {
+            return null;
+        }
+        final Properties properties = new SortedProperties();
+        if (objectId < keysOfObject.length && keysOfObject[objectId] != null) {
+            final int[] keys = keysOfObject[objectId];
+            for (int i = 0; i < keyCountOfObject[objectId]; i++) {
+                final String value = current.get(objectId, keys[i]);
+                if (value != null) {
+                    properties.setProperty(keyNames.name(keys[i]), value);
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Interns names to ids starting with 1. Lookups do not lock.
+     */
+    private static final class Names {
+
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+        // guarded by this
+        private final List<String> names = new ArrayList<>();
+
+        int lookup(String name) {
+            if (name == null) {
+                return -1;
+            }
+            final Integer id = ids.get(name);
+            return id == null ? -1 : id;
+        }
+
+        int intern(String name) {
+            if (name == null) {
+                throw new IllegalArgumentException("Properties of objects without id are not supported.");
+            }
+            final Integer id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            synchronized (this) {
+                Integer internedId = ids.get(name);
+                if (internedId == null) {
+                    names.add(name);
+                    internedId = names.size();
+                    ids.put(name, internedId);
+                }
+                return internedId;
+            }
+        }
+
+        synchronized String name(int id) {
+            return names.get(id - 1);
+        }
+
+        synchronized int size() {
+            return names.size();
+        }
+    }
+
+    /**
+     * Open-addressing hash table with linear probing. Slots are never removed. The table is modified
+     * by a single thread at a time; every modification ends with a write of the volatile {@link #size},
+     * which each lookup reads first.
+     */
+    private static final class Table {
+
+        private final long[] keys;
+        private final String[] values;
+        private final boolean[] relevant;
+        private final int mask;
+
+        private volatile int size;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new String[capacity];
+            relevant = new boolean[capacity];
+            mask = capacity - 1;
+        }
+
+        String get(int objectId, int keyId) {
+            final int index = indexOf(objectId, keyId);
+            return index < 0 ? null : values[index];
+        }
+
+        boolean isRelevant(int objectId, int keyId) {
+            final int index = indexOf(objectId, keyId);
+            return index >= 0 && relevant[index];
+        }
+
+        int indexOf(int objectId, int keyId) {
+            if (size == 0) {
+                return -1;
+            }
+            final long key = key(objectId, keyId);
+            int index = slot(key);
+            long current;
+            while ((current = keys[index]) != 0) {
+                if (current == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        int insert(int objectId, int keyId) {
+            final long key = key(objectId, keyId);
+            int index = slot(key);
+            while (keys[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            return index;
+        }
+
+        void publish(boolean inserted) {
+            size = inserted ? size + 1 : size;
+        }
+
+        boolean isFull() {
+            return (size + 1) * 4 > keys.length * 3;
+        }
+
+        Table resize() {
+            final Table table = new Table(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    int index = table.slot(keys[i]);
+                    while (table.keys[index] != 0) {
+                        index = (index + 1) & table.mask;
+                    }
+                    table.keys[index] = keys[i];
+                    table.values[index] = values[i];
+                    table.relevant[index] = relevant[i];
+                }
+            }
+            table.size = size;
+            return table;
+        }
+
+        private int slot(long key) {
+            final long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private static long key(int objectId, int keyId) {
+            // object ids start with 1; the key is therefore never 0 (empty slot)
+            return ((long) objectId << 32) | (keyId & 0xFFFFFFFFL);
+        }
+    }
+
+}
@@ -17,7 +17,6 @@ package org.metaeffekt.dcc.commons.mapping;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 
@@ -46,9 +45,7 @@ public class GlobalPropertyExpression extends AbstractPropertyExpression {
     protected Map<String, ParsedItem> parse(String expression) {
         final Map<String, ParsedItem> items = new LinkedHashMap<String, ParsedItem>();
 
-        final Matcher matcher = REG_EX.matcher(expression);
-        while (matcher.find()) {
-            final String token = matcher.group();
+        for (String token : findTokens(expression)) {
             final String strippedToken = token.substring(2, token.length() - 1);
             items.put(token, parseSingleToken(strippedToken));
         }
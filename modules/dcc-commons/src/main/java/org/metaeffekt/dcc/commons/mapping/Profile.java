@@ -21,12 +21,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 
 import org.springframework.util.CollectionUtils;
 
+import org.metaeffekt.dcc.commons.DccProperties;
 import org.metaeffekt.dcc.commons.ant.UrlUtils;
 import org.metaeffekt.dcc.commons.commands.Commands;
 import org.metaeffekt.dcc.commons.dependency.UnitDependencies;
@@ -56,6 +61,15 @@ public class Profile implements Documented {
     private Map<Id<UnitId>, ConfigurationUnit> units = new HashMap<>();
     
     private List<Binding> bindings = new ArrayList<>();
+
+    // indexes of the bindings; maintained with the bindings list. Capabilities are compared by identity.
+    private final Map<Capability, List<Binding>> bindingsByTargetCapability = new HashMap<>();
+    private final Map<Capability, List<Binding>> bindingsBySourceCapability = new HashMap<>();
+    private final Map<Id<UnitId>, List<Binding>> bindingsByTargetUnit = new HashMap<>();
+    private final Map<Id<UnitId>, List<Binding>> bindingsBySourceUnit = new HashMap<>();
+
+    // built lazily from the provided capabilities of the non-abstract units; reset when units are added
+    private volatile ProvidedCapabilityIndex providedCapabilityIndex;
     
     private String description;
 
@@ -85,6 +99,7 @@ public class Profile implements Documented {
 
     public void setUnits(List<ConfigurationUnit> units) {
         this.units.clear();
+        this.providedCapabilityIndex = null;
         if (!CollectionUtils.isEmpty(units)) {
             for (ConfigurationUnit configurationUnit : units) {
                 add(configurationUnit);
@@ -103,6 +118,7 @@ public class Profile implements Documented {
 
     public Profile add(ConfigurationUnit unit) {
         final ConfigurationUnit old = this.units.put(unit.getId(), unit);
+        this.providedCapabilityIndex = null;
         
         // asserts are only effective if the unit is not abstract
         if (!unit.isAbstract()) {
@@ -117,17 +133,56 @@ public class Profile implements Documented {
 
     public void setBindings(List<Binding> bindings) {
         this.bindings.clear();
+        this.bindingsByTargetCapability.clear();
+        this.bindingsBySourceCapability.clear();
+        this.bindingsByTargetUnit.clear();
+        this.bindingsBySourceUnit.clear();
         if (!CollectionUtils.isEmpty(bindings)) {
-            this.bindings.addAll(bindings);
+            for (Binding binding : bindings) {
+                add(binding);
+            }
         }
     }
 
     public Profile add(Binding binding) {
         bindings.add(binding);
+        index(bindingsByTargetCapability, binding.getTargetCapability(), binding);
+        index(bindingsBySourceCapability, binding.getSourceCapability(), binding);
+        index(bindingsByTargetUnit, binding.getTargetCapability().getUnit().getId(), binding);
+        index(bindingsBySourceUnit, binding.getSourceCapability().getUnit().getId(), binding);
         return this;
     }
+
+    private static <K> void index(Map<K, List<Binding>> index, K key, Binding binding) {
+        List<Binding> indexedBindings = index.get(key);
+        if (indexedBindings == null) {
+            indexedBindings = new ArrayList<>(1);
+            index.put(key, indexedBindings);
+        }
+        indexedBindings.add(binding);
+    }
+
+    private static <K> List<Binding> lookup(Map<K, List<Binding>> index, K key) {
+        final List<Binding> indexedBindings = index.get(key);
+        return indexedBindings == null ? Collections.<Binding>emptyList() : indexedBindings;
+    }
     
+    /**
+     * Evaluates the units of the profile into the given properties holder. In case the holder supports
+     * concurrent modification the independent units are evaluated in parallel (see
+     * {@link ProfileEvaluator}).
+     *
+     * @param propertiesHolder The properties holder to populate.
+     * @return The given properties holder.
+     */
     public PropertiesHolder evaluate(final PropertiesHolder propertiesHolder) {
+        if (propertiesHolder.isConcurrent()) {
+            return new ProfileEvaluator(this).evaluate(propertiesHolder);
+        }
+        return evaluateSequentially(propertiesHolder);
+    }
+
+    PropertiesHolder evaluateSequentially(final PropertiesHolder propertiesHolder) {
         for (ConfigurationUnit unit : units.values()) {
             unit.evaluate(propertiesHolder, this);
         }
@@ -137,6 +192,70 @@ public class Profile implements Documented {
         
         return propertiesHolder;
     }
+
+    /**
+     * Re-evaluates the units affected by changed base properties. The affected units are the units that
+     * read any of the changed properties during evaluation and all units bound to them (transitively).
+     * Their properties and the properties of their capabilities are discarded and evaluated again; the
+     * properties of all other units are kept.
+     *
+     * @param propertiesHolder A properties holder populated by {@link #evaluate(PropertiesHolder)}.
+     * @param solutionProperties The new solution properties.
+     * @param deploymentProperties The new deployment properties.
+     * @return The re-evaluated units.
+     */
+    public Set<ConfigurationUnit> reevaluate(final PropertiesHolder propertiesHolder,
+            Properties solutionProperties, Properties deploymentProperties) {
+        final Set<String> changedKeys = new HashSet<>();
+        collectChangedKeys(propertiesHolder.getSolutionProperties(), solutionProperties, changedKeys);
+        collectChangedKeys(propertiesHolder.getDeploymentProperties(), deploymentProperties, changedKeys);
+        propertiesHolder.setSolutionProperties(solutionProperties);
+        propertiesHolder.setDeploymentProperties(deploymentProperties);
+
+        final Set<ConfigurationUnit> affectedUnits = propertiesHolder.getDependencies().findUnits(changedKeys);
+        final LinkedList<ConfigurationUnit> pending = new LinkedList<>(affectedUnits);
+        while (!pending.isEmpty()) {
+            final ConfigurationUnit unit = pending.removeFirst();
+            for (Binding binding : lookup(bindingsBySourceUnit, unit.getId())) {
+                final ConfigurationUnit targetUnit = binding.getTargetCapability().getUnit();
+                if (affectedUnits.add(targetUnit)) {
+                    pending.add(targetUnit);
+                }
+            }
+        }
+
+        for (ConfigurationUnit unit : affectedUnits) {
+            propertiesHolder.removeProperties(unit);
+            for (Capability capability : unit.getProvidedCapabilities()) {
+                propertiesHolder.removeProperties(capability);
+            }
+            for (Capability capability : unit.getRequiredCapabilities()) {
+                propertiesHolder.removeProperties(capability);
+            }
+        }
+
+        // upstream units are evaluated recursively through the bindings
+        for (ConfigurationUnit unit : affectedUnits) {
+            unit.evaluate(propertiesHolder, this);
+        }
+        return affectedUnits;
+    }
+
+    private static void collectChangedKeys(Properties oldProperties, Properties newProperties,
+            Set<String> changedKeys) {
+        final Properties previous = oldProperties == null ? new Properties() : oldProperties;
+        final Properties current = newProperties == null ? new Properties() : newProperties;
+        for (String key : previous.stringPropertyNames()) {
+            if (!Objects.equals(previous.getProperty(key), current.getProperty(key))) {
+                changedKeys.add(key);
+            }
+        }
+        for (String key : current.stringPropertyNames()) {
+            if (previous.getProperty(key) == null) {
+                changedKeys.add(key);
+            }
+        }
+    }
     
     public ConfigurationUnit findUnit(Id<UnitId> unitId) {
         return units.get(unitId);
@@ -148,20 +267,31 @@ public class Profile implements Documented {
     
     public Collection<Binding> findBindings(Capability targetCapability) {
         assert(targetCapability != null);
-        List<Binding> matchingBindings = new ArrayList<>();
-        for (Binding binding : bindings) {
-            if (targetCapability.equals(binding.getTargetCapability())) {
-                matchingBindings.add(binding);
-            }
-        }
-        return matchingBindings;
+        return new ArrayList<>(lookup(bindingsByTargetCapability, targetCapability));
+    }
+
+    public Collection<Binding> findBindingsWithSource(Capability sourceCapability) {
+        assert(sourceCapability != null);
+        return new ArrayList<>(lookup(bindingsBySourceCapability, sourceCapability));
     }
 
     public Collection<Binding> findBindings(
             Id<UnitId> sourceUnitId, Id<UnitId> targetUnitId, 
             Id<CapabilityId> sourceCapId, Id<CapabilityId> targetCapId) {
+        // narrow the candidates using the unit indexes; the remaining criteria are checked below
+        List<Binding> candidates = bindings;
+        if (sourceUnitId != null) {
+            candidates = lookup(bindingsBySourceUnit, sourceUnitId);
+        }
+        if (targetUnitId != null) {
+            final List<Binding> targetUnitBindings = lookup(bindingsByTargetUnit, targetUnitId);
+            if (targetUnitBindings.size() < candidates.size()) {
+                candidates = targetUnitBindings;
+            }
+        }
+
         List<Binding> matchingBindings = new ArrayList<>();
-        for (Binding binding : bindings) {
+        for (Binding binding : candidates) {
             if (sourceUnitId != null) {
                 if (!sourceUnitId.equals(binding.getSourceCapability().getUnit().getId())) {
                     continue;
@@ -188,17 +318,29 @@ public class Profile implements Documented {
     }
 
     public List<ConfigurationUnit> findUnitsWithProvidedCapabilityDefinition(String capabilityDefinitionId) {
-        List<ConfigurationUnit> units = new ArrayList<>();
-        for (ConfigurationUnit unit : this.units.values()) {
-            for (Capability capability : unit.getProvidedCapabilities()) {
-                if (capabilityDefinitionId.equals(capability.getCapabilityDefinition().getId())) {
-                    if (!unit.isAbstract()) {
-                        units.add(unit);
-                    }
-                }
-            }
+        return lookupUnits(getProvidedCapabilityIndex().unitsByDefinitionId, capabilityDefinitionId);
+    }
+
+    /**
+     * @param capabilityId The id of the provided capability.
+     * @return The non-abstract units providing a capability with the given id.
+     */
+    public List<ConfigurationUnit> findUnitsWithProvidedCapability(Id<CapabilityId> capabilityId) {
+        return lookupUnits(getProvidedCapabilityIndex().unitsByCapabilityId, capabilityId);
+    }
+
+    private ProvidedCapabilityIndex getProvidedCapabilityIndex() {
+        ProvidedCapabilityIndex index = providedCapabilityIndex;
+        if (index == null) {
+            index = new ProvidedCapabilityIndex(units.values());
+            providedCapabilityIndex = index;
         }
-        return units;
+        return index;
+    }
+
+    private static <K> List<ConfigurationUnit> lookupUnits(Map<K, List<ConfigurationUnit>> index, K key) {
+        final List<ConfigurationUnit> indexedUnits = index.get(key);
+        return indexedUnits == null ? new ArrayList<ConfigurationUnit>() : new ArrayList<>(indexedUnits);
     }
 
     public List<ConfigurationUnit> getUnits() {
@@ -281,7 +423,9 @@ public class Profile implements Documented {
     }
 
     public PropertiesHolder createPropertiesHolder(boolean includeDeploymentProperties) {
-        PropertiesHolder propertiesHolder = new PropertiesHolder();
+        PropertiesHolder propertiesHolder = Boolean.parseBoolean(
+            System.getProperty(DccProperties.DCC_SYSTEM_PROPERTY_PROFILE_EVALUATION_PARALLEL, "true")) ?
+                new FlatPropertiesHolder() : new PropertiesHolder();
         propertiesHolder.setSolutionProperties(solutionProperties);
         if (includeDeploymentProperties) {
             propertiesHolder.setDeploymentProperties(deploymentProperties);
@@ -351,4 +495,36 @@ public class Profile implements Documented {
         }
     }
 
+    private static final class ProvidedCapabilityIndex {
+
+        private final Map<Id<CapabilityId>, List<ConfigurationUnit>> unitsByCapabilityId = new HashMap<>();
+        private final Map<String, List<ConfigurationUnit>> unitsByDefinitionId = new HashMap<>();
+
+        ProvidedCapabilityIndex(Collection<ConfigurationUnit> units) {
+            for (ConfigurationUnit unit : units) {
+                if (unit.isAbstract()) {
+                    continue;
+                }
+                for (Capability capability : unit.getProvidedCapabilities()) {
+                    final List<ConfigurationUnit> unitsWithId = get(unitsByCapabilityId, capability.getId());
+                    // units are indexed one after another; a duplicate can only be the last entry
+                    if (unitsWithId.isEmpty() || unitsWithId.get(unitsWithId.size() - 1) != unit) {
+                        unitsWithId.add(unit);
+                    }
+                    // a unit is listed once per capability of the definition
+                    get(unitsByDefinitionId, capability.getCapabilityDefinition().getId()).add(unit);
+                }
+            }
+        }
+
+        private static <K> List<ConfigurationUnit> get(Map<K, List<ConfigurationUnit>> index, K key) {
+            List<ConfigurationUnit> indexedUnits = index.get(key);
+            if (indexedUnits == null) {
+                indexedUnits = new ArrayList<>(1);
+                index.put(key, indexedUnits);
+            }
+            return indexedUnits;
+        }
+    }
+
 }
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.mapping;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.metaeffekt.dcc.commons.properties.SystemPropertyScope;
+
+/**
+ * Evaluates the units of a {@link Profile} level by level in dependency order. A unit is assigned to
+ * the level following the highest level of the units it is bound to. All units of a level are
+ * independent of each other and are evaluated in parallel on a {@link ForkJoinPool}; the next level is
+ * started once the previous level is completed.
+ * <p>
+ * Since the upstream units are always evaluated completely before a unit is evaluated, the recursive
+ * evaluation of the bindings finds the source units already evaluated. The result is therefore the same
+ * as with sequential evaluation. Profiles with cyclic bindings are evaluated sequentially.
+ */
+public class ProfileEvaluator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProfileEvaluator.class);
+
+    private final Profile profile;
+
+    private final ForkJoinPool pool;
+
+    public ProfileEvaluator(Profile profile) {
+        this(profile, ForkJoinPool.commonPool());
+    }
+
+    public ProfileEvaluator(Profile profile, ForkJoinPool pool) {
+        this.profile = profile;
+        this.pool = pool;
+    }
+
+    /**
+     * Evaluates the profile into the given properties holder. The holder must support concurrent
+     * modification (see {@link PropertiesHolder#isConcurrent()}).
+     *
+     * @param propertiesHolder The properties holder to populate.
+     * @return The given properties holder.
+     */
+    public PropertiesHolder evaluate(final PropertiesHolder propertiesHolder) {
+        final List<List<ConfigurationUnit>> levels = computeLevels(profile.getUnits(true));
+        if (levels == null) {
+            LOG.debug("Profile [{}] contains cyclic bindings. Evaluating sequentially.", profile.getId());
+            return profile.evaluateSequentially(propertiesHolder);
+        }
+
+        for (List<ConfigurationUnit> level : levels) {
+            if (level.size() == 1) {
+                level.get(0).evaluate(propertiesHolder, profile);
+            } else {
+                final List<ForkJoinTask<?>> tasks = new ArrayList<>(level.size());
+                for (final ConfigurationUnit unit : level) {
+                    // the pool threads evaluate within the system property scope of the caller
+                    tasks.add(ForkJoinTask.adapt(SystemPropertyScope.propagate(new Runnable() {
+                        @Override
+                        public void run() {
+                            unit.evaluate(propertiesHolder, profile);
+                        }
+                    })));
+                }
+                pool.invoke(ForkJoinTask.adapt(new Runnable() {
+                    @Override
+                    public void run() {
+                        ForkJoinTask.invokeAll(tasks);
+                    }
+                }));
+            }
+        }
+        return propertiesHolder;
+    }
+
+    /**
+     * Assigns the units to levels based on the bindings of their required capabilities. Source units of
+     * bindings not managed by the profile are included, since they are evaluated through the bindings.
+     *
+     * @param units The units of the profile.
+     * @return The levels in evaluation order or {@code null} in case the bindings are cyclic.
+     */
+    List<List<ConfigurationUnit>> computeLevels(Collection<ConfigurationUnit> units) {
+        final Map<ConfigurationUnit, List<ConfigurationUnit>> downstreamUnits = new IdentityHashMap<>();
+        final Map<ConfigurationUnit, Integer> upstreamCount = new IdentityHashMap<>();
+        final List<ConfigurationUnit> pending = new ArrayList<>(units);
+        for (int i = 0; i < pending.size(); i++) {
+            final ConfigurationUnit unit = pending.get(i);
+            if (upstreamCount.containsKey(unit)) {
+                continue;
+            }
+            final Set<ConfigurationUnit> upstream = Collections.newSetFromMap(new IdentityHashMap<ConfigurationUnit, Boolean>());
+            if (!unit.isAbstract()) {
+                for (Capability capability : unit.getRequiredCapabilities()) {
+                    for (Binding binding : profile.findBindings(capability)) {
+                        final ConfigurationUnit sourceUnit = binding.getSourceCapability().getUnit();
+                        // a unit bound to itself is evaluated within its own evaluation
+                        if (sourceUnit != unit && upstream.add(sourceUnit)) {
+                            downstreamUnits(downstreamUnits, sourceUnit).add(unit);
+                            pending.add(sourceUnit);
+                        }
+                    }
+                }
+            }
+            upstreamCount.put(unit, upstream.size());
+        }
+
+        final List<List<ConfigurationUnit>> levels = new ArrayList<>();
+        List<ConfigurationUnit> level = new ArrayList<>();
+        for (Map.Entry<ConfigurationUnit, Integer> entry : upstreamCount.entrySet()) {
+            if (entry.getValue() == 0) {
+                level.add(entry.getKey());
+            }
+        }
+        int evaluated = 0;
+        while (!level.isEmpty()) {
+            levels.add(level);
+            evaluated += level.size();
+            final List<ConfigurationUnit> nextLevel = new ArrayList<>();
+            for (ConfigurationUnit unit : level) {
+                for (ConfigurationUnit downstreamUnit : downstreamUnits(downstreamUnits, unit)) {
+                    final int count = upstreamCount.get(downstreamUnit) - 1;
+                    upstreamCount.put(downstreamUnit, count);
+                    if (count == 0) {
+                        nextLevel.add(downstreamUnit);
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+        return evaluated == upstreamCount.size() ? levels : null;
+    }
+
+    private static List<ConfigurationUnit> downstreamUnits(
+            Map<ConfigurationUnit, List<ConfigurationUnit>> downstreamUnits, ConfigurationUnit unit) {
+        List<ConfigurationUnit> downstream = downstreamUnits.get(unit);
+        if (downstream == null) {
+            downstream = new ArrayList<>(1);
+            downstreamUnits.put(unit, downstream);
+        }
+        return downstream;
+    }
+
+}
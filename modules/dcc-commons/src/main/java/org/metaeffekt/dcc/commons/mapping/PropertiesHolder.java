@@ -40,7 +40,7 @@ public class PropertiesHolder {
     private static final Logger LOG = LoggerFactory.getLogger(PropertiesHolder.class);
     
     // maintains a set of properties, that are relevant in terms of the profile evaluation process 
-    private Set<String> relevantProperties = new HashSet<>();
+    private final Set<String> relevantProperties;
 
     /**
      * Properties which contain information about the application itself, which are not deployment
@@ -57,8 +57,26 @@ public class PropertiesHolder {
     /**
      * Map with properties for different identifiable objects.
      */
-    private final Map<String, Properties> propertiesMap = new HashMap<String, Properties>();
-    
+    private final Map<String, Properties> propertiesMap;
+
+    /**
+     * Tracks the base properties read by the units; used for incremental re-evaluation.
+     */
+    private final PropertyDependencies dependencies = new PropertyDependencies();
+
+    public PropertiesHolder() {
+        this(new HashMap<String, Properties>(), new HashSet<String>());
+    }
+
+    protected PropertiesHolder(Map<String, Properties> propertiesMap, Set<String> relevantProperties) {
+        this.propertiesMap = propertiesMap;
+        this.relevantProperties = relevantProperties;
+    }
+
+    public PropertyDependencies getDependencies() {
+        return dependencies;
+    }
+
     public Properties getSolutionProperties() {
         return solutionProperties;
     }
@@ -79,6 +97,30 @@ public class PropertiesHolder {
         return propertiesMap;
     }
 
+    /**
+     * @return {@code true} in case the holder can be populated concurrently by several threads.
+     */
+    public boolean isConcurrent() {
+        return false;
+    }
+
+    public boolean hasProperties(Identifiable identifiable) {
+        return hasProperties(getIdentifiableStringId(identifiable));
+    }
+
+    protected boolean hasProperties(String id) {
+        return getProperties(id) != null;
+    }
+
+    /**
+     * @param id The id of an object with properties (see {@link #hasProperties(String)}).
+     * @param key The property key.
+     * @return The value of the property managed for the object; fallbacks are not considered.
+     */
+    protected String lookupProperty(String id, String key) {
+        return getProperties(id).getProperty(key);
+    }
+
     public Properties getProperties(Identifiable identifiable) {
         return getProperties(getIdentifiableStringId(identifiable));
     }
@@ -97,6 +139,8 @@ public class PropertiesHolder {
      * @return The value corresponding to the property.
      */
     public String getBaseProperty(String key, String defaultValue) {
+        dependencies.record(key);
+
         String value = null;
         
         if (deploymentProperties != null) {
@@ -141,9 +185,8 @@ public class PropertiesHolder {
     }
 
     public String getProperty(String id, String key, boolean allowFallback) {
-        final Properties properties = getProperties(id);
-        if (properties != null) {
-            String value = properties.getProperty(key);
+        if (hasProperties(id)) {
+            String value = lookupProperty(id, key);
             if (value == null) {
                 if (allowFallback) {
                     String identifyableKey = DccUtils.deriveAttributeIdentifier(id, key);
@@ -180,18 +223,30 @@ public class PropertiesHolder {
         }
     }
 
-    private String getIdentifiableStringId(Identifiable identifiable) {
+    protected String getIdentifiableStringId(Identifiable identifiable) {
         if (identifiable == null) {
             return null;
         }
         return identifiable.getUniqueId();
     }
 
+    /**
+     * Removes the properties of the given object. The object is evaluated again on next evaluation.
+     *
+     * @param identifiable The object.
+     */
+    public void removeProperties(Identifiable identifiable) {
+        propertiesMap.remove(getIdentifiableStringId(identifiable));
+    }
+
     public Properties createPropertiesIfNecessary(Identifiable identifiable) {
         Properties properties = getProperties(identifiable);
         if (properties == null) {
-            properties = new SortedProperties();
-            propertiesMap.put(getIdentifiableStringId(identifiable), properties);
+            final Properties createdProperties = new SortedProperties();
+            properties = propertiesMap.putIfAbsent(getIdentifiableStringId(identifiable), createdProperties);
+            if (properties == null) {
+                properties = createdProperties;
+            }
         }
         return properties;
     }
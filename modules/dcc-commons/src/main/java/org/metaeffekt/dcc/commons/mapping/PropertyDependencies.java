@@ -0,0 +1,83 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.mapping;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records which base properties (solution and deployment properties) were read while evaluating a
+ * {@link ConfigurationUnit}. A read is attributed to the unit currently evaluated by the reading thread;
+ * upstream units evaluated recursively through bindings record their own reads.
+ * <p>
+ * Reads of properties not available are recorded as well. Adding such a property later changes the
+ * evaluation result.
+ */
+public class PropertyDependencies {
+
+    private final Map<String, Set<ConfigurationUnit>> unitsByKey = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<Deque<ConfigurationUnit>> evaluatedUnits = new ThreadLocal<Deque<ConfigurationUnit>>() {
+        @Override
+        protected Deque<ConfigurationUnit> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    void enter(ConfigurationUnit unit) {
+        evaluatedUnits.get().push(unit);
+    }
+
+    void exit() {
+        evaluatedUnits.get().pop();
+    }
+
+    void record(String key) {
+        final ConfigurationUnit unit = evaluatedUnits.get().peek();
+        if (unit != null && key != null) {
+            Set<ConfigurationUnit> units = unitsByKey.get(key);
+            if (units == null) {
+                units = ConcurrentHashMap.newKeySet();
+                final Set<ConfigurationUnit> existingUnits = unitsByKey.putIfAbsent(key, units);
+                if (existingUnits != null) {
+                    units = existingUnits;
+                }
+            }
+            units.add(unit);
+        }
+    }
+
+    /**
+     * @param keys The keys of the base properties.
+     * @return The units that read any of the given base properties during evaluation.
+     */
+    public Set<ConfigurationUnit> findUnits(Collection<String> keys) {
+        final Set<ConfigurationUnit> units = new LinkedHashSet<>();
+        for (String key : keys) {
+            final Set<ConfigurationUnit> unitsReadingKey = unitsByKey.get(key);
+            if (unitsReadingKey != null) {
+                units.addAll(unitsReadingKey);
+            }
+        }
+        return units;
+    }
+
+}
@@ -0,0 +1,505 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.properties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.metaeffekt.core.commons.annotation.Public;
+
+/**
+ * Immutable set of properties backed by arrays sorted by key. Used for generated properties (e.g.
+ * execution properties) that are written once and not modified anymore.
+ * <p>
+ * {@link #write(OutputStream, String)} produces the format of {@link Properties#store(OutputStream, String)}
+ * with the entries in key order, but omits the timestamp comment. The output therefore only depends on the
+ * content. {@link #read(InputStream)} follows the rules of {@link Properties#load(InputStream)}; reading
+ * and writing again results in identical bytes.
+ */
+@Public
+public final class ImmutableSortedProperties {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final char[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    private static final ImmutableSortedProperties EMPTY = new ImmutableSortedProperties(new String[0], new String[0]);
+
+    private final String[] keys;
+    private final String[] values;
+
+    private ImmutableSortedProperties(String[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Creates a snapshot of the entries of the given properties. Like {@link Properties#store(OutputStream,
+     * String)} only the entries of the properties themselves are included; defaults are not.
+     *
+     * @param properties The properties. Keys and values must be strings.
+     * @return The sorted properties.
+     */
+    public static ImmutableSortedProperties of(Properties properties) {
+        final Map.Entry<?, ?>[] entries;
+        synchronized (properties) {
+            entries = properties.entrySet().toArray(new Map.Entry<?, ?>[properties.size()]);
+        }
+        Arrays.sort(entries, new Comparator<Map.Entry<?, ?>>() {
+            @Override
+            public int compare(Map.Entry<?, ?> o1, Map.Entry<?, ?> o2) {
+                return ((String) o1.getKey()).compareTo((String) o2.getKey());
+            }
+        });
+        final String[] keys = new String[entries.length];
+        final String[] values = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            keys[i] = (String) entries[i].getKey();
+            values[i] = (String) entries[i].getValue();
+        }
+        return new ImmutableSortedProperties(keys, values);
+    }
+
+    public static ImmutableSortedProperties empty() {
+        return EMPTY;
+    }
+
+    private static ImmutableSortedProperties of(Map<String, String> map) {
+        final String[] keys = map.keySet().toArray(new String[map.size()]);
+        Arrays.sort(keys);
+        final String[] values = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = map.get(keys[i]);
+        }
+        return new ImmutableSortedProperties(keys, values);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    public String getValue(int index) {
+        return values[index];
+    }
+
+    public String getProperty(String key) {
+        final int index = Arrays.binarySearch(keys, key);
+        return index < 0 ? null : values[index];
+    }
+
+    /**
+     * @param key The key.
+     * @param value The value.
+     * @return Properties with the given entry added or replaced.
+     */
+    public ImmutableSortedProperties with(String key, String value) {
+        final int index = Arrays.binarySearch(keys, key);
+        if (index >= 0) {
+            final String[] newValues = values.clone();
+            newValues[index] = value;
+            return new ImmutableSortedProperties(keys, newValues);
+        }
+        final int insertAt = -index - 1;
+        final String[] newKeys = new String[keys.length + 1];
+        final String[] newValues = new String[keys.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, insertAt);
+        System.arraycopy(values, 0, newValues, 0, insertAt);
+        newKeys[insertAt] = key;
+        newValues[insertAt] = value;
+        System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+        System.arraycopy(values, insertAt, newValues, insertAt + 1, keys.length - insertAt);
+        return new ImmutableSortedProperties(newKeys, newValues);
+    }
+
+    /**
+     * @return A modifiable copy of the properties.
+     */
+    public Properties toProperties() {
+        final Properties properties = new SortedProperties();
+        for (int i = 0; i < keys.length; i++) {
+            properties.setProperty(keys[i], values[i]);
+        }
+        return properties;
+    }
+
+    /**
+     * Writes the properties in ISO 8859-1 encoding. Keys, values and comment are escaped like
+     * {@link Properties#store(OutputStream, String)} does.
+     *
+     * @param out The stream to write to. The stream is flushed but not closed.
+     * @param comment The comment written before the entries. May be {@code null}.
+     * @throws IOException In case the stream cannot be written.
+     */
+    public void write(OutputStream out, String comment) throws IOException {
+        final ByteWriter writer = new ByteWriter(out);
+        if (comment != null) {
+            writeComment(writer, comment);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            writeEscaped(writer, keys[i], true);
+            writer.write('=');
+            writeEscaped(writer, values[i], false);
+            writer.write(LINE_SEPARATOR);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads properties in the format supported by {@link Properties#load(InputStream)}. In case a key is
+     * included several times the last value is used.
+     *
+     * @param in The stream to read from. The stream is not closed.
+     * @return The properties.
+     * @throws IOException In case the stream cannot be read.
+     * @throws IllegalArgumentException In case the input contains a malformed unicode escape.
+     */
+    public static ImmutableSortedProperties read(InputStream in) throws IOException {
+        final LineReader reader = new LineReader(in);
+        final Map<String, String> map = new HashMap<>();
+        int length;
+        while ((length = reader.readLine()) >= 0) {
+            final char[] line = reader.line;
+            int keyLength = 0;
+            int valueStart = length;
+            boolean hasSeparator = false;
+            boolean precedingBackslash = false;
+            while (keyLength < length) {
+                final char c = line[keyLength];
+                if ((c == '=' || c == ':') && !precedingBackslash) {
+                    valueStart = keyLength + 1;
+                    hasSeparator = true;
+                    break;
+                } else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash) {
+                    valueStart = keyLength + 1;
+                    break;
+                }
+                precedingBackslash = c == '\\' && !precedingBackslash;
+                keyLength++;
+            }
+            while (valueStart < length) {
+                final char c = line[valueStart];
+                if (c != ' ' && c != '\t' && c != '\f') {
+                    if (!hasSeparator && (c == '=' || c == ':')) {
+                        hasSeparator = true;
+                    } else {
+                        break;
+                    }
+                }
+                valueStart++;
+            }
+            map.put(unescape(line, 0, keyLength), unescape(line, valueStart, length));
+        }
+        return map.isEmpty() ? EMPTY : of(map);
+    }
+
+    private static void writeComment(ByteWriter writer, String comment) throws IOException {
+        writer.write('#');
+        final int length = comment.length();
+        for (int i = 0; i < length; i++) {
+            final char c = comment.charAt(i);
+            if (c > 0x00ff) {
+                writeUnicodeEscape(writer, c);
+            } else if (c == '\n' || c == '\r') {
+                writer.write(LINE_SEPARATOR);
+                if (c == '\r' && i != length - 1 && comment.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                if (i == length - 1 || (comment.charAt(i + 1) != '#' && comment.charAt(i + 1) != '!')) {
+                    writer.write('#');
+                }
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write(LINE_SEPARATOR);
+    }
+
+    private static void writeEscaped(ByteWriter writer, String value, boolean escapeSpace) throws IOException {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c > 61 && c < 127) {
+                if (c == '\\') {
+                    writer.write('\\');
+                }
+                writer.write(c);
+                continue;
+            }
+            switch (c) {
+                case ' ':
+                    if (i == 0 || escapeSpace) {
+                        writer.write('\\');
+                    }
+                    writer.write(' ');
+                    break;
+                case '\t':
+                    writer.write('\\');
+                    writer.write('t');
+                    break;
+                case '\n':
+                    writer.write('\\');
+                    writer.write('n');
+                    break;
+                case '\r':
+                    writer.write('\\');
+                    writer.write('r');
+                    break;
+                case '\f':
+                    writer.write('\\');
+                    writer.write('f');
+                    break;
+                case '=':
+                case ':':
+                case '#':
+                case '!':
+                    writer.write('\\');
+                    writer.write(c);
+                    break;
+                default:
+                    if (c < 0x0020 || c > 0x007e) {
+                        writeUnicodeEscape(writer, c);
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+    }
+
+    private static void writeUnicodeEscape(ByteWriter writer, char c) throws IOException {
+        writer.write('\\');
+        writer.write('u');
+        writer.write(HEX_DIGITS[(c >> 12) & 0xF]);
+        writer.write(HEX_DIGITS[(c >> 8) & 0xF]);
+        writer.write(HEX_DIGITS[(c >> 4) & 0xF]);
+        writer.write(HEX_DIGITS[c & 0xF]);
+    }
+
+    private static String unescape(char[] line, int offset, int end) {
+        final StringBuilder sb = new StringBuilder(end - offset);
+        while (offset < end) {
+            char c = line[offset++];
+            if (c == '\\' && offset < end) {
+                c = line[offset++];
+                if (c == 'u') {
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        final int digit = offset < end ? Character.digit(line[offset++], 16) : -1;
+                        if (digit < 0) {
+                            throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                        }
+                        value = (value << 4) + digit;
+                    }
+                    sb.append((char) value);
+                } else {
+                    switch (c) {
+                        case 't':
+                            sb.append('\t');
+                            break;
+                        case 'r':
+                            sb.append('\r');
+                            break;
+                        case 'n':
+                            sb.append('\n');
+                            break;
+                        case 'f':
+                            sb.append('\f');
+                            break;
+                        default:
+                            sb.append(c);
+                    }
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ImmutableSortedProperties)) {
+            return false;
+        }
+        final ImmutableSortedProperties other = (ImmutableSortedProperties) obj;
+        return Arrays.equals(keys, other.keys) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(keys) + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(keys[i]).append('=').append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Buffers the characters written as ISO 8859-1 bytes.
+     */
+    private static final class ByteWriter {
+
+        private final OutputStream out;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+
+        private ByteWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void write(char c) throws IOException {
+            if (position == buffer.length) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+            buffer[position++] = (byte) c;
+        }
+
+        void write(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) {
+                write(s.charAt(i));
+            }
+        }
+
+        void flush() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads logical lines in ISO 8859-1 encoding. Comment and blank lines are skipped; continuation lines
+     * are joined with the leading whitespace removed.
+     */
+    private static final class LineReader {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[8192];
+        private int limit;
+        private int offset;
+
+        private char[] line = new char[1024];
+
+        private LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        int readLine() throws IOException {
+            int length = 0;
+            boolean skipWhiteSpace = true;
+            boolean isCommentLine = false;
+            boolean isNewLine = true;
+            boolean appendedLineBegin = false;
+            boolean precedingBackslash = false;
+            boolean skipLF = false;
+
+            while (true) {
+                if (offset >= limit) {
+                    limit = in.read(buffer);
+                    offset = 0;
+                    if (limit <= 0) {
+                        if (length == 0 || isCommentLine) {
+                            return -1;
+                        }
+                        return precedingBackslash ? length - 1 : length;
+                    }
+                }
+                final char c = (char) (0xff & buffer[offset++]);
+                if (skipLF) {
+                    skipLF = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                if (skipWhiteSpace) {
+                    if (c == ' ' || c == '\t' || c == '\f') {
+                        continue;
+                    }
+                    if (!appendedLineBegin && (c == '\r' || c == '\n')) {
+                        continue;
+                    }
+                    skipWhiteSpace = false;
+                    appendedLineBegin = false;
+                }
+                if (isNewLine) {
+                    isNewLine = false;
+                    if (c == '#' || c == '!') {
+                        isCommentLine = true;
+                        continue;
+                    }
+                }
+
+                if (c != '\n' && c != '\r') {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, length * 2);
+                    }
+                    line[length++] = c;
+                    precedingBackslash = c == '\\' && !precedingBackslash;
+                } else {
+                    if (isCommentLine || length == 0) {
+                        isCommentLine = false;
+                        isNewLine = true;
+                        skipWhiteSpace = true;
+                        length = 0;
+                        continue;
+                    }
+                    if (offset >= limit) {
+                        limit = in.read(buffer);
+                        offset = 0;
+                        if (limit <= 0) {
+                            return precedingBackslash ? length - 1 : length;
+                        }
+                    }
+                    if (precedingBackslash) {
+                        length -= 1;
+                        skipWhiteSpace = true;
+                        appendedLineBegin = true;
+                        precedingBackslash = false;
+                        if (c == '\r') {
+                            skipLF = true;
+                        }
+                    } else {
+                        return length;
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,486 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.properties;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.metaeffekt.core.commons.annotation.Public;
+
+/**
+ * Scope confining the system properties set during a script execution to the executing thread.
+ * <p>
+ * {@link #install()} replaces the JVM system properties once by an overlay that is aware of the
+ * scope of the calling thread. Within a scope {@link System#setProperty(String, String)},
+ * {@link System#clearProperty(String)} and any modification of {@link System#getProperties()} are
+ * recorded in the scope; reads consult the scope before the JVM system properties. This also covers
+ * Ant core and third-party tasks. Outside of a scope the overlay operates on the JVM system
+ * properties. Enumerating the properties within a scope works on a snapshot.
+ * <p>
+ * The scope is not inherited by threads started within the scope; pooled threads would otherwise
+ * keep the scope of the execution they were created in. Work passed to other threads is bound to
+ * the scope explicitly with {@link #propagate(Runnable)}. Code replacing the system properties with
+ * {@link System#setProperties(Properties)} bypasses the overlay until the original instance is
+ * restored.
+ */
+@Public
+public final class SystemPropertyScope implements AutoCloseable {
+
+    private static final ThreadLocal<SystemPropertyScope> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Marks a property removed within a scope.
+     */
+    private static final Object REMOVED = new Object();
+
+    private final SystemPropertyScope parent;
+
+    private final Map<Object, Object> properties = new ConcurrentHashMap<>();
+
+    private SystemPropertyScope(SystemPropertyScope parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Installs the scope-aware overlay as JVM system properties, unless already installed.
+     */
+    public static synchronized void install() {
+        final Properties systemProperties = System.getProperties();
+        if (!(systemProperties instanceof ScopedSystemProperties)) {
+            System.setProperties(new ScopedSystemProperties(systemProperties));
+        }
+    }
+
+    /**
+     * Opens a new scope for the current thread. Properties of enclosing scopes remain visible.
+     *
+     * @return The scope to be closed after the execution.
+     */
+    public static SystemPropertyScope open() {
+        if (!(System.getProperties() instanceof ScopedSystemProperties)) {
+            install();
+        }
+        final SystemPropertyScope scope = new SystemPropertyScope(CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    @Override
+    public void close() {
+        if (parent == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(parent);
+        }
+    }
+
+    /**
+     * Binds the given work to the scope of the current thread. The returned runnable executes the
+     * work within this scope on any thread and restores the scope of that thread afterwards.
+     *
+     * @param runnable The work to execute.
+     * @return The runnable bound to the current scope.
+     */
+    public static Runnable propagate(final Runnable runnable) {
+        final SystemPropertyScope scope = CURRENT.get();
+        return new Runnable() {
+            @Override
+            public void run() {
+                final SystemPropertyScope previous = CURRENT.get();
+                CURRENT.set(scope);
+                try {
+                    runnable.run();
+                } finally {
+                    if (previous == null) {
+                        CURRENT.remove();
+                    } else {
+                        CURRENT.set(previous);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The value of the innermost scope, {@link #REMOVED} or <code>null</code> in case the
+     *   property was not modified within the scopes.
+     */
+    private Object lookup(Object key) {
+        for (SystemPropertyScope scope = this; scope != null; scope = scope.parent) {
+            final Object value = scope.properties.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * System properties delegating to the JVM system properties or to the scope of the current
+     * thread. The inherited hashtable is not used.
+     */
+    private static final class ScopedSystemProperties extends Properties {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Properties base;
+
+        private ScopedSystemProperties(Properties base) {
+            this.base = base;
+        }
+
+        /**
+         * @return The JVM system properties or a snapshot overlaid with the current scopes.
+         */
+        private Properties view() {
+            SystemPropertyScope scope = CURRENT.get();
+            if (scope == null) {
+                return base;
+            }
+
+            final Deque<SystemPropertyScope> scopes = new ArrayDeque<>();
+            for (; scope != null; scope = scope.parent) {
+                scopes.push(scope);
+            }
+
+            final Properties snapshot = new Properties();
+            snapshot.putAll(base);
+            for (SystemPropertyScope s : scopes) {
+                for (Map.Entry<Object, Object> entry : s.properties.entrySet()) {
+                    if (entry.getValue() == REMOVED) {
+                        snapshot.remove(entry.getKey());
+                    } else {
+                        snapshot.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            return snapshot;
+        }
+
+        @Override
+        public String getProperty(String key) {
+            final SystemPropertyScope scope = CURRENT.get();
+            final Object value = scope == null ? null : scope.lookup(key);
+            if (value == null) {
+                return base.getProperty(key);
+            }
+            return value instanceof String ? (String) value : null;
+        }
+
+        @Override
+        public String getProperty(String key, String defaultValue) {
+            final String value = getProperty(key);
+            return value == null ? defaultValue : value;
+        }
+
+        @Override
+        public Object get(Object key) {
+            final SystemPropertyScope scope = CURRENT.get();
+            final Object value = scope == null ? null : scope.lookup(key);
+            if (value == null) {
+                return base.get(key);
+            }
+            return value == REMOVED ? null : value;
+        }
+
+        @Override
+        public Object getOrDefault(Object key, Object defaultValue) {
+            final Object value = get(key);
+            return value == null ? defaultValue : value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Object setProperty(String key, String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Object put(Object key, Object value) {
+            final SystemPropertyScope scope = CURRENT.get();
+            if (scope == null) {
+                return base.put(key, value);
+            }
+            Objects.requireNonNull(value);
+            final Object previous = get(key);
+            scope.properties.put(key, value);
+            return previous;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            final SystemPropertyScope scope = CURRENT.get();
+            if (scope == null) {
+                return base.remove(key);
+            }
+            final Object previous = get(key);
+            scope.properties.put(key, REMOVED);
+            return previous;
+        }
+
+        @Override
+        public void putAll(Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        @Override
+        public void clear() {
+            if (CURRENT.get() == null) {
+                base.clear();
+                return;
+            }
+            for (Object key : view().keySet()) {
+                remove(key);
+            }
+        }
+
+        @Override
+        public Object putIfAbsent(Object key, Object value) {
+            if (CURRENT.get() == null) {
+                return base.putIfAbsent(key, value);
+            }
+            final Object previous = get(key);
+            return previous == null ? put(key, value) : previous;
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            if (CURRENT.get() == null) {
+                return base.remove(key, value);
+            }
+            if (value != null && value.equals(get(key))) {
+                remove(key);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean replace(Object key, Object oldValue, Object newValue) {
+            if (CURRENT.get() == null) {
+                return base.replace(key, oldValue, newValue);
+            }
+            if (oldValue != null && oldValue.equals(get(key))) {
+                put(key, newValue);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Object replace(Object key, Object value) {
+            if (CURRENT.get() == null) {
+                return base.replace(key, value);
+            }
+            return containsKey(key) ? put(key, value) : null;
+        }
+
+        @Override
+        public void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+            if (CURRENT.get() == null) {
+                base.replaceAll(function);
+                return;
+            }
+            for (Map.Entry<Object, Object> entry : view().entrySet()) {
+                put(entry.getKey(), function.apply(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        @Override
+        public Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+            if (CURRENT.get() == null) {
+                return base.computeIfAbsent(key, mappingFunction);
+            }
+            Object value = get(key);
+            if (value == null) {
+                value = mappingFunction.apply(key);
+                if (value != null) {
+                    put(key, value);
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public Object computeIfPresent(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            if (CURRENT.get() == null) {
+                return base.computeIfPresent(key, remappingFunction);
+            }
+            final Object oldValue = get(key);
+            return oldValue == null ? null : update(key, remappingFunction.apply(key, oldValue));
+        }
+
+        @Override
+        public Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            if (CURRENT.get() == null) {
+                return base.compute(key, remappingFunction);
+            }
+            return update(key, remappingFunction.apply(key, get(key)));
+        }
+
+        @Override
+        public Object merge(Object key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            if (CURRENT.get() == null) {
+                return base.merge(key, value, remappingFunction);
+            }
+            final Object oldValue = get(key);
+            return update(key, oldValue == null ? value : remappingFunction.apply(oldValue, value));
+        }
+
+        private Object update(Object key, Object value) {
+            if (value == null) {
+                remove(key);
+            } else {
+                put(key, value);
+            }
+            return value;
+        }
+
+        @Override
+        public int size() {
+            return view().size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return view().isEmpty();
+        }
+
+        @Override
+        public Enumeration<Object> keys() {
+            return view().keys();
+        }
+
+        @Override
+        public Enumeration<Object> elements() {
+            return view().elements();
+        }
+
+        @Override
+        public Set<Object> keySet() {
+            return view().keySet();
+        }
+
+        @Override
+        public Collection<Object> values() {
+            return view().values();
+        }
+
+        @Override
+        public Set<Map.Entry<Object, Object>> entrySet() {
+            return view().entrySet();
+        }
+
+        @Override
+        public boolean contains(Object value) {
+            return view().contains(value);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return view().containsValue(value);
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super Object, ? super Object> action) {
+            view().forEach(action);
+        }
+
+        @Override
+        public Enumeration<?> propertyNames() {
+            return view().propertyNames();
+        }
+
+        @Override
+        public Set<String> stringPropertyNames() {
+            return view().stringPropertyNames();
+        }
+
+        @Override
+        public void list(PrintStream out) {
+            view().list(out);
+        }
+
+        @Override
+        public void list(PrintWriter out) {
+            view().list(out);
+        }
+
+        @Override
+        public void store(Writer writer, String comments) throws IOException {
+            view().store(writer, comments);
+        }
+
+        @Override
+        public void store(OutputStream out, String comments) throws IOException {
+            view().store(out, comments);
+        }
+
+        @Override
+        public void storeToXML(OutputStream os, String comment) throws IOException {
+            view().storeToXML(os, comment);
+        }
+
+        @Override
+        public void storeToXML(OutputStream os, String comment, String encoding) throws IOException {
+            view().storeToXML(os, comment, encoding);
+        }
+
+        @Override
+        public synchronized Object clone() {
+            final Properties clone = new Properties();
+            clone.putAll(view());
+            return clone;
+        }
+
+        @Override
+        public String toString() {
+            return view().toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || view().equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return view().hashCode();
+        }
+    }
+
+}
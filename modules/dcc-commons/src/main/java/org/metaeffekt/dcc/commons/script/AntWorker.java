@@ -0,0 +1,229 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.script;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+import org.apache.tools.ant.DefaultLogger;
+import org.apache.tools.ant.DemuxOutputStream;
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.ProjectHelper;
+import org.apache.tools.ant.input.DefaultInputHandler;
+
+import org.metaeffekt.dcc.commons.ant.CachingProjectHelper;
+import org.metaeffekt.dcc.commons.ant.ProjectTemplate;
+
+/**
+ * Long-living Ant process executing scripts on request of the {@link AntWorkerPool}. The worker
+ * (including the Ant helpers it uses) only depends on Ant and the JDK to run on the classpath of an
+ * Ant installation.
+ * <p>
+ * The protocol is line based. The worker announces its availability with {@value #READY}. Each
+ * request consists of the script file, the property file and the base directory separated by tabs.
+ * The base directory is expected to be the working directory of the worker process.
+ * The worker answers with the output lines of the script prefixed by {@value #OUTPUT} or
+ * {@value #ERROR} and terminates the response with {@value #DONE} or {@value #DONE_RECYCLE}, the
+ * latter in case the execution left state behind that may affect subsequent executions. The
+ * worker terminates when its input is closed.
+ */
+public final class AntWorker {
+
+    static final String READY = "ready";
+
+    static final String DONE = "done";
+
+    static final String DONE_RECYCLE = "done recycle";
+
+    static final String OUTPUT = "o ";
+
+    static final String ERROR = "e ";
+
+    static final char SEPARATOR = '\t';
+
+    private final PrintStream protocol;
+
+    private final PrintStream out;
+
+    private final PrintStream err;
+
+    private int baselineThreadCount;
+
+    private AntWorker(PrintStream protocol) {
+        this.protocol = protocol;
+        this.out = new PrintStream(new LineOutputStream(protocol, OUTPUT), true);
+        this.err = new PrintStream(new LineOutputStream(protocol, ERROR), true);
+    }
+
+    public static void main(String[] args) throws IOException {
+        final Charset utf8 = Charset.forName("UTF-8");
+        final BufferedReader in = new BufferedReader(
+            new InputStreamReader(new FileInputStream(FileDescriptor.in), utf8));
+        final PrintStream protocol =
+            new PrintStream(new FileOutputStream(FileDescriptor.out), true, utf8.name());
+
+        final AntWorker worker = new AntWorker(protocol);
+
+        // the standard streams belong to the protocol; scripts must not interfere
+        System.setIn(new ByteArrayInputStream(new byte[0]));
+        System.setOut(worker.out);
+        System.setErr(worker.err);
+
+        // build files and their imports are parsed once per worker
+        CachingProjectHelper.register();
+
+        worker.baselineThreadCount = countNonDaemonThreads();
+        protocol.println(READY);
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            final String[] request = line.split(String.valueOf(SEPARATOR), -1);
+            if (request.length != 3) {
+                worker.err.println("Invalid request: " + line);
+                protocol.println(DONE_RECYCLE);
+                continue;
+            }
+            final boolean recycle =
+                worker.execute(new File(request[0]), new File(request[1]), new File(request[2]));
+            protocol.println(recycle ? DONE_RECYCLE : DONE);
+        }
+
+        // terminate threads potentially left behind by the executed scripts
+        System.exit(0);
+    }
+
+    /**
+     * Executes the default target of the given script in the manner of the Ant command line.
+     * 
+     * @return <code>true</code> in case the worker should not be used for further executions.
+     */
+    private boolean execute(File scriptFile, File propertyFile, File baseDir) {
+        // preserve system properties to avoid side-effects in between script executions
+        final Properties originalSystemProperties = System.getProperties();
+        final Properties systemProperties = new Properties();
+        systemProperties.putAll(originalSystemProperties);
+        systemProperties.setProperty("user.dir", baseDir.getAbsolutePath());
+        System.setProperties(systemProperties);
+
+        final Project project = new Project();
+        project.setInputHandler(new DefaultInputHandler());
+        final DefaultLogger logger = new DefaultLogger();
+        logger.setMessageOutputLevel(Project.MSG_INFO);
+        logger.setOutputPrintStream(out);
+        logger.setErrorPrintStream(err);
+        project.addBuildListener(logger);
+
+        System.setOut(new PrintStream(new DemuxOutputStream(project, false), true));
+        System.setErr(new PrintStream(new DemuxOutputStream(project, true), true));
+
+        Throwable error = null;
+        try {
+            project.fireBuildStarted();
+            ProjectTemplate.init(project);
+
+            final Properties properties = loadProperties(propertyFile);
+            for (String key : properties.stringPropertyNames()) {
+                project.setUserProperty(key, properties.getProperty(key));
+            }
+            project.setUserProperty(MagicNames.ANT_FILE, scriptFile.getAbsolutePath());
+
+            ProjectHelper.configureProject(project, scriptFile);
+            if (project.getDefaultTarget() != null) {
+                project.executeTarget(project.getDefaultTarget());
+            }
+        } catch (RuntimeException | Error e) {
+            error = e;
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(out);
+            System.setErr(err);
+            try {
+                project.fireBuildFinished(error);
+            } catch (RuntimeException e) {
+                err.println(e.getMessage());
+            }
+            System.setProperties(originalSystemProperties);
+        }
+
+        return error instanceof Error || countNonDaemonThreads() > baselineThreadCount;
+    }
+
+    private static Properties loadProperties(File propertyFile) {
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(propertyFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot load property file " + propertyFile, e);
+        }
+        return properties;
+    }
+
+    private static int countNonDaemonThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && !thread.isDaemon()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes each line to the protocol stream using the given prefix.
+     */
+    private static class LineOutputStream extends OutputStream {
+
+        private final PrintStream protocol;
+
+        private final String prefix;
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        LineOutputStream(PrintStream protocol, String prefix) {
+            this.protocol = protocol;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                String line = new String(buffer.toByteArray(), Charset.defaultCharset());
+                if (line.endsWith("\r")) {
+                    line = line.substring(0, line.length() - 1);
+                }
+                buffer.reset();
+                protocol.println(prefix + line);
+            } else {
+                buffer.write(b);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,350 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.script;
+
+import static org.metaeffekt.dcc.commons.DccProperties.DCC_SYSTEM_PROPERTY_ANT_WORKER_COUNT;
+import static org.metaeffekt.dcc.commons.DccProperties.DCC_SYSTEM_PROPERTY_ANT_WORKER_RUNS;
+import static org.metaeffekt.dcc.commons.DccProperties.DCC_SYSTEM_PROPERTY_ANT_WORKER_TIMEOUT;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.ant.BuildException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.metaeffekt.dcc.commons.DccProperties;
+
+/**
+ * Pool of {@link AntWorker} processes for a dedicated Ant installation. Compared to forking a new
+ * Ant process for every script the workers save the JVM startup and the Ant bootstrapping. Each
+ * worker runs a limited number of scripts and is discarded early in case a script left threads
+ * behind or the communication failed.
+ * <p>
+ * A worker is started in the package directory of the script (like the forked Ant process). The
+ * working directory of a JVM cannot be changed, so workers are only reused for scripts of the same
+ * package directory. The least recently used idle worker is discarded when exceeding the maximum
+ * number of idle workers.
+ * <p>
+ * A worker that does not answer within {@value DccProperties#DCC_SYSTEM_PROPERTY_ANT_WORKER_TIMEOUT}
+ * seconds (default one hour) is killed and the execution fails.
+ * <p>
+ * The workers are started with {@code java} instead of the {@code ant} launcher script. Compared to
+ * the command line the following differs:
+ * <ul>
+ * <li>The classpath consists of the jars in {@code ANT_HOME/lib} and {@code ~/.ant/lib}, the entries
+ * of the {@code CLASSPATH} environment variable and the dcc-commons jar hosting the worker. The
+ * classes of dcc-commons are therefore visible to the taskdefs of the scripts.</li>
+ * <li>{@code ANT_OPTS} is passed to the worker JVM unless a log4j configuration is used (as for the
+ * forked process, which overrides {@code ANT_OPTS} in this case).</li>
+ * <li>{@code ANT_ARGS} (including {@code -lib}), {@code .antrc} files and {@code tools.jar} are not
+ * evaluated.</li>
+ * </ul>
+ * The pool is therefore only used when enabled with
+ * {@value DccProperties#DCC_SYSTEM_PROPERTY_ANT_WORKER_POOL}.
+ */
+final class AntWorkerPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AntWorkerPool.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Map<String, AntWorkerPool> POOLS = new HashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(AntWorkerPool::shutdownAll, "ant-worker-pool-shutdown"));
+    }
+
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "ant-worker-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File antHome;
+
+    private final String log4jConfig;
+
+    private final int maxIdleWorkers = Integer.getInteger(DCC_SYSTEM_PROPERTY_ANT_WORKER_COUNT, 4);
+
+    private final int maxRuns = Integer.getInteger(DCC_SYSTEM_PROPERTY_ANT_WORKER_RUNS, 50);
+
+    private final long timeoutSeconds = Long.getLong(DCC_SYSTEM_PROPERTY_ANT_WORKER_TIMEOUT, 3600);
+
+    /**
+     * The idle workers; the most recently used first.
+     */
+    private final Deque<Worker> idleWorkers = new ArrayDeque<>();
+
+    private AntWorkerPool(File antHome, String log4jConfig) {
+        this.antHome = antHome;
+        this.log4jConfig = log4jConfig;
+    }
+
+    /**
+     * Receives the output lines of a script executed by a worker.
+     */
+    interface LineHandler {
+        void line(String line, boolean error);
+    }
+
+    static synchronized AntWorkerPool getPool(File antHome, String log4jConfig) {
+        final String key = antHome.getAbsolutePath() + File.pathSeparator + log4jConfig;
+        AntWorkerPool pool = POOLS.get(key);
+        if (pool == null) {
+            pool = new AntWorkerPool(antHome.getAbsoluteFile(), log4jConfig);
+            POOLS.put(key, pool);
+        }
+        return pool;
+    }
+
+    private static synchronized void shutdownAll() {
+        for (AntWorkerPool pool : POOLS.values()) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Executes the default target of the script with the properties of the given file. The
+     * output of the script is passed to the handler while the script is running.
+     */
+    void execute(File scriptFile, File propertyFile, File baseDir, LineHandler handler) {
+        final Worker worker = acquire(baseDir.getAbsoluteFile());
+        final ScheduledFuture<?> timeout = TIMEOUTS.schedule(worker::kill, timeoutSeconds, TimeUnit.SECONDS);
+        boolean reusable = false;
+        try {
+            worker.send(scriptFile.getAbsolutePath() + AntWorker.SEPARATOR
+                + propertyFile.getAbsolutePath() + AntWorker.SEPARATOR + baseDir.getAbsolutePath());
+            String line;
+            while ((line = worker.readLine()) != null) {
+                if (line.startsWith(AntWorker.OUTPUT)) {
+                    handler.line(line.substring(AntWorker.OUTPUT.length()), false);
+                } else if (line.startsWith(AntWorker.ERROR)) {
+                    handler.line(line.substring(AntWorker.ERROR.length()), true);
+                } else if (line.equals(AntWorker.DONE)) {
+                    reusable = true;
+                    return;
+                } else if (line.equals(AntWorker.DONE_RECYCLE)) {
+                    LOG.debug("Ant worker [{}] requested to be recycled.", worker);
+                    return;
+                } else {
+                    // output of the jvm not passing the worker streams
+                    handler.line(line, true);
+                }
+            }
+            if (worker.killed) {
+                throw new BuildException(String.format(
+                    "Ant worker killed after [%s] seconds while executing [%s].", timeoutSeconds, scriptFile));
+            }
+            throw new BuildException(String.format(
+                "Ant worker terminated unexpectedly while executing [%s].", scriptFile));
+        } catch (IOException e) {
+            throw new BuildException(String.format(
+                "Cannot communicate with ant worker while executing [%s].", scriptFile), e);
+        } finally {
+            timeout.cancel(false);
+            release(worker, reusable);
+        }
+    }
+
+    private Worker acquire(File workingDir) {
+        synchronized (idleWorkers) {
+            for (Iterator<Worker> iterator = idleWorkers.iterator(); iterator.hasNext();) {
+                final Worker worker = iterator.next();
+                if (worker.workingDir.equals(workingDir)) {
+                    iterator.remove();
+                    return worker;
+                }
+            }
+        }
+        try {
+            return startWorker(workingDir);
+        } catch (IOException e) {
+            throw new BuildException("Cannot start ant worker using ant installation " + antHome, e);
+        }
+    }
+
+    private void release(Worker worker, boolean reusable) {
+        worker.runs++;
+        if (reusable && worker.runs < maxRuns && worker.isAlive()) {
+            final Worker evicted;
+            synchronized (idleWorkers) {
+                idleWorkers.addFirst(worker);
+                evicted = idleWorkers.size() > maxIdleWorkers ? idleWorkers.pollLast() : null;
+            }
+            if (evicted != null) {
+                evicted.destroy();
+            }
+            return;
+        }
+        worker.destroy();
+    }
+
+    private void shutdown() {
+        synchronized (idleWorkers) {
+            for (Worker worker : idleWorkers) {
+                worker.destroy();
+            }
+            idleWorkers.clear();
+        }
+    }
+
+    private Worker startWorker(File workingDir) throws IOException {
+        final List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        if (log4jConfig != null) {
+            command.add("-Dlog4j.configurationFile=" + log4jConfig);
+        } else {
+            final String antOpts = System.getenv("ANT_OPTS");
+            if (antOpts != null && !antOpts.trim().isEmpty()) {
+                command.addAll(Arrays.asList(antOpts.trim().split("\\s+")));
+            }
+        }
+        command.add("-Dant.home=" + antHome.getPath());
+        command.add("-cp");
+        command.add(buildClassPath());
+        command.add(AntWorker.class.getName());
+
+        final ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.directory(workingDir);
+        processBuilder.environment().put("ANT_HOME", antHome.getPath());
+        processBuilder.environment().put("JAVA_HOME", System.getProperty("java.home"));
+        processBuilder.redirectErrorStream(true);
+
+        LOG.debug("Starting ant worker {} in [{}]", command, workingDir);
+        final Worker worker = new Worker(processBuilder.start(), workingDir);
+        final ScheduledFuture<?> timeout = TIMEOUTS.schedule(worker::kill, timeoutSeconds, TimeUnit.SECONDS);
+        try {
+            String line;
+            while ((line = worker.readLine()) != null) {
+                if (line.equals(AntWorker.READY)) {
+                    return worker;
+                }
+                LOG.info(line);
+            }
+        } finally {
+            timeout.cancel(false);
+        }
+        worker.destroy();
+        throw new IOException("Ant worker terminated during startup.");
+    }
+
+    /**
+     * Ant libraries as used by the Ant launcher followed by the location of the worker class.
+     */
+    private String buildClassPath() {
+        final StringBuilder classPath = new StringBuilder();
+        appendJars(classPath, new File(antHome, "lib"));
+        appendJars(classPath, new File(new File(System.getProperty("user.home"), ".ant"), "lib"));
+        final String environmentClassPath = System.getenv("CLASSPATH");
+        if (environmentClassPath != null && !environmentClassPath.isEmpty()) {
+            classPath.append(environmentClassPath).append(File.pathSeparator);
+        }
+        try {
+            classPath.append(new File(AntWorker.class.getProtectionDomain().getCodeSource()
+                .getLocation().toURI()).getAbsolutePath());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Cannot determine location of " + AntWorker.class, e);
+        }
+        return classPath.toString();
+    }
+
+    private static void appendJars(StringBuilder classPath, File dir) {
+        final File[] jars = dir.listFiles((d, name) -> name.endsWith(".jar"));
+        if (jars != null) {
+            Arrays.sort(jars);
+            for (File jar : jars) {
+                classPath.append(jar.getAbsolutePath()).append(File.pathSeparator);
+            }
+        }
+    }
+
+    private static class Worker {
+
+        private final Process process;
+
+        private final File workingDir;
+
+        private final BufferedReader reader;
+
+        private final Writer writer;
+
+        private int runs;
+
+        private volatile boolean killed;
+
+        Worker(Process process, File workingDir) {
+            this.process = process;
+            this.workingDir = workingDir;
+            this.reader = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF8));
+            this.writer = new OutputStreamWriter(process.getOutputStream(), UTF8);
+        }
+
+        String readLine() throws IOException {
+            return reader.readLine();
+        }
+
+        void send(String line) throws IOException {
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+        }
+
+        boolean isAlive() {
+            return process.isAlive();
+        }
+
+        void destroy() {
+            try {
+                // closing the input terminates the worker regularly
+                writer.close();
+            } catch (IOException e) {
+                LOG.debug("Cannot close input of ant worker.", e);
+            }
+            process.destroy();
+        }
+
+        void kill() {
+            LOG.warn("Killing ant worker [{}] as it did not answer in time.", this);
+            killed = true;
+            process.destroyForcibly();
+        }
+
+        @Override
+        public String toString() {
+            return "AntWorker[dir=" + workingDir + ", runs=" + runs + "]";
+        }
+    }
+
+}
@@ -16,6 +16,7 @@
 package org.metaeffekt.dcc.commons.script;
 
 import java.io.File;
+import java.util.function.Consumer;
 
 import org.metaeffekt.dcc.commons.domain.Id;
 import org.metaeffekt.dcc.commons.domain.Type.DeploymentId;
@@ -43,6 +44,11 @@ public class CommandScriptExecutionContext {
     
     private File upgradePropertiesFile;
 
+    /**
+     * Optional listener receiving the output lines of the script execution while running.
+     */
+    private Consumer<String> outputListener;
+
     private Id<DeploymentId> deploymentId = Id.createDeploymentId("default");
 
     public File getPackageDir() {
@@ -101,4 +107,12 @@ public class CommandScriptExecutionContext {
         this.upgradePropertiesFile = upgradePropertiesFile;
     }
 
+    public Consumer<String> getOutputListener() {
+        return outputListener;
+    }
+
+    public void setOutputListener(Consumer<String> outputListener) {
+        this.outputListener = outputListener;
+    }
+
 }
@@ -25,27 +25,35 @@ import static org.metaeffekt.dcc.commons.DccProperties.DCC_PACKAGE_DIR;
 import static org.metaeffekt.dcc.commons.DccProperties.DCC_PACKAGE_ID;
 import static org.metaeffekt.dcc.commons.DccProperties.DCC_PREREQUISITES_PROPERTIES;
 import static org.metaeffekt.dcc.commons.DccProperties.DCC_SOLUTION_DIR;
+import static org.metaeffekt.dcc.commons.DccProperties.DCC_SYSTEM_PROPERTY_ANT_WORKER_POOL;
 import static org.metaeffekt.dcc.commons.DccProperties.DCC_TARGET_DIR;
 import static org.metaeffekt.dcc.commons.DccProperties.DCC_UNIT_ID;
 import static org.metaeffekt.dcc.commons.DccProperties.DCC_UPGRADE_PROPERTIES;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.function.Consumer;
 
-import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.BuildEvent;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.ProjectHelper;
-import org.apache.tools.ant.taskdefs.ExecTask;
-import org.apache.tools.ant.types.Commandline.Argument;
-import org.apache.tools.ant.types.Environment.Variable;
+import org.apache.tools.ant.taskdefs.Execute;
+import org.apache.tools.ant.taskdefs.PumpStreamHandler;
+import org.apache.tools.ant.util.LineOrientedOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.metaeffekt.dcc.commons.DccUtils;
+import org.metaeffekt.dcc.commons.ant.CachingProjectHelper;
 import org.metaeffekt.dcc.commons.ant.ProjectAdapter;
+import org.metaeffekt.dcc.commons.ant.ProjectTemplate;
 import org.metaeffekt.dcc.commons.ant.PropertyUtils;
 import org.metaeffekt.dcc.commons.commands.Commands;
 import org.metaeffekt.dcc.commons.domain.Id;
@@ -53,6 +61,7 @@ import org.metaeffekt.dcc.commons.domain.Type.PackageId;
 import org.metaeffekt.dcc.commons.domain.Type.UnitId;
 import org.metaeffekt.dcc.commons.execution.ExecutionStateHandler;
 import org.metaeffekt.dcc.commons.properties.SortedProperties;
+import org.metaeffekt.dcc.commons.properties.SystemPropertyScope;
 
 public class CommandScriptExecutor {
     
@@ -181,24 +190,29 @@ public class CommandScriptExecutor {
             project.setProperty(DCC_JAVA_HOME, System.getProperty("java.home"));
             project.setProperty(DCC_DEPLOYMENT_ID, executionContext.getDeploymentId().getValue());
 
-            project.init();
+            // reuse the default task and type definitions instead of loading them again
+            ProjectTemplate.init(project);
 
-            final ProjectHelper helper = ProjectHelper.getProjectHelper();
-            project.addReference(ANT_PROJECT_HELPER, helper);
-            helper.parse(project, scriptFile);
+            if (executionContext.getOutputListener() != null) {
+                project.addBuildListener(new OutputForwardingListener(executionContext.getOutputListener()));
+            }
 
-            // the project helper modifies the projects baseDir; we ensure it points to the right
-            // spot
-            project.setBaseDir(packageDir);
+            // system properties set by the script (also top-level tasks executed while parsing)
+            //   are confined to this execution; no global isolation is required, which enables to
+            //   execute scripts concurrently
+            try (SystemPropertyScope scope = SystemPropertyScope.open()) {
+                // the script and its imports are parsed once and replayed from the cache afterwards
+                CachingProjectHelper.register();
+                final ProjectHelper helper = new CachingProjectHelper();
+                project.addReference(ANT_PROJECT_HELPER, helper);
+                helper.parse(project, scriptFile);
+
+                // the project helper modifies the projects baseDir; we ensure it points to the right
+                // spot
+                project.setBaseDir(packageDir);
 
-            // preserve properties to avoid side-effects in between script executions
-            final Properties originalSystemProperties = isolateSystemProperties();
-            try {
                 // execute the scripts default target
                 project.executeTarget(project.getDefaultTarget());
-            } finally {
-                // restore original properties
-                System.setProperties(originalSystemProperties);
             }
         } finally {
             //cleans the loaded classes
@@ -246,36 +260,109 @@ public class CommandScriptExecutor {
         }
         
         final File packageDir = new File(executionContext.getPackageDir(), packageId.getValue());
+        final File antHome = determineAntHome();
+        final String log4jConfig = determineLog4jConfiguration();
+
+        if (Boolean.parseBoolean(System.getProperty(DCC_SYSTEM_PROPERTY_ANT_WORKER_POOL, "false"))) {
+            executeCommandScriptInWorker(scriptFile, execProperties, packageDir, antHome, log4jConfig);
+        } else {
+            executeCommandScriptInProcess(scriptFile, execProperties, packageDir, antHome, log4jConfig);
+        }
+    }
+
+    private void executeCommandScriptInWorker(File scriptFile, File execProperties, File packageDir,
+            File antHome, String log4jConfig) {
+        final ScriptOutputProcessor outputProcessor =
+            new ScriptOutputProcessor(executionContext.getOutputListener());
+
+        // NOTE the worker process cannot modify the system properties of this jvm. No isolation is
+        //   required, which enables to execute forked scripts concurrently.
+        LOG.info("Executing [{}] with property file [{}] in ant worker", scriptFile.getAbsolutePath(),
+            execProperties.getAbsolutePath());
+        AntWorkerPool.getPool(antHome, log4jConfig).execute(scriptFile, execProperties, packageDir,
+            (line, error) -> {
+                if (error) {
+                    outputProcessor.errorLine(line);
+                } else {
+                    outputProcessor.outputLine(line);
+                }
+            });
+
+        outputProcessor.checkBuildFailed();
+    }
+
+    private void executeCommandScriptInProcess(File scriptFile, File execProperties, File packageDir,
+            File antHome, String log4jConfig) {
         final Project project = new ProjectAdapter();
         
         // all executions are relative to the package
         project.setBaseDir(packageDir);
-        
-        ExecTask exec = new ExecTask();
-        exec.setProject(project);
-        exec.setOutputproperty("exec.output");
-        exec.setErrorProperty("exec.error");
-        exec.setDir(packageDir);
-        exec.setFailIfExecutionFails(true);
-        exec.setResultProperty("exec.result");
-
-        File antHome = determineAntHome();
-        File antBin = determineAntExecutable(antHome);
-        exec.setExecutable(antBin.getAbsolutePath());
+
+        final File antBin = determineAntExecutable(antHome);
+        final String[] commandline = new String[] { antBin.getAbsolutePath(),
+            "-f", scriptFile.getAbsolutePath(), "-propertyfile", execProperties.getAbsolutePath() };
+
+        final List<String> environment = new ArrayList<>();
 
         // provide ANT_HOME (may be not available or set to some other ANT causing unexpected issues)
-        final Variable antHomeVar = new Variable();
-        antHomeVar.setKey("ANT_HOME");
-        antHomeVar.setValue(antHome.getPath());
-        exec.addEnv(antHomeVar);
+        environment.add("ANT_HOME=" + antHome.getPath());
 
         // supply the JAVA_HOME (using the java the curren jvm runs with)
-        final Variable javaHomeVar = new Variable();
-        javaHomeVar.setKey("JAVA_HOME");
-        javaHomeVar.setValue(System.getProperty("java.home"));
-        exec.addEnv(javaHomeVar);
+        environment.add("JAVA_HOME=" + System.getProperty("java.home"));
 
         // configure log4j for forked ant
+        if (log4jConfig != null) {
+            environment.add("ANT_OPTS=-Dlog4j.configurationFile=" + log4jConfig);
+        }
+
+        // the output is processed line by line while the script is running
+        final ScriptOutputProcessor outputProcessor =
+            new ScriptOutputProcessor(executionContext.getOutputListener());
+        final LineOrientedOutputStream out = new LineOrientedOutputStream() {
+            @Override
+            protected void processLine(String line) {
+                outputProcessor.outputLine(line);
+            }
+        };
+        final LineOrientedOutputStream err = new LineOrientedOutputStream() {
+            @Override
+            protected void processLine(String line) {
+                outputProcessor.errorLine(line);
+            }
+        };
+
+        final Execute execute = new Execute(new PumpStreamHandler(out, err));
+        execute.setAntRun(project);
+        execute.setWorkingDirectory(packageDir);
+        execute.setEnvironment(environment.toArray(new String[environment.size()]));
+        execute.setCommandline(commandline);
+
+        // NOTE the forked process cannot modify the system properties of this jvm. No isolation is
+        //   required, which enables to execute forked scripts concurrently.
+        LOG.info("Executing [{}] [-f {}] [-propertyfile {}]", antBin.getAbsolutePath(),
+            scriptFile.getAbsolutePath(), execProperties.getAbsolutePath());
+        try {
+            execute.execute();
+        } catch (IOException e) {
+            throw new BuildException("Execute failed: " + e.toString(), e);
+        } finally {
+            // process remaining output not terminated by a line break
+            closeQuietly(out);
+            closeQuietly(err);
+        }
+
+        outputProcessor.checkBuildFailed();
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException e) {
+            LOG.debug("Cannot close output stream.", e);
+        }
+    }
+
+    private String determineLog4jConfiguration() {
         try {
             final URL log4jFileUrl = getClass().getResource("/log4j2.xml");
             if (log4jFileUrl != null) {
@@ -287,69 +374,14 @@ public class CommandScriptExecutor {
                     log4jConfig = scriptLog4JFile.getAbsolutePath();
                 }
                 LOG.debug("Log4j2 configuration detected: " + log4jConfig);
-                final Variable antOptsVar = new Variable();
-                antOptsVar.setKey("ANT_OPTS");
-                antOptsVar.setValue("-Dlog4j.configurationFile=" + log4jConfig);
-                exec.addEnv(antOptsVar);
+                return log4jConfig;
             } else {
                 LOG.warn("Log4j2 configuration not detected. Script execution may report errors initializing logging.");
             }
         } catch (RuntimeException e) {
             LOG.error("Cannot configure ant to use log4j.", e);
         }
-
-        Argument scriptFileArg = exec.createArg();
-        String sfLine = "-f " + scriptFile.getAbsolutePath();
-        scriptFileArg.setDescription(sfLine);
-        scriptFileArg.setLine(sfLine);
-        
-        Argument propertyFileArg = exec.createArg();
-        final String pfLine = "-propertyfile " + execProperties.getAbsolutePath();
-        propertyFileArg.setLine(pfLine);
-        propertyFileArg.setDescription(pfLine);
-        
-        // preserve properties to avoid side-effects in between script executions
-        final Properties originalSystemProperties = isolateSystemProperties();
-        try {
-            // execute the scripts default target
-            LOG.info("Executing [{}] [{}] [{}]", antBin.getAbsolutePath(), 
-                scriptFileArg.getDescription(), propertyFileArg.getDescription());
-            exec.execute();
-        } finally {
-            // restore original properties
-            System.setProperties(originalSystemProperties);
-        }
-        
-        final String output = project.getProperty("exec.output");
-        logOutput(output, false);
-        
-        final String errorContent = project.getProperty("exec.error");
-        
-        String[] lines = errorContent.split("\\r?\\n");
-        
-        for (int i = 0; i < lines.length; i++) {
-            final boolean error = lines[i].startsWith("BUILD FAILED");
-            // NOTE the error content alone is not sufficient. It may be an intermediate error from
-            //   a script embedded exec call (with failonerror="false"). It is important that the
-            //   line starts with "BUILD FAILED".
-            if (error) {
-                if (!StringUtils.isBlank(errorContent)) {
-                    StringBuilder sb = new StringBuilder();
-                    for (int j = i + 1; j < lines.length; j++) {
-                        if (!StringUtils.isBlank(lines[j])) {
-                            if (!lines[j].trim().startsWith("Total time:")) {
-                                if (j != i + 1) {
-                                    sb.append("\n");
-                                }
-                                sb.append(lines[j].trim());
-                            }
-                        }
-                    }
-                    throw new BuildException(sb.toString());
-                }
-            }
-        }
-        
+        return null;
     }
 
     private File determineAntExecutable(File antHome) {
@@ -386,30 +418,48 @@ public class CommandScriptExecutor {
         return antHome;
     }
 
-    private String logOutput(String output, boolean errorLevel) {
-        if (!StringUtils.isEmpty(output)) {
-            output = output.replaceAll("\\r", "");
-            boolean first = true;
-            for (String line : output.split("\\n")) {
-                if (!first) {
-                    if (errorLevel) {
-                        LOG.error(line);
-                    } else {
-                        LOG.info(line);
-                    }
-                }
-                first = false;
+    /**
+     * Forwards the messages of a script executed in the same jvm to the output listener.
+     */
+    private static class OutputForwardingListener implements BuildListener {
+
+        private final Consumer<String> outputListener;
+
+        OutputForwardingListener(Consumer<String> outputListener) {
+            this.outputListener = outputListener;
+        }
+
+        @Override
+        public void messageLogged(BuildEvent event) {
+            if (event.getPriority() <= Project.MSG_INFO && event.getMessage() != null) {
+                outputListener.accept(event.getMessage());
             }
         }
-        return output;
-    }
 
-    private static final Properties isolateSystemProperties() {
-        final Properties originalSystemProperties = System.getProperties();
-        final Properties tmpSystemProperties = new SortedProperties();
-        tmpSystemProperties.putAll(originalSystemProperties);
-        System.setProperties(tmpSystemProperties);
-        return originalSystemProperties;
+        @Override
+        public void buildStarted(BuildEvent event) {
+        }
+
+        @Override
+        public void buildFinished(BuildEvent event) {
+        }
+
+        @Override
+        public void targetStarted(BuildEvent event) {
+            outputListener.accept(event.getTarget().getName() + ":");
+        }
+
+        @Override
+        public void targetFinished(BuildEvent event) {
+        }
+
+        @Override
+        public void taskStarted(BuildEvent event) {
+        }
+
+        @Override
+        public void taskFinished(BuildEvent event) {
+        }
     }
 
     public CommandScriptExecutionContext getExecutionContext() {
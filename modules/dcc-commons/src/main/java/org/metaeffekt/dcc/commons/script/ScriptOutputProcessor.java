@@ -0,0 +1,89 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.script;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.BuildException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes the output of a forked script execution line by line while the script is running.
+ * Lines are logged and passed to the output listener as they arrive. The error lines are scanned
+ * for the failure report of Ant; only the tail of the report is retained.
+ */
+class ScriptOutputProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommandScriptExecutor.class);
+
+    static final int MAX_FAILURE_LINES = 100;
+
+    private final Consumer<String> outputListener;
+
+    private final Deque<String> failureLines = new ArrayDeque<>();
+
+    private boolean failed;
+
+    ScriptOutputProcessor(Consumer<String> outputListener) {
+        this.outputListener = outputListener;
+    }
+
+    synchronized void outputLine(String line) {
+        // the first line only reports the script file
+        if (!line.startsWith("Buildfile: ")) {
+            LOG.info(line);
+        }
+        forwardLine(line);
+    }
+
+    synchronized void errorLine(String line) {
+        LOG.warn(line);
+        forwardLine(line);
+
+        // NOTE the error content alone is not sufficient. It may be an intermediate error from
+        //   a script embedded exec call (with failonerror="false"). It is important that the
+        //   line starts with "BUILD FAILED".
+        if (!failed) {
+            failed = line.startsWith("BUILD FAILED");
+        } else if (!StringUtils.isBlank(line) && !line.trim().startsWith("Total time:")) {
+            if (failureLines.size() == MAX_FAILURE_LINES) {
+                failureLines.removeFirst();
+            }
+            failureLines.addLast(line.trim());
+        }
+    }
+
+    /**
+     * Throws a {@link BuildException} carrying the failure message in case the script execution
+     * reported a failed build.
+     */
+    synchronized void checkBuildFailed() {
+        if (failed) {
+            throw new BuildException(String.join("\n", failureLines));
+        }
+    }
+
+    private void forwardLine(String line) {
+        if (outputListener != null) {
+            outputListener.accept(line);
+        }
+    }
+
+}
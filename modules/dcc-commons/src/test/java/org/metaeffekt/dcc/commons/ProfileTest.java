@@ -29,6 +29,9 @@ import org.metaeffekt.dcc.commons.domain.Id;
 import org.metaeffekt.dcc.commons.domain.Type.UnitId;
 import org.metaeffekt.dcc.commons.mapping.Attribute;
 import org.metaeffekt.dcc.commons.mapping.Attribute.AttributeType;
+import org.metaeffekt.dcc.commons.mapping.Binding;
+import org.metaeffekt.dcc.commons.mapping.Capability;
+import org.metaeffekt.dcc.commons.mapping.CapabilityDefinition;
 import org.metaeffekt.dcc.commons.mapping.ConfigurationUnit;
 import org.metaeffekt.dcc.commons.mapping.Profile;
 import org.metaeffekt.dcc.commons.mapping.PropertiesHolder;
@@ -58,6 +61,57 @@ public class ProfileTest {
         Assert.assertEquals("", propertiesHolder.getProperty("unit-with-capability/test.capability", "key6"));
     }
 
+    @Test
+    public void testFindBindings() {
+        final CapabilityDefinition definition = new CapabilityDefinition("test.capability");
+        final ConfigurationUnit source = new ConfigurationUnit("source");
+        final ConfigurationUnit target = new ConfigurationUnit("target");
+        final ConfigurationUnit other = new ConfigurationUnit("other");
+        final Capability provided = new Capability("provided", definition, source);
+        final Capability required = new Capability("required", definition, target);
+        final Capability otherRequired = new Capability("required", definition, other);
+
+        final Profile profile = new Profile();
+        profile.add(new Binding(provided, required));
+        profile.add(new Binding(provided, otherRequired));
+
+        Assert.assertEquals(1, profile.findBindings(required).size());
+        Assert.assertSame(required, profile.findBindings(required).iterator().next().getTargetCapability());
+        Assert.assertEquals(2, profile.findBindingsWithSource(provided).size());
+        Assert.assertEquals(2, profile.findBindings(source.getId(), null, null, Id.createCapabilityId("required")).size());
+        Assert.assertEquals(1, profile.findBindings(source.getId(), other.getId(), null, null).size());
+        Assert.assertEquals(0, profile.findBindings(target.getId(), null, null, null).size());
+        Assert.assertEquals(2, profile.findBindings(null, null, Id.createCapabilityId("provided"), null).size());
+
+        profile.setBindings(profile.getBindings().subList(0, 1));
+        Assert.assertEquals(0, profile.findBindings(otherRequired).size());
+        Assert.assertEquals(1, profile.findBindingsWithSource(provided).size());
+    }
+
+    @Test
+    public void testFindUnitsWithProvidedCapability() {
+        final CapabilityDefinition definition = new CapabilityDefinition("test.capability");
+        final ConfigurationUnit unit = new ConfigurationUnit("unit");
+        final ConfigurationUnit abstractUnit = new ConfigurationUnit("abstract");
+        abstractUnit.setAbstract(true);
+        unit.getProvidedCapabilities().add(new Capability("provided", definition, unit));
+        abstractUnit.getProvidedCapabilities().add(new Capability("provided", definition, abstractUnit));
+
+        final Profile profile = new Profile();
+        profile.add(unit);
+        profile.add(abstractUnit);
+
+        Assert.assertEquals(1, profile.findUnitsWithProvidedCapability(Id.createCapabilityId("provided")).size());
+        Assert.assertEquals(1, profile.findUnitsWithProvidedCapabilityDefinition("test.capability").size());
+        Assert.assertTrue(profile.findUnitsWithProvidedCapability(Id.createCapabilityId("other")).isEmpty());
+        Assert.assertSame(unit, unit.findProvidedCapabilityWithCapabilityDefinition("test.capability").getUnit());
+
+        final ConfigurationUnit otherUnit = new ConfigurationUnit("other");
+        otherUnit.getProvidedCapabilities().add(new Capability("provided", definition, otherUnit));
+        profile.add(otherUnit);
+        Assert.assertEquals(2, profile.findUnitsWithProvidedCapability(Id.createCapabilityId("provided")).size());
+    }
+
     @Test
     public void testCapabilityInheritance() throws IOException {
         Profile profile;
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.ant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.ProjectHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingProjectHelperTest {
+
+    private static final File SCRIPT_DIR = new File("target/caching-project-helper-test");
+
+    private File scriptFile;
+
+    private File macrosFile;
+
+    private final List<String> messages = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        SCRIPT_DIR.mkdirs();
+        CachingProjectHelper.register();
+        CachingProjectHelper.clear();
+
+        macrosFile = new File(SCRIPT_DIR, "macros.xml");
+        write(macrosFile, "<project name=\"macros\" xmlns:test=\"http://metaeffekt.org/test\">\n"
+            + "    <macrodef name=\"concat\" uri=\"http://metaeffekt.org/test\">\n"
+            + "        <attribute name=\"property\" />\n"
+            + "        <attribute name=\"value\" />\n"
+            + "        <sequential>\n"
+            + "            <property name=\"@{property}\" value=\"${prefix}@{value}\" />\n"
+            + "        </sequential>\n"
+            + "    </macrodef>\n"
+            + "</project>\n");
+
+        scriptFile = new File(SCRIPT_DIR, "script.xml");
+        write(scriptFile, "<project name=\"script\" default=\"run\" xmlns:test=\"http://metaeffekt.org/test\">\n"
+            + "    <import file=\"macros.xml\" />\n"
+            + "    <target name=\"run\">\n"
+            + "        <test:concat property=\"result\" value=\"${value}\" />\n"
+            + "        <echo message=\"${result}\" />\n"
+            + "    </target>\n"
+            + "    <target name=\"fail\">\n"
+            + "        <fail>Failing as requested.</fail>\n"
+            + "    </target>\n"
+            + "</project>\n");
+    }
+
+    @Test
+    public void testRepeatedExecution() {
+        // the first execution parses the files; subsequent executions replay the cached content
+        for (int i = 0; i < 3; i++) {
+            final Project project = execute("run", "value-" + i);
+            assertEquals("prefix-value-" + i, project.getProperty("result"));
+        }
+        assertEquals(4, countMessages("from cache"));
+    }
+
+    @Test
+    public void testModifiedImport() throws IOException {
+        assertEquals("prefix-a", execute("run", "a").getProperty("result"));
+
+        final String macros = new String(Files.readAllBytes(macrosFile.toPath()), StandardCharsets.UTF_8);
+        write(macrosFile, macros.replace("${prefix}@{value}", "@{value}${prefix}"));
+        macrosFile.setLastModified(macrosFile.lastModified() + 2000);
+
+        assertEquals("bprefix-", execute("run", "b").getProperty("result"));
+    }
+
+    @Test
+    public void testFailureLocation() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                execute("fail", "a");
+                fail("Build failure expected.");
+            } catch (BuildException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Failing as requested."));
+                assertEquals(8, e.getLocation().getLineNumber());
+            }
+        }
+    }
+
+    private Project execute(String target, String value) {
+        final Project project = new Project();
+        ProjectTemplate.init(project);
+        project.addBuildListener(new BuildListener() {
+            @Override
+            public void messageLogged(BuildEvent event) {
+                messages.add(event.getMessage());
+            }
+
+            @Override
+            public void buildStarted(BuildEvent event) {
+            }
+
+            @Override
+            public void buildFinished(BuildEvent event) {
+            }
+
+            @Override
+            public void targetStarted(BuildEvent event) {
+            }
+
+            @Override
+            public void targetFinished(BuildEvent event) {
+            }
+
+            @Override
+            public void taskStarted(BuildEvent event) {
+            }
+
+            @Override
+            public void taskFinished(BuildEvent event) {
+            }
+        });
+        project.setUserProperty("prefix", "prefix-");
+        project.setUserProperty("value", value);
+        final ProjectHelper helper = new CachingProjectHelper();
+        project.addReference(ProjectHelper.PROJECTHELPER_REFERENCE, helper);
+        helper.parse(project, scriptFile);
+        project.executeTarget(target);
+        return project;
+    }
+
+    private int countMessages(String fragment) {
+        int count = 0;
+        for (String message : messages) {
+            if (message.contains(fragment)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -17,6 +17,7 @@ package org.metaeffekt.dcc.commons.dependency;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.*;
 
@@ -26,6 +27,7 @@ import org.junit.Test;
 
 import org.metaeffekt.dcc.commons.domain.Id;
 import org.metaeffekt.dcc.commons.domain.Type.UnitId;
+import org.metaeffekt.dcc.commons.exception.CyclicBindingException;
 import org.metaeffekt.dcc.commons.mapping.ConfigurationUnit;
 import org.metaeffekt.dcc.commons.mapping.TestProfiles;
 
@@ -126,6 +128,80 @@ public class UnitDependenciesTest {
         Assert.assertTrue(unitGroups.get(2).contains(unitF));
     }
 
+    @Test
+    public void testEvaluateDependencyGroupsOfSyntheticUnits() {
+        for (int size : new int[] {100, 1000, 10000}) {
+            final UnitDependencies unitDependencies = new UnitDependencies();
+            final List<ConfigurationUnit> allUnits = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                final ConfigurationUnit unit = new ConfigurationUnit(Id.createUnitId("unit-" + i));
+                // each unit depends on up to three of its predecessors; depth grows with the size
+                for (int j = 1; j <= 3 && i - j * 7 >= 0; j++) {
+                    unitDependencies.addDependency(allUnits.get(i - j * 7), unit);
+                }
+                allUnits.add(unit);
+            }
+            Collections.reverse(allUnits);
+
+            final List<List<ConfigurationUnit>> unitGroups = unitDependencies.evaluateDependencyGroups(allUnits);
+
+            final Set<Id<UnitId>> processed = new HashSet<>();
+            int count = 0;
+            for (List<ConfigurationUnit> group : unitGroups) {
+                for (ConfigurationUnit unit : group) {
+                    final List<Id<UnitId>> upstream = unitDependencies.getUpstreamMatrix().get(unit.getId());
+                    if (upstream != null) {
+                        Assert.assertTrue(processed.containsAll(upstream));
+                    }
+                }
+                for (ConfigurationUnit unit : group) {
+                    processed.add(unit.getId());
+                }
+                count += group.size();
+            }
+            assertEquals(size, count);
+            assertEquals((size - 1) / 7 + 1, unitGroups.size());
+        }
+    }
+
+    @Test
+    public void testResolveTransitiveDependencies() {
+        final Id<UnitId> a = Id.createUnitId("A");
+        final Id<UnitId> b = Id.createUnitId("B");
+        final Id<UnitId> c = Id.createUnitId("C");
+        final Id<UnitId> d = Id.createUnitId("D");
+
+        final UnitDependencies unitDependencies = new UnitDependencies();
+        unitDependencies.addDependency(c, d);
+        unitDependencies.addDependency(b, c);
+        unitDependencies.addDependency(a, b);
+        unitDependencies.addDependency(a, b);
+        unitDependencies.resolveTransitiveDependencies();
+
+        // direct dependencies are listed first, followed by the transitive dependencies
+        assertEquals(Arrays.asList(c, b, a), unitDependencies.getUpstreamMatrix().get(d));
+        assertEquals(Arrays.asList(a), unitDependencies.getUpstreamMatrix().get(b));
+        assertEquals(Arrays.asList(b, c, d), unitDependencies.getDownstreamMatrix().get(a));
+        assertTrue(unitDependencies.getDownstreamMatrix().get(d).isEmpty());
+        assertEquals(4, unitDependencies.getUpstreamMatrix().size());
+        assertEquals(4, unitDependencies.getDownstreamMatrix().entrySet().size());
+    }
+
+    @Test
+    public void testResolveTransitiveDependenciesWithCycle() {
+        final UnitDependencies unitDependencies = new UnitDependencies();
+        unitDependencies.addDependency(Id.createUnitId("A"), Id.createUnitId("B"));
+        unitDependencies.addDependency(Id.createUnitId("B"), Id.createUnitId("C"));
+        unitDependencies.addDependency(Id.createUnitId("C"), Id.createUnitId("A"));
+        unitDependencies.addDependency(Id.createUnitId("C"), Id.createUnitId("D"));
+        try {
+            unitDependencies.resolveTransitiveDependencies();
+            Assert.fail("Cycle not detected.");
+        } catch (CyclicBindingException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("[A -> B -> C -> A]"));
+        }
+    }
+
     @Test
     public void getDirectUpstreamUnits() {
         List<Id<UnitId>> unitsDependendingOnU1C1 = unitDependencies.getDirectUpstreamUnits(u1.getId(), Id.createCapabilityId("c1"));
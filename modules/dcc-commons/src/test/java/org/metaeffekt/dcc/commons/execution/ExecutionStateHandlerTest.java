@@ -16,15 +16,23 @@
 package org.metaeffekt.dcc.commons.execution;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Properties;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -37,6 +45,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import org.metaeffekt.dcc.commons.DccConstants;
+import org.metaeffekt.dcc.commons.DccProperties;
 import org.metaeffekt.dcc.commons.DccUtils;
 import org.metaeffekt.dcc.commons.commands.Commands;
 import org.metaeffekt.dcc.commons.domain.Id;
@@ -194,4 +203,107 @@ public class ExecutionStateHandlerTest {
                 executionStateHandler.alreadySuccessfullyExecuted(unitId, Commands.STOP, host, deploymentId));
     }
 
+    @Test
+    public void incrementalState() throws IOException {
+        executionStateHandler = new ExecutionStateHandler(targetDir, solutionDir);
+
+        executionStateHandler.updateState(executionStateHandler.consolidateState(deploymentId, null, -1), host, deploymentId);
+        Properties manifest = executionStateHandler.getStateManifest(host, deploymentId);
+        Assert.assertNotNull(manifest);
+        assertTrue(executionStateHandler.alreadySuccessfullyExecuted(Id.createUnitId("unit1"), Commands.START, host, deploymentId));
+        assertTrue(executionStateHandler.alreadySuccessfullyExecuted(Id.createUnitId("unit2"), Commands.START, host, deploymentId));
+
+        final String epoch = manifest.getProperty(ExecutionStateHandler.STATE_MANIFEST_EPOCH);
+        final long revision = Long.parseLong(manifest.getProperty(ExecutionStateHandler.STATE_MANIFEST_REVISION));
+
+        // unchanged state; only the manifest is transferred
+        Assert.assertEquals(Collections.singleton(ExecutionStateHandler.STATE_MANIFEST_FILE_NAME),
+            listEntries(executionStateHandler.consolidateState(deploymentId, epoch, revision)));
+
+        // remove unit1; the removal is propagated while unit2 is kept
+        FileUtils.deleteQuietly(new File(new File(new File(targetDir, DccConstants.CONFIG_SUB_DIRECTORY), "unit1"), "start.properties"));
+        executionStateHandler.updateState(executionStateHandler.consolidateState(deploymentId, epoch, revision), host, deploymentId);
+
+        assertFalse(executionStateHandler.alreadySuccessfullyExecuted(Id.createUnitId("unit1"), Commands.START, host, deploymentId));
+        assertTrue(executionStateHandler.alreadySuccessfullyExecuted(Id.createUnitId("unit2"), Commands.START, host, deploymentId));
+
+        // an unknown epoch enforces a full state
+        Assert.assertEquals(new HashSet<>(Arrays.asList(ExecutionStateHandler.STATE_MANIFEST_FILE_NAME, "unit2/start.properties")),
+            listEntries(executionStateHandler.consolidateState(deploymentId, "unknown", revision)));
+    }
+
+    @Test
+    public void stateIndex() throws IOException {
+        executionStateHandler = new ExecutionStateHandler(targetDir, solutionDir);
+        final Id<UnitId> unitId = Id.createUnitId("unit1");
+
+        assertFalse(executionStateHandler.alreadySuccessfullyExecuted(unitId, Commands.START, host, deploymentId));
+
+        // updates applied via the handler are written through to the index
+        executionStateHandler.updateConsolidatedState(executionStateHandler.consolidateState(deploymentId), host, deploymentId);
+        assertTrue(executionStateHandler.alreadySuccessfullyExecuted(unitId, Commands.START, host, deploymentId));
+
+        executionStateHandler.deleteFile(executionStateHandler.getCacheLocation(host, deploymentId));
+        assertFalse(executionStateHandler.alreadySuccessfullyExecuted(unitId, Commands.START, host, deploymentId));
+    }
+
+    @Test
+    public void executedPropertiesHash() throws IOException {
+        executionStateHandler = new ExecutionStateHandler(targetDir, solutionDir);
+        final Id<UnitId> unitId = Id.createUnitId("unit1");
+        final File configDir = new File(new File(targetDir, DccConstants.CONFIG_SUB_DIRECTORY), "unit1");
+        FileUtils.write(new File(configDir, "reconfigure.properties"),
+            DccProperties.DCC_PROPERTIES_HASH + "=abc", StandardCharsets.ISO_8859_1);
+
+        assertNull(executionStateHandler.getExecutedPropertiesHash(unitId, Commands.RECONFIGURE, host, deploymentId));
+        executionStateHandler.updateConsolidatedState(executionStateHandler.consolidateState(deploymentId), host, deploymentId);
+        Assert.assertEquals("abc", executionStateHandler.getExecutedPropertiesHash(unitId, Commands.RECONFIGURE, host, deploymentId));
+        assertNull(executionStateHandler.getExecutedPropertiesHash(unitId, Commands.START, host, deploymentId));
+    }
+
+    @Test
+    public void prunedRemovals() throws IOException {
+        executionStateHandler = new ExecutionStateHandler(targetDir, solutionDir);
+        final File bulkDir = new File(new File(targetDir, DccConstants.CONFIG_SUB_DIRECTORY), "bulk");
+        for (int i = 0; i <= ExecutionStateHandler.MAX_REMOVED_STATE_ENTRIES; i++) {
+            FileUtils.write(new File(bulkDir, "unit" + i + ".properties"), "a=b", StandardCharsets.ISO_8859_1);
+        }
+        executionStateHandler.updateState(executionStateHandler.consolidateState(deploymentId, null, -1), host, deploymentId);
+        final Properties manifest = executionStateHandler.getStateManifest(host, deploymentId);
+        final String epoch = manifest.getProperty(ExecutionStateHandler.STATE_MANIFEST_EPOCH);
+        final long revision = Long.parseLong(manifest.getProperty(ExecutionStateHandler.STATE_MANIFEST_REVISION));
+
+        // more removals than remembered; the controller has to receive the full state
+        FileUtils.deleteDirectory(bulkDir);
+        executionStateHandler.updateState(executionStateHandler.consolidateState(deploymentId, epoch, revision), host, deploymentId);
+        Assert.assertEquals("true", executionStateHandler.getStateManifest(host, deploymentId)
+            .getProperty(ExecutionStateHandler.STATE_MANIFEST_FULL));
+        assertFalse(new File(executionStateHandler.getCacheLocation(host, deploymentId), "bulk").exists());
+    }
+
+    @Test
+    public void invalidStateEntries() throws IOException {
+        executionStateHandler = new ExecutionStateHandler(targetDir, solutionDir);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(out)) {
+            zos.putNextEntry(new ZipEntry("../escaped.properties"));
+            zos.write("a=b".getBytes(StandardCharsets.ISO_8859_1));
+        }
+        executionStateHandler.updateState(new ByteArrayInputStream(out.toByteArray()), host, deploymentId);
+
+        final File cacheLocation = executionStateHandler.getCacheLocation(host, deploymentId);
+        assertFalse(new File(cacheLocation.getParentFile(), "escaped.properties").exists());
+    }
+
+    private Set<String> listEntries(InputStream in) throws IOException {
+        Set<String> result = new HashSet<>();
+        try (ZipInputStream zis = new ZipInputStream(in)) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zis.getNextEntry()) != null) {
+                result.add(zipEntry.getName());
+            }
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.mapping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FlatPropertiesHolderTest {
+
+    @Test
+    public void testSetAndGet() {
+        final FlatPropertiesHolder propertiesHolder = new FlatPropertiesHolder();
+        final ConfigurationUnit unit = new ConfigurationUnit("unit");
+
+        Assert.assertFalse(propertiesHolder.hasProperties(unit));
+        Assert.assertNull(propertiesHolder.getProperty(unit, "key"));
+
+        propertiesHolder.setProperty(unit, "key", "value");
+        propertiesHolder.setProperty(unit, "other.key", "other value");
+        Assert.assertTrue(propertiesHolder.hasProperties(unit));
+        Assert.assertEquals("value", propertiesHolder.getProperty(unit, "key"));
+
+        propertiesHolder.setProperty(unit, "key", null);
+        Assert.assertNull(propertiesHolder.getProperty(unit, "key"));
+
+        final Properties properties = propertiesHolder.getProperties(unit);
+        Assert.assertEquals(1, properties.size());
+        Assert.assertEquals("other value", properties.getProperty("other.key"));
+        Assert.assertEquals(properties, propertiesHolder.getPropertiesMap().get("unit"));
+    }
+
+    @Test
+    public void testFallbackAndRelevance() {
+        final Properties deploymentProperties = new Properties();
+        deploymentProperties.setProperty("unit.fallback", "deployment value");
+
+        final FlatPropertiesHolder propertiesHolder = new FlatPropertiesHolder();
+        propertiesHolder.setDeploymentProperties(deploymentProperties);
+        final ConfigurationUnit unit = new ConfigurationUnit("unit");
+        propertiesHolder.createPropertiesIfNecessary(unit);
+        propertiesHolder.setProperty(unit, "key", "value");
+
+        Assert.assertEquals("deployment value", propertiesHolder.getProperty(unit, "fallback"));
+        Assert.assertNull(propertiesHolder.getProperty(unit, "fallback", false));
+        Assert.assertTrue(propertiesHolder.isPropertyRelevant("unit.fallback"));
+
+        Assert.assertFalse(propertiesHolder.isPropertyRelevant("unit.key"));
+        propertiesHolder.getProperty(unit, "key");
+        Assert.assertTrue(propertiesHolder.isPropertyRelevant("unit.key"));
+    }
+
+    @Test
+    public void testConcurrentModification() throws InterruptedException {
+        final FlatPropertiesHolder propertiesHolder = new FlatPropertiesHolder();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final ConfigurationUnit unit = new ConfigurationUnit("unit-" + t);
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 5000; i++) {
+                        propertiesHolder.setProperty(unit, "key" + i, String.valueOf(i));
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int t = 0; t < 4; t++) {
+            final Properties properties = propertiesHolder.getProperties("unit-" + t);
+            Assert.assertEquals(5000, properties.size());
+            Assert.assertEquals("4711", properties.getProperty("key4711"));
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.mapping;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.metaeffekt.dcc.commons.domain.Id;
+
+public class ProfileEvaluatorTest {
+
+    private static final File ORIGIN = new File("ProfileEvaluatorTest.class");
+
+    private final CapabilityDefinition definition = new CapabilityDefinition("test.name").
+            add(new AttributeKey("name"));
+
+    @Test
+    public void testEvaluateInLevels() throws Exception {
+        final Profile profile = createProfile();
+
+        final List<List<ConfigurationUnit>> levels = new ProfileEvaluator(profile).computeLevels(profile.getUnits(true));
+        Assert.assertEquals(3, levels.size());
+        Assert.assertEquals(1, levels.get(0).size());
+        Assert.assertEquals(2, levels.get(1).size());
+        Assert.assertEquals("c", levels.get(2).get(0).getId().getValue());
+
+        final PropertiesHolder propertiesHolder = new ConcurrentPropertiesHolder();
+        profile.evaluate(propertiesHolder);
+        Assert.assertEquals("host01-a,host01-b", propertiesHolder.getProperty(profile.findUnit(Id.createUnitId("c")), "name"));
+    }
+
+    @Test
+    public void testSameResultAsSequentialEvaluation() throws Exception {
+        final Profile profile = createProfile();
+
+        final PropertiesHolder sequential = profile.evaluate(new PropertiesHolder());
+        final PropertiesHolder parallel = profile.evaluate(new ConcurrentPropertiesHolder());
+
+        Assert.assertEquals(new HashMap<String, Properties>(sequential.getPropertiesMap()),
+            new HashMap<String, Properties>(parallel.getPropertiesMap()));
+
+        final PropertiesHolder flat = profile.evaluate(new FlatPropertiesHolder());
+        Assert.assertEquals(new HashMap<String, Properties>(sequential.getPropertiesMap()), flat.getPropertiesMap());
+    }
+
+    @Test
+    public void testReevaluateChangedProperties() throws Exception {
+        final Profile profile = createProfile();
+        final PropertiesHolder propertiesHolder = profile.evaluate(profile.createPropertiesHolder(true));
+        final ConfigurationUnit c = profile.findUnit(Id.createUnitId("c"));
+
+        final Properties deploymentProperties = new Properties();
+        deploymentProperties.setProperty("unrelated", "value");
+        Assert.assertTrue(profile.reevaluate(propertiesHolder, new Properties(), deploymentProperties).isEmpty());
+
+        deploymentProperties.setProperty("host.name", "host02");
+        final Set<ConfigurationUnit> units = profile.reevaluate(propertiesHolder, new Properties(), deploymentProperties);
+        Assert.assertEquals(4, units.size());
+        Assert.assertEquals("host02-a,host02-b", propertiesHolder.getProperty(c, "name"));
+
+        final PropertiesHolder evaluated = new PropertiesHolder();
+        evaluated.setSolutionProperties(new Properties());
+        evaluated.setDeploymentProperties(deploymentProperties);
+        profile.evaluate(evaluated);
+        Assert.assertEquals(new HashMap<String, Properties>(evaluated.getPropertiesMap()), propertiesHolder.getPropertiesMap());
+    }
+
+    private Profile createProfile() throws Exception {
+        final Profile profile = new Profile();
+
+        final ConfigurationUnit host = createUnit(profile, "host", "host01");
+        final ConfigurationUnit a = createUnit(profile, "a", "${host[name]}-a");
+        final ConfigurationUnit b = createUnit(profile, "b", "${host[name]}-b");
+        final ConfigurationUnit c = createUnit(profile, "c", "${inA[name]},${inB[name]}");
+
+        bind(profile, host, a, "host");
+        bind(profile, host, b, "host");
+        bind(profile, a, c, "inA");
+        bind(profile, b, c, "inB");
+
+        for (ConfigurationUnit unit : profile.getUnits()) {
+            unit.afterPropertiesSet();
+        }
+        profile.setDeploymentProperties(new Properties(), null);
+        profile.setSolutionProperties(new Properties(), null);
+        return profile;
+    }
+
+    private ConfigurationUnit createUnit(Profile profile, String id, String name) {
+        final ConfigurationUnit unit = new ConfigurationUnit(id);
+        unit.add(new Attribute("name", name, ORIGIN));
+        unit.getProvidedCapabilities().add(new Capability(Id.createCapabilityId("out"), definition, unit));
+        profile.add(unit);
+        return unit;
+    }
+
+    private void bind(Profile profile, ConfigurationUnit source, ConfigurationUnit target, String capabilityId) {
+        final RequiredCapability requiredCapability =
+            new RequiredCapability(Id.createCapabilityId(capabilityId), definition, target);
+        target.getRequiredCapabilities().add(requiredCapability);
+        profile.add(new Binding(source.findProvidedCapability(Id.createCapabilityId("out")), requiredCapability));
+    }
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class PropertyExpressionTest {
+
+    private static final String EXPRESSION = "%{'${port}'.length() > 2 ? '${host}:${port}' : '${host}'}";
+
+    @Test
+    public void evaluateWithSharedCache() {
+        assertEquals("localhost:8080", evaluate("localhost", "8080"));
+        assertEquals("remote", evaluate("remote", "80"));
+
+        // same expression template evaluated repeatedly (cached and potentially compiled)
+        for (int i = 0; i < 200; i++) {
+            assertEquals("host" + i + ":1000" + i, evaluate("host" + i, "1000" + i));
+        }
+    }
+
+    @Test
+    public void evaluatePlainAndTypedValues() {
+        final PropertiesHolder propertiesHolder = new PropertiesHolder();
+        final ConfigurationUnit unit = new ConfigurationUnit("unit");
+        propertiesHolder.setProperty(unit, "enabled", "true");
+        final UnitScopePropertyExpression expression = new UnitScopePropertyExpression(propertiesHolder, unit);
+
+        assertEquals("plain value", expression.evaluate("plain value"));
+        assertEquals("value true", expression.evaluate("value ${enabled}"));
+        assertEquals(Boolean.TRUE, expression.evaluate("%{${enabled}}", Boolean.class));
+        assertEquals(Boolean.FALSE, expression.evaluate("%{!${enabled}}", Boolean.class));
+    }
+
+    @Test
+    public void parameterizedTemplate() {
+        assertEquals("%{('' + #dccTokens[0] + '').length() > 2 ? ('' + #dccTokens[1] + ':' + #dccTokens[2] + '')"
+            + " : ('' + #dccTokens[3] + '')}", AbstractPropertyExpression.ExpressionTemplate.create(EXPRESSION).getSource());
+        assertEquals("%{(#dccTokens[0]) + 128}",
+            AbstractPropertyExpression.ExpressionTemplate.create("%{${heapSizeMax} + 128}").getSource());
+
+        assertEquals(Integer.valueOf(5), AbstractPropertyExpression.toLiteral("5"));
+        assertEquals(Boolean.TRUE, AbstractPropertyExpression.toLiteral("true"));
+        assertNull(AbstractPropertyExpression.toLiteral("localhost"));
+    }
+
+    @Test
+    public void evaluateCodeTokens() {
+        final PropertiesHolder propertiesHolder = new PropertiesHolder();
+        final ConfigurationUnit unit = new ConfigurationUnit("unit");
+        propertiesHolder.setProperty(unit, "heapSizeMax", "1024");
+        propertiesHolder.setProperty(unit, "factor", "2 * 3");
+        final UnitScopePropertyExpression expression = new UnitScopePropertyExpression(propertiesHolder, unit);
+
+        assertEquals("1152", expression.evaluate("%{${heapSizeMax} + 128}"));
+        // values which are not literals are substituted as before
+        assertEquals("7", expression.evaluate("%{${factor} + 1}"));
+    }
+
+    private String evaluate(String host, String port) {
+        final PropertiesHolder propertiesHolder = new PropertiesHolder();
+        final ConfigurationUnit unit = new ConfigurationUnit("unit");
+        propertiesHolder.setProperty(unit, "host", host);
+        propertiesHolder.setProperty(unit, "port", port);
+        return new UnitScopePropertyExpression(propertiesHolder, unit).evaluate(EXPRESSION);
+    }
+
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.properties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class ImmutableSortedPropertiesTest {
+
+    @Test
+    public void writeLikeProperties() throws IOException {
+        final Properties properties = createProperties();
+        final String comment = "Comment with\nsecond line, umlaut \u00e4 and \u20ac";
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        properties.store(expected, comment);
+
+        // the timestamp comment is omitted; besides the output is identical
+        final String expectedContent = new String(expected.toByteArray(), StandardCharsets.ISO_8859_1)
+            .replaceFirst("(?m)^#[^\r\n]*\\d\\d:\\d\\d:\\d\\d[^\r\n]*" + System.lineSeparator(), "");
+        assertEquals(expectedContent, write(ImmutableSortedProperties.of(properties), comment));
+    }
+
+    @Test
+    public void readLikeProperties() throws IOException {
+        final String content = "# comment\n"
+            + "  ! another comment\n"
+            + "\n"
+            + "a=1\n"
+            + "b : 2\r\n"
+            + "c 3\r"
+            + "d\\ e=4\\\n"
+            + "    continued \\\r\n"
+            + "  twice\n"
+            + "f=\\u00e4\\t\\=\n"
+            + "a=overwritten\n"
+            + "g\n"
+            + "h=last\\";
+
+        final Properties expected = new Properties();
+        expected.load(new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1)));
+
+        final ImmutableSortedProperties properties =
+            ImmutableSortedProperties.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(expected, properties.toProperties());
+        assertEquals("overwritten", properties.getProperty("a"));
+        assertNull(properties.getProperty("x"));
+    }
+
+    @Test
+    public void readAndWriteAgain() throws IOException {
+        final ImmutableSortedProperties properties = ImmutableSortedProperties.of(createProperties());
+        final String content = write(properties, "comment");
+
+        final ImmutableSortedProperties readProperties = ImmutableSortedProperties.read(
+            new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(properties, readProperties);
+        assertEquals(content, write(readProperties, "comment"));
+    }
+
+    @Test
+    public void with() {
+        final ImmutableSortedProperties properties = ImmutableSortedProperties.of(createProperties())
+            .with("0", "first").with("zz", "last").with("key", "replaced");
+        assertEquals("0", properties.getKey(0));
+        assertEquals("first", properties.getProperty("0"));
+        assertEquals("zz", properties.getKey(properties.size() - 1));
+        assertEquals("replaced", properties.getProperty("key"));
+        assertEquals(createProperties().size() + 2, properties.size());
+    }
+
+    @Test
+    public void writeManyProperties() throws IOException {
+        final Properties properties = new StoreOrderedProperties();
+        for (int i = 0; i < 50000; i++) {
+            properties.setProperty("unit-" + i + ".capability.key", "value " + i);
+        }
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        properties.store(expected, null);
+
+        final ImmutableSortedProperties sortedProperties = ImmutableSortedProperties.of(properties);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sortedProperties.write(out, null);
+
+        final String expectedContent = new String(expected.toByteArray(), StandardCharsets.ISO_8859_1);
+        assertArrayEquals(expectedContent.substring(expectedContent.indexOf(System.lineSeparator())
+            + System.lineSeparator().length()).getBytes(StandardCharsets.ISO_8859_1), out.toByteArray());
+    }
+
+    @Test
+    public void writeAllocatesLessThanStore() throws IOException {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled()) {
+            // allocation cannot be measured on this JVM
+            return;
+        }
+        final com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threadMXBean;
+        final long threadId = Thread.currentThread().getId();
+
+        final Properties properties = new SortedProperties();
+        for (int i = 0; i < 50000; i++) {
+            properties.setProperty("unit-" + i + ".capability.key", "value " + i);
+        }
+        final OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        // warm up both writers to exclude class loading and initialization
+        properties.store(discard, null);
+        ImmutableSortedProperties.of(properties).write(discard, null);
+
+        long allocated = allocation.getThreadAllocatedBytes(threadId);
+        properties.store(discard, null);
+        final long storeAllocated = allocation.getThreadAllocatedBytes(threadId) - allocated;
+
+        allocated = allocation.getThreadAllocatedBytes(threadId);
+        ImmutableSortedProperties.of(properties).write(discard, null);
+        final long writeAllocated = allocation.getThreadAllocatedBytes(threadId) - allocated;
+
+        assertTrue(String.format("Expected less than [%s] bytes to be allocated, but was [%s].",
+            storeAllocated, writeAllocated), writeAllocated < storeAllocated);
+    }
+
+    private static Properties createProperties() {
+        final Properties properties = new StoreOrderedProperties();
+        properties.setProperty("key", "value");
+        properties.setProperty("key with spaces", " leading and trailing ");
+        properties.setProperty("separators=:#!", "=:#!");
+        properties.setProperty("control", "\t\n\r\f\u0001");
+        properties.setProperty("unicode", "\u00e4\u20ac");
+        properties.setProperty("backslash", "C:\\dcc\\");
+        properties.setProperty("empty", "");
+        return properties;
+    }
+
+    private static String write(ImmutableSortedProperties properties, String comment) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        properties.write(out, comment);
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Stores the entries sorted by key. Depending on the Java version {@link Properties#store(java.io.OutputStream,
+     * String)} either iterates the keys or the entries.
+     */
+    private static class StoreOrderedProperties extends Properties {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Enumeration<Object> keys() {
+            return Collections.enumeration(sorted().keySet());
+        }
+
+        @Override
+        public Set<Map.Entry<Object, Object>> entrySet() {
+            return Collections.synchronizedSet(new LinkedHashSet<>(sorted().entrySet()));
+        }
+
+        private synchronized Map<Object, Object> sorted() {
+            final Map<Object, Object> sorted = new TreeMap<>();
+            for (Map.Entry<Object, Object> entry : super.entrySet()) {
+                sorted.put(entry.getKey(), entry.getValue());
+            }
+            return sorted;
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SystemPropertyScopeTest {
+
+    private static final String KEY = "dcc.test.system.property.scope";
+
+    @Test
+    public void testScopedProperties() {
+        final String javaHome = System.getProperty("java.home");
+        try (SystemPropertyScope outer = SystemPropertyScope.open()) {
+            System.setProperty(KEY, "outer");
+            try (SystemPropertyScope inner = SystemPropertyScope.open()) {
+                assertEquals("outer", System.getProperty(KEY));
+                System.setProperty(KEY, "inner");
+                assertEquals("inner", System.getProperty(KEY));
+                assertEquals("inner", System.getProperties().getProperty(KEY));
+                assertTrue(System.getProperties().stringPropertyNames().contains(KEY));
+            }
+            assertEquals("outer", System.getProperty(KEY));
+            assertEquals(javaHome, System.getProperty("java.home"));
+        }
+        assertNull(System.getProperty(KEY));
+        assertFalse(System.getProperties().containsKey(KEY));
+        assertEquals("default", System.getProperty(KEY, "default"));
+    }
+
+    @Test
+    public void testRemovedProperties() {
+        System.setProperty(KEY, "global");
+        try {
+            try (SystemPropertyScope scope = SystemPropertyScope.open()) {
+                assertEquals("global", System.clearProperty(KEY));
+                assertNull(System.getProperty(KEY));
+                assertFalse(System.getProperties().stringPropertyNames().contains(KEY));
+
+                final Properties properties = new Properties();
+                properties.setProperty(KEY, "loaded");
+                System.getProperties().putAll(properties);
+                assertEquals("loaded", System.getProperty(KEY));
+            }
+            assertEquals("global", System.getProperty(KEY));
+        } finally {
+            System.clearProperty(KEY);
+        }
+    }
+
+    @Test
+    public void testConcurrentScopes() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final CountDownLatch propertiesSet = new CountDownLatch(2);
+        try {
+            final Future<String> first = executor.submit(() -> execute("first", propertiesSet));
+            final Future<String> second = executor.submit(() -> execute("second", propertiesSet));
+            assertEquals("first", first.get(10, TimeUnit.SECONDS));
+            assertEquals("second", second.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        assertNull(System.getProperty(KEY));
+    }
+
+    @Test
+    public void testPropagatedScope() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (SystemPropertyScope scope = SystemPropertyScope.open()) {
+            System.setProperty(KEY, "parent");
+            final String[] value = new String[2];
+
+            // threads started within the scope do not inherit it
+            executor.submit(() -> value[0] = System.getProperty(KEY)).get(10, TimeUnit.SECONDS);
+            assertNull(value[0]);
+
+            executor.submit(SystemPropertyScope.propagate(() -> value[1] = System.getProperty(KEY)))
+                .get(10, TimeUnit.SECONDS);
+            assertEquals("parent", value[1]);
+        } finally {
+            executor.shutdown();
+        }
+
+        // the pool thread is not left with the scope
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            assertNull(pool.submit(() -> System.getProperty(KEY)).get(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String execute(String value, CountDownLatch propertiesSet) throws InterruptedException {
+        try (SystemPropertyScope scope = SystemPropertyScope.open()) {
+            System.setProperty(KEY, value);
+            propertiesSet.countDown();
+            propertiesSet.await(10, TimeUnit.SECONDS);
+            return System.getProperty(KEY);
+        }
+    }
+
+}
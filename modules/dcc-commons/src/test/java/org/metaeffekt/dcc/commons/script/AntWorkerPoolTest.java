@@ -0,0 +1,101 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.script;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.launch.AntMain;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.metaeffekt.dcc.commons.DccProperties;
+
+public class AntWorkerPoolTest {
+
+    private File baseDir;
+
+    private File antHome;
+
+    private File propertyFile;
+
+    @Before
+    public void prepare() throws IOException, URISyntaxException {
+        baseDir = new File("target/ant-worker-pool-test").getAbsoluteFile();
+        FileUtils.deleteQuietly(baseDir);
+        baseDir.mkdirs();
+        propertyFile = new File(baseDir, "test.properties");
+        FileUtils.write(propertyFile, "test.value=42", StandardCharsets.ISO_8859_1);
+
+        // minimal ant installation consisting of the ant jars used by the test
+        antHome = new File(baseDir, "ant-home");
+        for (Class<?> type : new Class<?>[] { Project.class, AntMain.class }) {
+            FileUtils.copyFileToDirectory(new File(type.getProtectionDomain().getCodeSource()
+                .getLocation().toURI()), new File(antHome, "lib"));
+        }
+    }
+
+    @After
+    public void cleanup() {
+        System.clearProperty(DccProperties.DCC_SYSTEM_PROPERTY_ANT_WORKER_TIMEOUT);
+    }
+
+    @Test
+    public void execute() throws IOException {
+        final AntWorkerPool pool = AntWorkerPool.getPool(antHome, null);
+        final List<String> output = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            output.clear();
+            pool.execute(writeScript("<echo message=\"value ${test.value}\"/>"), propertyFile, baseDir,
+                (line, error) -> output.add(line));
+            assertTrue(output.toString(), output.stream().anyMatch(line -> line.contains("value 42")));
+        }
+    }
+
+    @Test
+    public void timeout() throws IOException {
+        System.setProperty(DccProperties.DCC_SYSTEM_PROPERTY_ANT_WORKER_TIMEOUT, "2");
+        final File timeoutAntHome = new File(baseDir, "timeout-ant-home");
+        FileUtils.copyDirectory(antHome, timeoutAntHome);
+
+        final AntWorkerPool pool = AntWorkerPool.getPool(timeoutAntHome, null);
+        try {
+            pool.execute(writeScript("<sleep seconds=\"60\"/>"), propertyFile, baseDir, (line, error) -> { });
+            fail("BuildException expected");
+        } catch (BuildException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("killed after [2] seconds"));
+        }
+    }
+
+    private File writeScript(String tasks) throws IOException {
+        final File scriptFile = new File(baseDir, "build.xml");
+        FileUtils.write(scriptFile, "<project name=\"test\" default=\"run\"><target name=\"run\">"
+            + tasks + "</target></project>", StandardCharsets.UTF_8);
+        return scriptFile;
+    }
+
+}
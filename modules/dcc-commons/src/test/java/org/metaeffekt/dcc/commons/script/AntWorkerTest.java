@@ -0,0 +1,184 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.ant.Task;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drives the {@link AntWorker} in a separate JVM through its standard streams.
+ */
+public class AntWorkerTest {
+
+    private File baseDir;
+
+    private File propertyFile;
+
+    private Process process;
+
+    private BufferedReader reader;
+
+    private Writer writer;
+
+    @Before
+    public void prepare() throws IOException {
+        baseDir = new File("target/ant-worker-test").getAbsoluteFile();
+        FileUtils.deleteQuietly(baseDir);
+        baseDir.mkdirs();
+        propertyFile = new File(baseDir, "test.properties");
+        FileUtils.write(propertyFile, "test.value=42", StandardCharsets.ISO_8859_1);
+
+        final List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(AntWorker.class.getName());
+        process = new ProcessBuilder(command).directory(baseDir).redirectErrorStream(true).start();
+        reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        writer = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+
+        assertEquals(AntWorker.READY, readUntil(AntWorker.READY, new ArrayList<String>()));
+    }
+
+    @After
+    public void destroy() {
+        process.destroyForcibly();
+    }
+
+    @Test
+    public void success() throws Exception {
+        final List<String> lines = new ArrayList<>();
+        assertEquals(AntWorker.DONE, execute("<echo message=\"value ${test.value}\"/>", lines));
+        assertTrue(lines.toString(), contains(lines, AntWorker.OUTPUT, "value 42"));
+        assertTrue(lines.toString(), contains(lines, AntWorker.OUTPUT, "BUILD SUCCESSFUL"));
+
+        // closing the input terminates the worker regularly
+        writer.close();
+        assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        assertEquals(0, process.exitValue());
+    }
+
+    @Test
+    public void buildFailed() throws Exception {
+        final List<String> lines = new ArrayList<>();
+        assertEquals(AntWorker.DONE, execute("<fail message=\"broken\"/>", lines));
+        assertTrue(lines.toString(), contains(lines, AntWorker.ERROR, "BUILD FAILED"));
+        assertTrue(lines.toString(), contains(lines, AntWorker.ERROR, "broken"));
+
+        // the worker stays usable
+        lines.clear();
+        assertEquals(AntWorker.DONE, execute("<echo message=\"again\"/>", lines));
+        assertFalse(lines.toString(), contains(lines, AntWorker.ERROR, "BUILD FAILED"));
+    }
+
+    @Test
+    public void leakedThread() throws Exception {
+        final List<String> lines = new ArrayList<>();
+        assertEquals(AntWorker.DONE_RECYCLE, execute(taskdef("leak", LeakThreadTask.class) + "<leak/>", lines));
+        assertTrue(lines.toString(), contains(lines, AntWorker.OUTPUT, "BUILD SUCCESSFUL"));
+    }
+
+    @Test
+    public void crash() throws Exception {
+        final List<String> lines = new ArrayList<>();
+        assertNull(execute(taskdef("halt", HaltTask.class) + "<echo message=\"before\"/><halt/>", lines));
+        assertTrue(lines.toString(), contains(lines, AntWorker.OUTPUT, "before"));
+        assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        assertEquals(3, process.exitValue());
+    }
+
+    /**
+     * Executes a build file with the given tasks in its default target.
+     *
+     * @return The terminating line of the response or <code>null</code> in case the worker terminated.
+     */
+    private String execute(String tasks, List<String> lines) throws IOException {
+        final File scriptFile = new File(baseDir, "build.xml");
+        FileUtils.write(scriptFile, "<project name=\"test\" default=\"run\"><target name=\"run\">"
+            + tasks + "</target></project>", StandardCharsets.UTF_8);
+        writer.write(scriptFile.getPath() + AntWorker.SEPARATOR + propertyFile.getPath()
+            + AntWorker.SEPARATOR + baseDir.getPath() + "\n");
+        writer.flush();
+        return readUntil(null, lines);
+    }
+
+    private String readUntil(String expected, List<String> lines) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.equals(expected) || line.equals(AntWorker.DONE) || line.equals(AntWorker.DONE_RECYCLE)) {
+                return line;
+            }
+            lines.add(line);
+        }
+        return null;
+    }
+
+    private static boolean contains(List<String> lines, String prefix, String text) {
+        for (String line : lines) {
+            if (line.startsWith(prefix) && line.contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String taskdef(String name, Class<? extends Task> type) {
+        return "<taskdef name=\"" + name + "\" classname=\"" + type.getName() + "\"/>";
+    }
+
+    public static class LeakThreadTask extends Task {
+
+        @Override
+        public void execute() {
+            final Thread thread = new Thread(() -> {
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+        }
+    }
+
+    public static class HaltTask extends Task {
+
+        @Override
+        public void execute() {
+            Runtime.getRuntime().halt(3);
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.commons.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tools.ant.BuildException;
+import org.junit.Test;
+
+public class ScriptOutputProcessorTest {
+
+    @Test
+    public void testSuccessfulBuild() {
+        final List<String> forwarded = new ArrayList<>();
+        final ScriptOutputProcessor processor = new ScriptOutputProcessor(forwarded::add);
+        processor.outputLine("Buildfile: build.xml");
+        processor.outputLine("test:");
+        // intermediate errors of embedded exec calls do not fail the build
+        processor.errorLine("     [exec] Result: 1");
+        processor.outputLine("BUILD SUCCESSFUL");
+
+        processor.checkBuildFailed();
+        assertEquals(4, forwarded.size());
+    }
+
+    @Test
+    public void testFailedBuild() {
+        final ScriptOutputProcessor processor = new ScriptOutputProcessor(null);
+        processor.errorLine("     [exec] Result: 1");
+        processor.errorLine("");
+        processor.errorLine("BUILD FAILED");
+        processor.errorLine("build.xml:12: Failing as requested.");
+        processor.errorLine("  caused by something");
+        processor.errorLine("");
+        processor.errorLine("Total time: 0 seconds");
+
+        try {
+            processor.checkBuildFailed();
+            fail("Build failure expected.");
+        } catch (BuildException e) {
+            assertEquals("build.xml:12: Failing as requested.\ncaused by something", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFailureMessageTail() {
+        final ScriptOutputProcessor processor = new ScriptOutputProcessor(null);
+        processor.errorLine("BUILD FAILED");
+        for (int i = 0; i < 10 * ScriptOutputProcessor.MAX_FAILURE_LINES; i++) {
+            processor.errorLine("line " + i);
+        }
+
+        try {
+            processor.checkBuildFailed();
+            fail("Build failure expected.");
+        } catch (BuildException e) {
+            final String[] lines = e.getMessage().split("\n");
+            assertEquals(ScriptOutputProcessor.MAX_FAILURE_LINES, lines.length);
+            assertEquals("line " + (10 * ScriptOutputProcessor.MAX_FAILURE_LINES - 1), lines[lines.length - 1]);
+        }
+    }
+
+}
@@ -41,11 +41,13 @@ abstract class AbstractCommand implements Command {
 
     protected static final int NUMBER_OF_THREADS = Integer.parseInt(System.getProperty("dcc.execution.thread.count", "20"));
 
+    protected static final int NUMBER_OF_THREADS_PER_HOST = Integer.parseInt(System.getProperty("dcc.execution.host.thread.count", "4"));
+
+    protected static final boolean BATCH_EXECUTION = Boolean.parseBoolean(System.getProperty("dcc.execution.batch", "true"));
+
     protected static final Logger LOG = LoggerFactory.getLogger(AbstractCommand.class);
 
     private ExecutionContext executionContext;
-    private ExecutionStateHandler executionStateHandler;
-
     public AbstractCommand(ExecutionContext executionContext) {
         this.executionContext = executionContext;
     }
@@ -89,10 +91,7 @@ abstract class AbstractCommand implements Command {
     }
 
     protected ExecutionStateHandler getExecutionStateHandler() {
-        if (executionStateHandler == null) {
-            executionStateHandler = new ExecutionStateHandler(executionContext.getTargetDir(), executionContext.getSolutionDir());
-        }
-        return executionStateHandler;
+        return executionContext.getExecutionStateHandler();
     }
     
     @Override
@@ -19,16 +19,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 
 import org.metaeffekt.dcc.commons.DccConstants;
 import org.metaeffekt.dcc.commons.DccUtils;
-import org.metaeffekt.dcc.commons.ant.PropertyUtils;
 import org.metaeffekt.dcc.commons.commands.Commands;
 import org.metaeffekt.dcc.commons.dependency.UnitDependencies;
 import org.metaeffekt.dcc.commons.domain.Id;
@@ -47,6 +43,7 @@ import org.metaeffekt.dcc.commons.mapping.Profile;
 import org.metaeffekt.dcc.commons.mapping.PropertiesHolder;
 import org.metaeffekt.dcc.commons.properties.SortedProperties;
 import org.metaeffekt.dcc.controller.execution.ExecutionContext;
+import org.metaeffekt.dcc.controller.execution.ExecutionPropertiesCache;
 import org.slf4j.MDC;
 
 /**
@@ -76,36 +73,34 @@ abstract class AbstractUnitBasedCommand extends AbstractCommand {
         final List<List<ConfigurationUnit>> groupLists = unitDependencies.evaluateDependencyGroups(units);
 
         // some commands require to execute the command in reverse order (eg. stop command)
+        final Map<Id<UnitId>, List<Id<UnitId>>> dependencyMatrix;
         if (isReversive()) {
             Collections.reverse(groupLists);
+            dependencyMatrix = unitDependencies.getDownstreamMatrix();
+        } else {
+            dependencyMatrix = unitDependencies.getUpstreamMatrix();
         }
 
-        // process the resulting group list
-        for (List<ConfigurationUnit> group : groupLists) {
-
-            // we always run in an executor (mainly due to logging)
-            final ExecutorService executor;
-            if (parallel && group.size() > 1) {
-                executor = Executors.newFixedThreadPool(Math.min(NUMBER_OF_THREADS, group.size()));
-            } else {
-                executor = Executors.newFixedThreadPool(1);
-            }
-
-            // execute commands (queue)
-            for (final ConfigurationUnit unit : group) {
-                executor.execute(() -> executeCommand(force, limitToUnitId, unitFound, unit, exceptions));
-            }
+        // the flattened groups provide a valid execution order; the scheduler starts each unit as soon as
+        // the units it depends on are processed
+        final List<ConfigurationUnit> orderedUnits = new ArrayList<>();
+        groupLists.forEach(orderedUnits::addAll);
 
-            awaitTerminationOrCancelOnException(executor, exceptions);
+        if (!parallel && !isLocal() && BATCH_EXECUTION) {
+            // sequential remote executions are transferred in batches; one request per run of units on a host
+            executeInBatches(force, limitToUnitId, unitFound, orderedUnits, exceptions);
+        } else {
+            // we always run in an executor (mainly due to logging); concurrent executions are spread across the hosts
+            final UnitExecutionScheduler scheduler = new UnitExecutionScheduler(orderedUnits, dependencyMatrix,
+                parallel ? NUMBER_OF_THREADS : 1, this::getHostForScheduling, NUMBER_OF_THREADS_PER_HOST);
 
-            // execute update status sequentially
-            group.stream().forEach(unit -> updateStatus(limitToUnitId, unit));
+            // update status is executed sequentially in the scheduling thread
+            scheduler.execute(unit -> executeCommand(force, limitToUnitId, unitFound, unit, exceptions),
+                unit -> updateStatus(limitToUnitId, unit), exceptions);
+        }
 
-            // in case we have exceptions; we stop the remaining executions
-            if (!exceptions.isEmpty()) {
-                LOG.warn("Skipping execution of further commands due to previous error.");
-                break;
-            }
+        if (!exceptions.isEmpty()) {
+            LOG.warn("Skipping execution of further commands due to previous error.");
         }
 
         handleExceptions(exceptions);
@@ -155,6 +150,100 @@ abstract class AbstractUnitBasedCommand extends AbstractCommand {
 
     }
 
+    /**
+     * Executes the units in the given order. Consecutive units executed by the same executor are
+     * transferred as one batch. The state is retrieved once per host before; the state changes are
+     * provided with the batch results.
+     */
+    private void executeInBatches(boolean force, Id<UnitId> limitToUnitId, boolean[] unitFound,
+            List<ConfigurationUnit> orderedUnits, Map<Id<?>, Throwable> exceptions) {
+        final Set<Id<HostName>> hostsWithState = new HashSet<>();
+        final List<ConfigurationUnit> batch = new ArrayList<>();
+        Executor batchExecutor = null;
+
+        for (ConfigurationUnit unit : orderedUnits) {
+            if (!exceptions.isEmpty()) {
+                break;
+            }
+            final Id<UnitId> unitId = unit.getId();
+            if (unit.getCommand(getCommandVerb()) == null || (limitToUnitId != null && !unitId.equals(limitToUnitId))) {
+                continue;
+            }
+            MDC.put("unitId", unitId.getValue());
+            unitFound[0] = true;
+            try {
+                final Executor executor = getExecutor(unit);
+                if (executor != batchExecutor) {
+                    executeBatch(batchExecutor, batch, exceptions);
+                    if (!exceptions.isEmpty()) {
+                        // fail fast; the unit must not be executed after a failed predecessor
+                        break;
+                    }
+                    batchExecutor = executor;
+                }
+                if (hostsWithState.add(getExecutionContext().getHostForUnit(unitId))) {
+                    updateStatus(unitId);
+                }
+                prepareProperties(unit);
+                if (isExecutionRequired(force, unitId, getCommandVerb(), false)) {
+                    batch.add(unit);
+                } else {
+                    LOG.info("  Skipping command [{}] for unit [{}] as it already has been executed.",
+                            getCommandVerb(), unitId);
+                }
+            } catch (RuntimeException ex) {
+                // fail fast; the pending batch is dropped and never sent
+                batch.clear();
+                exceptions.put(unitId, ex);
+            }
+        }
+        if (exceptions.isEmpty()) {
+            executeBatch(batchExecutor, batch, exceptions);
+        }
+    }
+
+    private void executeBatch(Executor executor, List<ConfigurationUnit> batch, Map<Id<?>, Throwable> exceptions) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        LOG.debug("  Executing command [{}] for [{}] units", getCommandVerb(), batch.size());
+        final long timestamp = System.currentTimeMillis();
+        try {
+            final Map<Id<UnitId>, RuntimeException> results = executor.execute(getCommandVerb(), new ArrayList<>(batch));
+            for (ConfigurationUnit unit : batch) {
+                if (results.containsKey(unit.getId())) {
+                    final RuntimeException ex = results.get(unit.getId());
+                    if (ex == null) {
+                        afterSuccessfulUnitExecution(unit, timestamp);
+                    } else {
+                        exceptions.put(unit.getId(), ex);
+                    }
+                }
+            }
+        } catch (RuntimeException ex) {
+            // the outcome of the batch is unknown; it is recorded as failed for all of its units
+            for (ConfigurationUnit unit : batch) {
+                exceptions.put(unit.getId(), ex);
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * Determines the host the command for the given unit is executed on. Used to limit the number of
+     * concurrent executions per host.
+     *
+     * @param unit The unit.
+     * @return The host or {@code null} in case the command is executed locally or not applicable for the unit.
+     */
+    private Id<HostName> getHostForScheduling(ConfigurationUnit unit) {
+        if (isLocal() || unit.getCommand(getCommandVerb()) == null) {
+            return null;
+        }
+        return getExecutionContext().getHostForUnit(unit.getId());
+    }
+
     protected void doExecuteCommand(ConfigurationUnit unit) {
         getExecutor(unit).execute(getCommandVerb(), unit);
     }
@@ -175,6 +264,16 @@ abstract class AbstractUnitBasedCommand extends AbstractCommand {
         return false;
     }
 
+    /**
+     * Commands that cannot be skipped in general may still be skipped for units that were executed
+     * with the same execution properties before.
+     *
+     * @return {@code true} in case the command is skipped for units with unchanged execution properties.
+     */
+    protected boolean allowsToBeSkippedWhenUnchanged() {
+        return false;
+    }
+
     protected File exportPropertiesFile(Properties p, ConfigurationUnit unit, CommandDefinition command, String classifier)
             throws IOException {
         File file = DccUtils.propertyFile(getConfigurationTargetPath(), unit.getId(), classifier);
@@ -191,7 +290,7 @@ abstract class AbstractUnitBasedCommand extends AbstractCommand {
         }
         comment.append(")");
         
-        PropertyUtils.writeToFile(p, file, comment.toString());
+        getExecutionPropertiesCache().write(p, file, comment.toString());
         return file;
     }
 
@@ -201,6 +300,12 @@ abstract class AbstractUnitBasedCommand extends AbstractCommand {
     }
 
     protected void preparePrerequisitesProperties(ConfigurationUnit unit) {
+        // the properties are only generated again after the profile or the properties changed
+        if (getExecutionPropertiesCache().isUpToDate(DccUtils.propertyFile(getConfigurationTargetPath(),
+                unit.getId(), DccConstants.PREREQUISITES_PROPERTIES_FILE_NAME))) {
+            return;
+        }
+
         final Properties properties = new SortedProperties();
 
         final Profile profile = getExecutionContext().getProfile();
@@ -228,11 +333,16 @@ abstract class AbstractUnitBasedCommand extends AbstractCommand {
     }
 
     protected void prepareExecutionProperties(ConfigurationUnit unit) {
-        final Properties properties = new SortedProperties();
-
         final CommandDefinition command = unit.getCommand(getCommandVerb());
         Validate.notNull(command, "Command should not be null.");
 
+        if (getExecutionPropertiesCache().isUpToDate(DccUtils.propertyFile(getConfigurationTargetPath(),
+                unit.getId(), DccUtils.propertyFileName(getCommandVerb())))) {
+            return;
+        }
+
+        final Properties properties = new SortedProperties();
+
         processCapabilities(unit, properties, command);
         processContributions(unit, properties, command);
         processRequisitions(unit, properties, command);
@@ -245,6 +355,10 @@ abstract class AbstractUnitBasedCommand extends AbstractCommand {
         }
     }
 
+    private ExecutionPropertiesCache getExecutionPropertiesCache() {
+        return getExecutionContext().getExecutionPropertiesCache();
+    }
+
     private void processProvisions(ConfigurationUnit unit, final Properties properties,
             CommandDefinition command) {
         UnitCapabilityPropertiesAggregatorFactory.createProvisionAggregator(getExecutionContext())
@@ -332,17 +446,32 @@ abstract class AbstractUnitBasedCommand extends AbstractCommand {
     }
 
     protected boolean isExecutionRequired(final boolean force, final Id<UnitId> unitId, final Commands command) {
+        return isExecutionRequired(force, unitId, command, true);
+    }
+
+    private boolean isExecutionRequired(final boolean force, final Id<UnitId> unitId, final Commands command,
+            final boolean retrieveState) {
         if (force) {
             return true;
         } 
-        if (!allowsToBeSkipped()) {
+        final boolean skipUnchanged = !allowsToBeSkipped() && allowsToBeSkippedWhenUnchanged();
+        if (!allowsToBeSkipped() && !skipUnchanged) {
             return true;
         }
         if (!isLocal()) {
             Id<HostName> hostForUnit = getExecutionContext().getHostForUnit(unitId);
-            updateStatus(unitId);
+            if (retrieveState) {
+                updateStatus(unitId);
+            }
             
             final Id<DeploymentId> deploymentId = getExecutionContext().getProfile().getDeploymentId();
+            if (skipUnchanged) {
+                // the execution properties are prepared before; their hash is compared with the last execution
+                final String hash = getExecutionPropertiesCache().getHash(DccUtils.propertyFile(
+                    getConfigurationTargetPath(), unitId, DccUtils.propertyFileName(command)));
+                return hash == null || !hash.equals(getExecutionStateHandler().getExecutedPropertiesHash(
+                    unitId, command, hostForUnit, deploymentId));
+            }
             return !getExecutionStateHandler().alreadySuccessfullyExecuted(unitId, command, hostForUnit, deploymentId);
         } else {
             return true;
@@ -16,6 +16,8 @@
 package org.metaeffekt.dcc.controller.commands;
 
 import org.metaeffekt.dcc.commons.commands.Commands;
+import org.metaeffekt.dcc.commons.domain.Id;
+import org.metaeffekt.dcc.commons.domain.Type.UnitId;
 import org.metaeffekt.dcc.commons.execution.Executor;
 import org.metaeffekt.dcc.controller.execution.ExecutionContext;
 
@@ -33,6 +35,16 @@ public class InitializeCommand extends AbstractHostBasedCommand {
         return Commands.INITIALIZE;
     }
 
+    @Override
+    protected void doExecute(boolean force, boolean parallel, Id<UnitId> unitId) {
+        try {
+            super.doExecute(force, parallel, unitId);
+        } finally {
+            // the solution archive is shared by all hosts of this run only
+            getExecutionContext().releaseSolutionArchive();
+        }
+    }
+
     @Override
     protected void doExecuteCommand(Executor executor) {
         // execute an implicit clean before performing the initialize
@@ -37,4 +37,9 @@ public class ReconfigureCommand extends AbstractUnitBasedCommand {
         return false;
     }
 
+    @Override
+    protected boolean allowsToBeSkippedWhenUnchanged() {
+        return true;
+    }
+
 }
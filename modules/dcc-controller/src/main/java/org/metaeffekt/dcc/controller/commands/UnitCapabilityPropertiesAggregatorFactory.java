@@ -15,7 +15,6 @@
  */
 package org.metaeffekt.dcc.controller.commands;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -65,12 +64,8 @@ public class UnitCapabilityPropertiesAggregatorFactory {
                             unit, executionContext);
 
                 final Id<CapabilityId> capabilityId = Id.createCapabilityId(ref.getReferencedCapabilityDefId());
-                final List<ConfigurationUnit> unitsProvidingCapability = new ArrayList<ConfigurationUnit>();
-                for (ConfigurationUnit unitItem : executionContext.getProfile().getUnits()) {
-                    if (unitItem.findProvidedCapability(capabilityId) != null) {
-                        unitsProvidingCapability.add(unitItem);
-                    }
-                }
+                final List<ConfigurationUnit> unitsProvidingCapability =
+                    executionContext.getProfile().findUnitsWithProvidedCapability(capabilityId);
 
                 final Set<Id<UnitId>> unitIds = new HashSet<Id<UnitId>>();
                 for (ConfigurationUnit unitProvidingCapability : unitsProvidingCapability) {
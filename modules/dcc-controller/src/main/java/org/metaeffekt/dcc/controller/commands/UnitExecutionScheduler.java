@@ -0,0 +1,300 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.controller.commands;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.metaeffekt.dcc.commons.domain.Id;
+import org.metaeffekt.dcc.commons.domain.Type.UnitId;
+import org.metaeffekt.dcc.commons.mapping.ConfigurationUnit;
+
+/**
+ * Dependency-driven scheduler for unit-based commands. Instead of executing dependency groups one
+ * after another the scheduler starts a unit as soon as all units it depends on have been processed.
+ * All units share one bounded worker pool.
+ * <p>
+ * The bookkeeping of the dependency graph is performed exclusively in the calling thread. Worker
+ * threads only execute the unit task. Ready units are dispatched in the order given by the passed in
+ * unit list. For a pool with a single thread the execution order therefore equals the given order.
+ * <p>
+ * Optionally, the scheduler is aware of the host each unit is executed on. In this case the number of
+ * units concurrently executed per host is limited and the worker pool is filled round-robin across
+ * the hosts. Units without host (e.g. units executed locally) are only subject to the overall limit.
+ * <p>
+ * Once an exception was recorded no further units are started and the running units are
+ * interrupted (fail-fast).
+ */
+final class UnitExecutionScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UnitExecutionScheduler.class);
+
+    private final List<ConfigurationUnit> units;
+
+    private final int[] pendingPredecessors;
+
+    private final List<List<Integer>> successors;
+
+    private final int numberOfThreads;
+
+    private final Function<ConfigurationUnit, ?> hostResolver;
+
+    private final int numberOfThreadsPerHost;
+
+    /**
+     * Creates a scheduler for the given units.
+     *
+     * @param units The units in a valid execution order (e.g. flattened dependency groups).
+     * @param dependencyMatrix Maps a unit to the units that have to be processed before the unit. Units
+     *   not contained in units are ignored.
+     * @param numberOfThreads The maximum number of units executed concurrently.
+     */
+    UnitExecutionScheduler(List<ConfigurationUnit> units, Map<Id<UnitId>, List<Id<UnitId>>> dependencyMatrix,
+            int numberOfThreads) {
+        this(units, dependencyMatrix, numberOfThreads, unit -> null, numberOfThreads);
+    }
+
+    /**
+     * Creates a host-aware scheduler for the given units.
+     *
+     * @param units The units in a valid execution order (e.g. flattened dependency groups).
+     * @param dependencyMatrix Maps a unit to the units that have to be processed before the unit. Units
+     *   not contained in units are ignored.
+     * @param numberOfThreads The maximum number of units executed concurrently.
+     * @param hostResolver Resolves the host of a unit. May return {@code null} for units without host.
+     *   Invoked in the calling thread only.
+     * @param numberOfThreadsPerHost The maximum number of units executed concurrently on one host.
+     */
+    UnitExecutionScheduler(List<ConfigurationUnit> units, Map<Id<UnitId>, List<Id<UnitId>>> dependencyMatrix,
+            int numberOfThreads, Function<ConfigurationUnit, ?> hostResolver, int numberOfThreadsPerHost) {
+        this.units = new ArrayList<>(units);
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+        this.hostResolver = hostResolver;
+        this.numberOfThreadsPerHost = Math.max(1, numberOfThreadsPerHost);
+        this.pendingPredecessors = new int[this.units.size()];
+        this.successors = new ArrayList<>(this.units.size());
+
+        final Map<Id<UnitId>, Integer> indexMap = new HashMap<>();
+        for (int i = 0; i < this.units.size(); i++) {
+            indexMap.put(this.units.get(i).getId(), i);
+            successors.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < this.units.size(); i++) {
+            final List<Id<UnitId>> predecessors = dependencyMatrix.get(this.units.get(i).getId());
+            if (predecessors != null) {
+                for (Id<UnitId> predecessor : predecessors) {
+                    final Integer predecessorIndex = indexMap.get(predecessor);
+                    if (predecessorIndex != null && predecessorIndex != i) {
+                        successors.get(predecessorIndex).add(i);
+                        pendingPredecessors[i]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes task for all units respecting the dependencies.
+     *
+     * @param task The task to execute per unit. Invoked on a worker thread.
+     * @param onCompletion Invoked in the calling thread after a unit task completed.
+     * @param exceptions The exceptions map shared with task. Any entry stops the scheduling of further units.
+     */
+    void execute(Consumer<ConfigurationUnit> task, Consumer<ConfigurationUnit> onCompletion,
+            Map<Id<?>, Throwable> exceptions) {
+        if (units.isEmpty()) {
+            return;
+        }
+
+        final int[] pending = pendingPredecessors.clone();
+        final ReadyQueue ready = new ReadyQueue();
+        for (int i = 0; i < pending.length; i++) {
+            if (pending[i] == 0) {
+                ready.add(i);
+            }
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(numberOfThreads, units.size()));
+        final ExecutorCompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+
+        int inFlight = 0;
+        int completed = 0;
+        try {
+            while (exceptions.isEmpty() && (!ready.isEmpty() || inFlight > 0)) {
+                int next;
+                while (inFlight < numberOfThreads && (next = ready.poll()) != -1) {
+                    final ConfigurationUnit unit = units.get(next);
+                    completionService.submit(() -> task.accept(unit), next);
+                    inFlight++;
+                }
+
+                final int index = takeCompleted(completionService);
+                ready.release(index);
+                inFlight--;
+                completed++;
+
+                onCompletion.accept(units.get(index));
+
+                for (int successor : successors.get(index)) {
+                    if (--pending[successor] == 0) {
+                        ready.add(successor);
+                    }
+                }
+            }
+        } finally {
+            // when there is an exception, do not attempt the units that have not started yet
+            // and try to terminate the currently running (not guaranteed)
+            if (exceptions.isEmpty()) {
+                executor.shutdown();
+            } else {
+                executor.shutdownNow();
+            }
+            awaitTermination(executor);
+        }
+
+        if (exceptions.isEmpty() && completed < units.size()) {
+            throw new IllegalStateException(String.format(
+                "Unable to schedule all units. Only [%s] of [%s] units were processed.", completed, units.size()));
+        }
+
+        LOG.debug("Scheduled [{}] of [{}] units.", completed, units.size());
+    }
+
+    private int takeCompleted(ExecutorCompletionService<Integer> completionService) {
+        while (true) {
+            try {
+                return completionService.take().get();
+            } catch (InterruptedException e) {
+                // nothing to do
+            } catch (ExecutionException e) {
+                // tasks are expected to record failures in the exceptions map; anything else is unexpected
+                throw new IllegalStateException("Unexpected error while executing unit task.", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Queue of units ready for execution. Maintains one queue per host and the number of units currently
+     * executed on each host. Within a host queue the units are ordered by their index.
+     */
+    private class ReadyQueue {
+
+        private final Object[] hosts = new Object[units.size()];
+
+        private final Map<Object, PriorityQueue<Integer>> hostQueues = new LinkedHashMap<>();
+
+        private final Map<Object, Integer> hostsInFlight = new HashMap<>();
+
+        private final List<Object> hostOrder = new ArrayList<>();
+
+        private int cursor = 0;
+
+        private int size = 0;
+
+        void add(int index) {
+            final Object host = hostResolver.apply(units.get(index));
+            hosts[index] = host;
+            PriorityQueue<Integer> queue = hostQueues.get(host);
+            if (queue == null) {
+                queue = new PriorityQueue<>();
+                hostQueues.put(host, queue);
+                hostOrder.add(host);
+            }
+            queue.add(index);
+            size++;
+        }
+
+        /**
+         * @return The index of the next unit to execute or -1 in case no unit can be executed currently.
+         */
+        int poll() {
+            if (size == 0) {
+                return -1;
+            }
+
+            int position = -1;
+            if (numberOfThreads == 1) {
+                // sequential execution; preserve the given order
+                int min = Integer.MAX_VALUE;
+                for (int i = 0; i < hostOrder.size(); i++) {
+                    final Integer head = hostQueues.get(hostOrder.get(i)).peek();
+                    if (head != null && head < min) {
+                        min = head;
+                        position = i;
+                    }
+                }
+            } else {
+                // round-robin across the hosts with capacity left
+                for (int i = 0; i < hostOrder.size(); i++) {
+                    final int candidate = (cursor + i) % hostOrder.size();
+                    final Object host = hostOrder.get(candidate);
+                    if (!hostQueues.get(host).isEmpty() && hasCapacity(host)) {
+                        position = candidate;
+                        break;
+                    }
+                }
+            }
+
+            if (position == -1) {
+                return -1;
+            }
+
+            final Object host = hostOrder.get(position);
+            cursor = position + 1;
+            size--;
+            hostsInFlight.merge(host, 1, Integer::sum);
+            return hostQueues.get(host).poll();
+        }
+
+        void release(int index) {
+            hostsInFlight.merge(hosts[index], -1, Integer::sum);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        private boolean hasCapacity(Object host) {
+            return host == null || hostsInFlight.getOrDefault(host, 0) < numberOfThreadsPerHost;
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor) {
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // nothing to do
+            }
+        }
+    }
+
+}
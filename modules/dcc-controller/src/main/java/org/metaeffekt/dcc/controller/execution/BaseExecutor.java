@@ -18,6 +18,8 @@ package org.metaeffekt.dcc.controller.execution;
 import java.io.File;
 import java.io.IOException;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -55,8 +57,6 @@ public abstract class BaseExecutor implements Executor {
 
     private ExecutionContext executionContext;
 
-    private ExecutionStateHandler executionStateHandler;
-
     protected BaseExecutor(ExecutionContext executionContext) {
         Validate.notNull(executionContext,
                 "Please provide an execution context when creating an Executor.");
@@ -73,10 +73,25 @@ public abstract class BaseExecutor implements Executor {
     @Override
     public abstract void purge();
 
+    @Override
+    public Map<Id<UnitId>, RuntimeException> execute(Commands command, List<ConfigurationUnit> units) {
+        final Map<Id<UnitId>, RuntimeException> results = new LinkedHashMap<>();
+        for (ConfigurationUnit unit : units) {
+            try {
+                execute(command, unit);
+                results.put(unit.getId(), null);
+            } catch (RuntimeException e) {
+                results.put(unit.getId(), e);
+                break;
+            }
+        }
+        return results;
+    }
+
     protected synchronized void cleanFolders(File... folders) {
         for (File folder : folders) {
             if (folder.exists()) {
-                executionStateHandler.deleteFile(folder);
+                getExecutionStateHandler().deleteFile(folder);
             }
         }
     }
@@ -86,8 +101,7 @@ public abstract class BaseExecutor implements Executor {
     }
 
     protected ExecutionStateHandler getExecutionStateHandler() {
-        initializeStateHanderIfRequired();
-        return executionStateHandler;
+        return executionContext.getExecutionStateHandler();
     }
 
     protected File getWorkingTmpDirectory() {
@@ -104,13 +118,6 @@ public abstract class BaseExecutor implements Executor {
         return DccUtils.workStateBaseDir(getExecutionContext().getSolutionDir());
     }
 
-    private void initializeStateHanderIfRequired() {
-        if (this.executionStateHandler == null) {
-            this.executionStateHandler = new ExecutionStateHandler(
-                executionContext.getTargetDir(), executionContext.getSolutionDir());
-        }
-    }
-
     protected void initializeLocalFolders() {
         DccUtils.prepareFoldersForWriting(
                 getWorkingTmpDirectory(),
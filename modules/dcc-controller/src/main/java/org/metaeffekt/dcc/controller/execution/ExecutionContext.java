@@ -16,6 +16,8 @@
 package org.metaeffekt.dcc.controller.execution;
 
 import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -28,14 +30,25 @@ import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.AllowAllHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.metaeffekt.dcc.commons.ant.PropertyUtils;
 import org.metaeffekt.dcc.commons.commands.Commands;
 import org.metaeffekt.dcc.commons.domain.Id;
 import org.metaeffekt.dcc.commons.domain.Type.HostName;
 import org.metaeffekt.dcc.commons.domain.Type.PackageId;
 import org.metaeffekt.dcc.commons.domain.Type.UnitId;
+import org.metaeffekt.dcc.commons.execution.ExecutionStateHandler;
 import org.metaeffekt.dcc.commons.execution.Executor;
 import org.metaeffekt.dcc.commons.mapping.Binding;
 import org.metaeffekt.dcc.commons.mapping.Capability;
@@ -56,10 +69,18 @@ import org.metaeffekt.dcc.controller.DccControllerConstants;
 public class ExecutionContext {
     
     protected static final Logger LOG = LoggerFactory.getLogger(ExecutionContext.class);
+
+    private static final int MAX_CONNECTIONS = Integer.parseInt(System.getProperty("dcc.http.connection.count", "50"));
+
+    private static final int MAX_CONNECTIONS_PER_HOST = Integer.parseInt(System.getProperty("dcc.http.host.connection.count", "10"));
             
     private Profile profile;
     
     private PropertiesHolder propertiesHolder;
+
+    // the profile the properties holder was evaluated for and the state of its property files
+    private Profile evaluatedProfile;
+    private String evaluatedPropertyFilesStamp;
     
     // The solutionDir is where profile.xml and /packages reside (presumption is that this is the 
     // folder structure of a solution)
@@ -79,6 +100,19 @@ public class ExecutionContext {
 
     private SSLConfiguration sslConfiguration;
 
+    private CloseableHttpClient httpClient;
+
+    /**
+     * The SSL configuration the {@link #httpClient} was built with.
+     */
+    private SSLConfiguration httpClientSslConfiguration;
+
+    private ExecutionStateHandler executionStateHandler;
+
+    private SolutionArchive solutionArchive;
+
+    private final ExecutionPropertiesCache executionPropertiesCache = new ExecutionPropertiesCache();
+
     public ExecutionContext(SSLConfiguration sslConfiguration) {
         Validate.notNull(sslConfiguration);
         this.sslConfiguration = sslConfiguration;
@@ -91,6 +125,67 @@ public class ExecutionContext {
         return sslConfiguration;
     }
 
+    /**
+     * Replaces the SSL configuration. The http client built with the previous configuration is closed.
+     *
+     * @param sslConfiguration The SSL configuration.
+     */
+    public synchronized void setSslConfiguration(SSLConfiguration sslConfiguration) {
+        this.sslConfiguration = sslConfiguration;
+        if (httpClientSslConfiguration != sslConfiguration) {
+            closeHttpClient();
+        }
+    }
+
+    /**
+     * Provides the http client used to communicate with the agents. The client is shared by all
+     * executors and keeps the connections to the agents alive. The client must not be closed by the
+     * caller.
+     *
+     * @return The shared http client.
+     *
+     * @throws IOException In case the key store or trust store cannot be read.
+     * @throws GeneralSecurityException In case the stores cannot be processed.
+     */
+    public synchronized CloseableHttpClient getHttpClient() throws IOException, GeneralSecurityException {
+        if (httpClient != null && httpClientSslConfiguration != sslConfiguration) {
+            closeHttpClient();
+        }
+        if (httpClient == null) {
+            Validate.notNull(sslConfiguration, "No SSL configuration available.");
+            final SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(
+                sslConfiguration.getSslContext(), new AllowAllHostnameVerifier());
+            final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("https", sslSocketFactory)
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .build();
+
+            final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry);
+            connectionManager.setMaxTotal(MAX_CONNECTIONS);
+            connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+
+            httpClient = HttpClientBuilder.create().setConnectionManager(connectionManager).build();
+            httpClientSslConfiguration = sslConfiguration;
+        }
+        return httpClient;
+    }
+
+    /**
+     * Closes the shared http client and the pooled connections. The next call to
+     * {@link #getHttpClient()} creates a new client.
+     */
+    public synchronized void closeHttpClient() {
+        if (httpClient != null) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                LOG.debug("Unable to close http client: {}", e.getMessage());
+            }
+            httpClient = null;
+            httpClientSslConfiguration = null;
+        }
+    }
+
     public boolean containsProfile() {
         return profile != null;
     }
@@ -103,12 +198,57 @@ public class ExecutionContext {
         this.profile = profile;
     }
 
+    /**
+     * Evaluates the profile. In case the profile was already evaluated and only the solution or
+     * deployment properties files changed since, the properties are reloaded and only the units affected
+     * by the changes are re-evaluated. Both invalidate the {@link ExecutionPropertiesCache}.
+     */
     public synchronized void prepareForExecution() {
-        if (propertiesHolder == null) {
+        if (propertiesHolder == null || evaluatedProfile != profile) {
+            executionPropertiesCache.invalidate();
             propertiesHolder = profile.createPropertiesHolder(true);
             profile.evaluate(propertiesHolder);
+            evaluatedProfile = profile;
+            evaluatedPropertyFilesStamp = createPropertyFilesStamp();
+        } else {
+            final String propertyFilesStamp = createPropertyFilesStamp();
+            if (!propertyFilesStamp.equals(evaluatedPropertyFilesStamp)) {
+                final long timestamp = System.currentTimeMillis();
+                final Properties solutionProperties = reloadProperties(
+                    profile.getSolutionPropertiesFile(), profile.getSolutionProperties());
+                final Properties deploymentProperties = reloadProperties(
+                    profile.getDeploymentPropertiesFile(), profile.getDeploymentProperties());
+                profile.setSolutionProperties(solutionProperties, profile.getSolutionPropertiesFile());
+                profile.setDeploymentProperties(deploymentProperties, profile.getDeploymentPropertiesFile());
+
+                executionPropertiesCache.invalidate();
+                final Set<ConfigurationUnit> units =
+                    profile.reevaluate(propertiesHolder, solutionProperties, deploymentProperties);
+                evaluatedPropertyFilesStamp = propertyFilesStamp;
+                LOG.info("Re-evaluated [{}] units affected by changed properties in [{}] ms.", units.size(),
+                    System.currentTimeMillis() - timestamp);
+            }
         }
     }
+
+    private String createPropertyFilesStamp() {
+        return createFileStamp(profile.getSolutionPropertiesFile()) + "|"
+            + createFileStamp(profile.getDeploymentPropertiesFile());
+    }
+
+    private static String createFileStamp(File file) {
+        if (file == null || !file.isFile()) {
+            return "-";
+        }
+        return file.lastModified() + ":" + file.length();
+    }
+
+    private static Properties reloadProperties(File file, Properties currentProperties) {
+        if (file == null || !file.isFile()) {
+            return currentProperties;
+        }
+        return PropertyUtils.loadPropertyFile(file);
+    }
     
     public Properties getSolutionProperties() {
         return profile.getSolutionProperties();
@@ -124,6 +264,7 @@ public class ExecutionContext {
 
     public void setSolutionDir(File solutionDir) {
         this.solutionDir = solutionDir;
+        this.executionStateHandler = null;
     }
     
     public void resetContext() {
@@ -133,6 +274,53 @@ public class ExecutionContext {
         this.unitToUnitHosts = null;
         this.targetDir = null;
         this.targetBaseDir = null;
+        this.executionStateHandler = null;
+        releaseSolutionArchive();
+        closeHttpClient();
+    }
+
+    /**
+     * Provides the {@link ExecutionStateHandler} shared by the commands and executors of this context.
+     * The handler maintains an in-memory index of the state cache. Sharing the instance ensures that
+     * state updates retrieved by the executors are visible to the commands.
+     *
+     * @return The shared {@link ExecutionStateHandler}.
+     */
+    public synchronized ExecutionStateHandler getExecutionStateHandler() {
+        if (executionStateHandler == null) {
+            executionStateHandler = new ExecutionStateHandler(getTargetDir(), getSolutionDir());
+        }
+        return executionStateHandler;
+    }
+
+    /**
+     * Provides the {@link SolutionArchive} shared by the executors of all hosts. The archive is kept until
+     * {@link #releaseSolutionArchive()} is called.
+     *
+     * @return The shared {@link SolutionArchive}.
+     */
+    public synchronized SolutionArchive getSolutionArchive() {
+        if (solutionArchive == null || !solutionArchive.getSolutionDir().equals(getSolutionDir())) {
+            releaseSolutionArchive();
+            solutionArchive = new SolutionArchive(getSolutionDir());
+        }
+        return solutionArchive;
+    }
+
+    /**
+     * Provides the cache of the execution and prerequisites properties files generated by the commands.
+     *
+     * @return The shared {@link ExecutionPropertiesCache}.
+     */
+    public ExecutionPropertiesCache getExecutionPropertiesCache() {
+        return executionPropertiesCache;
+    }
+
+    public synchronized void releaseSolutionArchive() {
+        if (solutionArchive != null) {
+            solutionArchive.close();
+            solutionArchive = null;
+        }
     }
     
     public Map<Id<HostName>, Executor> getHostsExecutors() {
@@ -146,10 +334,12 @@ public class ExecutionContext {
     
     public void setTargetBaseDir(File targetBaseDir) {
         this.targetBaseDir = targetBaseDir;
+        this.executionStateHandler = null;
     }
 
     public void setTargetDir(File targetDir) {
         this.targetDir = targetDir;
+        this.executionStateHandler = null;
     }
     
     public File getTargetDir() {
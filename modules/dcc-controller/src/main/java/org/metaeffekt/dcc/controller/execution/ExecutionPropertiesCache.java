@@ -0,0 +1,126 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.controller.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.metaeffekt.dcc.commons.DccProperties;
+import org.metaeffekt.dcc.commons.DccUtils;
+import org.metaeffekt.dcc.commons.ant.PropertyUtils;
+import org.metaeffekt.dcc.commons.properties.ImmutableSortedProperties;
+
+/**
+ * Keeps track of the execution and prerequisites properties files generated for the units. A file
+ * generated since the last {@link #invalidate()} does not need to be generated again as long as it was
+ * not modified or removed (e.g. moved to the state by a local execution).
+ * <p>
+ * Each file carries the hash of its content in {@link DccProperties#DCC_PROPERTIES_HASH}. A file is only
+ * rewritten in case the hash of the generated properties differs. The hash is persisted with the
+ * execution state and allows to skip units that were already executed with the same properties.
+ */
+public class ExecutionPropertiesCache {
+
+    private final Map<File, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile long generation;
+
+    /**
+     * Invalidates all files. To be called whenever the profile or the properties changed.
+     */
+    public synchronized void invalidate() {
+        generation++;
+    }
+
+    /**
+     * @param file The properties file.
+     * @return {@code true} in case the file was written or confirmed by {@link #write(Properties, File, String)}
+     *   since the last {@link #invalidate()} and was not modified since.
+     */
+    public boolean isUpToDate(File file) {
+        final Entry entry = entries.get(file);
+        return entry != null && entry.generation == generation && entry.matches(file);
+    }
+
+    /**
+     * @param file The properties file.
+     * @return The hash of the file content in case the file {@link #isUpToDate(File) is up to date};
+     *   {@code null} otherwise.
+     */
+    public String getHash(File file) {
+        final Entry entry = entries.get(file);
+        return entry != null && entry.generation == generation && entry.matches(file) ? entry.hash : null;
+    }
+
+    /**
+     * Writes the properties to the given file unless the file already provides the same content.
+     *
+     * @param properties The properties. The hash is added to the properties.
+     * @param file The target file.
+     * @param comment The comment written to the file.
+     * @return The hash of the content.
+     * @throws IOException In case the file cannot be written.
+     */
+    public String write(Properties properties, File file, String comment) throws IOException {
+        final long currentGeneration = generation;
+        final ImmutableSortedProperties sortedProperties = ImmutableSortedProperties.of(properties);
+        final String hash = computeHash(sortedProperties, comment);
+        properties.setProperty(DccProperties.DCC_PROPERTIES_HASH, hash);
+
+        final Entry entry = entries.get(file);
+        if (entry == null || !entry.hash.equals(hash) || !entry.matches(file)) {
+            PropertyUtils.writeToFile(sortedProperties.with(DccProperties.DCC_PROPERTIES_HASH, hash), file, comment);
+        }
+        entries.put(file, new Entry(hash, file.lastModified(), file.length(), currentGeneration));
+        return hash;
+    }
+
+    static String computeHash(ImmutableSortedProperties properties, String comment) {
+        final StringBuilder content = new StringBuilder();
+        content.append(comment).append('\n');
+        for (int i = 0; i < properties.size(); i++) {
+            final String key = properties.getKey(i);
+            if (!DccProperties.DCC_PROPERTIES_HASH.equals(key)) {
+                content.append(key).append('=').append(properties.getValue(i)).append('\n');
+            }
+        }
+        return DccUtils.sha256Hex(content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Entry {
+
+        private final String hash;
+        private final long lastModified;
+        private final long length;
+        private final long generation;
+
+        private Entry(String hash, long lastModified, long length, long generation) {
+            this.hash = hash;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.generation = generation;
+        }
+
+        private boolean matches(File file) {
+            return file.lastModified() == lastModified && file.length() == length && file.isFile();
+        }
+    }
+
+}
@@ -30,41 +30,44 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.security.KeyStore;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.lang3.Validate;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.conn.ssl.AllowAllHostnameVerifier;
-import org.apache.http.conn.ssl.SSLContextBuilder;
-import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentProducer;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.EntityTemplate;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.entity.FileEntity;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.util.CollectionUtils;
 
+import org.metaeffekt.dcc.agent.AgentJob;
+import org.metaeffekt.dcc.agent.CommandBatch;
 import org.metaeffekt.dcc.agent.DccAgentEndpoint;
+import org.metaeffekt.dcc.agent.DccAgentUriBuilder;
 import org.metaeffekt.dcc.agent.DeploymentBasedEndpointUriBuilder;
 import org.metaeffekt.dcc.agent.HostBasedEndpointUriBuilder;
+import org.metaeffekt.dcc.agent.SolutionManifest;
 import org.metaeffekt.dcc.agent.UnitBasedEndpointUriBuilder;
 import org.metaeffekt.dcc.commons.DccConstants;
 import org.metaeffekt.dcc.commons.DccUtils;
@@ -74,6 +77,7 @@ import org.metaeffekt.dcc.commons.domain.Type.DeploymentId;
 import org.metaeffekt.dcc.commons.domain.Type.HostName;
 import org.metaeffekt.dcc.commons.domain.Type.PackageId;
 import org.metaeffekt.dcc.commons.domain.Type.UnitId;
+import org.metaeffekt.dcc.commons.execution.ExecutionStateHandler;
 import org.metaeffekt.dcc.commons.execution.Executor;
 import org.metaeffekt.dcc.commons.mapping.ConfigurationUnit;
 import org.metaeffekt.dcc.controller.DccControllerConstants;
@@ -87,17 +91,15 @@ public class RemoteExecutor extends BaseExecutor implements Executor {
 
     private static final Logger LOG = LoggerFactory.getLogger(RemoteExecutor.class);
 
-    private static final Set<String> INCLUDED_FOLDERS = new HashSet<String>();
-    static {
-        INCLUDED_FOLDERS.add(DccConstants.LIB_SUB_DIRECTORY); 
-        INCLUDED_FOLDERS.add(DccConstants.PACKAGES_SUB_DIRECTORY); 
-        INCLUDED_FOLDERS.add(DccConstants.HOOKS_SUB_DIRECTORY); 
-        INCLUDED_FOLDERS.addAll(Arrays.asList(SOLUTION_ADDON_FOLDERS)); 
-    }
-    
     private static final int DEFAULT_TIMEOUT = 30000; // 30 seconds
 
-    private final SSLConfiguration sslConfiguration;
+    private static final boolean ASYNC_EXECUTION = Boolean.parseBoolean(System.getProperty("dcc.execution.async", "true"));
+
+    private static final long JOB_POLL_WAIT = 10000; // 10 seconds
+
+    private static final long JOB_TIMEOUT = Long.parseLong(System.getProperty("dcc.execution.job.timeout", "7200")) * 1000;
+
+    private static final Pattern JOB_ID_PATTERN = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
 
     private final DccAgentEndpoint agentEndpoint;
 
@@ -129,7 +131,6 @@ public class RemoteExecutor extends BaseExecutor implements Executor {
                 .withHost(host).withPort(port).withTimeout(DEFAULT_TIMEOUT);
 
         this.agentEndpoint = new DccAgentEndpoint(host, port, DEFAULT_TIMEOUT);
-        this.sslConfiguration = executionContext.getSslConfiguration();
     }
 
     @Override
@@ -167,9 +168,18 @@ public class RemoteExecutor extends BaseExecutor implements Executor {
 
         final Id<DeploymentId> deploymentId = getExecutionContext().getProfile().getDeploymentId();
 
-        HttpEntity zipFile = createZipFileOfSolutionLocation();
-        HttpUriRequest initializeRequest = deploymentBasedEndpointUriBuilder.buildHttpUriRequest(
-                INITIALIZE, deploymentId, zipFile);
+        // transfer only the files not yet available on the agent; the solution is then materialized
+        // from the manifest. Agents not supporting the blob store receive the complete solution as zip.
+        final SolutionManifest manifest = createSolutionManifest();
+        final HttpUriRequest initializeRequest;
+        if (uploadMissingBlobs(manifest)) {
+            initializeRequest = deploymentBasedEndpointUriBuilder.buildHttpUriRequest(INITIALIZE, deploymentId,
+                createManifestEntity(manifest), Collections.singletonMap(DccAgentUriBuilder.MANIFEST, "true"));
+        } else {
+            HttpEntity zipFile = createZipFileOfSolutionLocation();
+            initializeRequest = deploymentBasedEndpointUriBuilder.buildHttpUriRequest(
+                    INITIALIZE, deploymentId, zipFile);
+        }
         executeRequest(initializeRequest, new Callback() {
 
             @Override
@@ -194,8 +204,7 @@ public class RemoteExecutor extends BaseExecutor implements Executor {
         LOG.debug("Checking if host [{}:{}] is available. ", hostBasedEndpointUriBuilder.getHost(),
                 hostBasedEndpointUriBuilder.getPort());
         HttpUriRequest getVersion = hostBasedEndpointUriBuilder.buildHttpUriRequest(VERSION);
-        try (final CloseableHttpClient httpClient = instantiateHttpClientWithTimeout()) {
-            HttpResponse response = httpClient.execute(getVersion);
+        try (final CloseableHttpResponse response = getExecutionContext().getHttpClient().execute(getVersion)) {
             if (response != null) {
                 int statusCode = response.getStatusLine().getStatusCode();
                 if (statusCode == 200) {
@@ -261,7 +270,7 @@ public class RemoteExecutor extends BaseExecutor implements Executor {
         final Id<HostName> host = Id.createHostName(deploymentBasedEndpointUriBuilder.getHost());
 
         HttpUriRequest stateRequest = deploymentBasedEndpointUriBuilder.
-            buildHttpUriRequest(STATE, deploymentId);
+            buildHttpUriRequest(STATE, deploymentId, null, createStateParameters(host, deploymentId));
         LOG.debug("Retrieving current execution state from [{}:{}]",
                 deploymentBasedEndpointUriBuilder.getHost(),
                 deploymentBasedEndpointUriBuilder.getPort());
@@ -270,7 +279,7 @@ public class RemoteExecutor extends BaseExecutor implements Executor {
             @Override
             public void process(HttpResponse response) {
                 try {
-                    getExecutionStateHandler().updateConsolidatedState(
+                    getExecutionStateHandler().updateState(
                             response.getEntity().getContent(), host, deploymentId);
                 } catch (IOException e) {
                     LOG.error(String.format("Failed to retrieve current state from [%s]",
@@ -299,9 +308,13 @@ public class RemoteExecutor extends BaseExecutor implements Executor {
         Id<PackageId> packageId = getExecutionContext().getPackageId(unit, command);
         Id<UnitId> unitId = unit.getId();
 
+        // the script is executed as job; the request returns immediately and the progress is polled
+        final Map<String, String> parameters = ASYNC_EXECUTION ?
+            Collections.singletonMap(DccAgentUriBuilder.ASYNC, "true") : Collections.<String, String>emptyMap();
         HttpUriRequest request = unitBasedEndpointUriBuilder.buildHttpUriRequest(command,
-                deploymentId, unitId, packageId, loadProperties(unitId, command));
+                deploymentId, unitId, packageId, loadProperties(unitId, command), parameters);
 
+        final String[] jobId = new String[1];
         LOG.debug("    Invoking: [{}]", request.getURI());
         executeRequest(request, new Callback() {
 
@@ -309,9 +322,13 @@ public class RemoteExecutor extends BaseExecutor implements Executor {
             public void process(HttpResponse response) {
                 int statusCode = response.getStatusLine().getStatusCode();
                 if (200 == statusCode) {
-                    LOG.debug("Command [{}] for unit [{}] successfully executed against host [{}:{}].",
-                            command, unit.getId(), unitBasedEndpointUriBuilder.getHost(),
-                            unitBasedEndpointUriBuilder.getPort());
+                    // agents not supporting jobs execute synchronously and respond without job id
+                    jobId[0] = readJobId(response);
+                    if (jobId[0] == null) {
+                        LOG.debug("Command [{}] for unit [{}] successfully executed against host [{}:{}].",
+                                command, unit.getId(), unitBasedEndpointUriBuilder.getHost(),
+                                unitBasedEndpointUriBuilder.getPort());
+                    }
                 } else {
                     throw new RuntimeException(
                             String.format(
@@ -324,6 +341,216 @@ public class RemoteExecutor extends BaseExecutor implements Executor {
                 }
             }
         });
+
+        if (jobId[0] != null) {
+            awaitJob(jobId[0], command, unitId);
+        }
+    }
+
+    /**
+     * Polls the progress of the given job until finished. The output of the script is logged while
+     * the job is running. The connection is only occupied during a poll. Fails in case the job does
+     * not finish within {@link #JOB_TIMEOUT}.
+     */
+    private void awaitJob(final String jobId, final Commands command, final Id<UnitId> unitId) {
+        final Properties progress = new Properties();
+        final long deadline = System.currentTimeMillis() + JOB_TIMEOUT;
+        long offset = 0;
+        do {
+            if (System.currentTimeMillis() > deadline) {
+                throw new RuntimeException(String.format(
+                    "Command [%s] for unit [%s] did not finish within [%s] seconds on host [%s:%s] (job [%s]).",
+                    command, unitId, JOB_TIMEOUT / 1000, hostBasedEndpointUriBuilder.getHost(),
+                    hostBasedEndpointUriBuilder.getPort(), jobId));
+            }
+            final HttpUriRequest request = hostBasedEndpointUriBuilder.buildJobProgressRequest(jobId, offset, JOB_POLL_WAIT);
+            progress.clear();
+            executeRequest(request, new Callback() {
+
+                @Override
+                public void process(HttpResponse response) {
+                    int statusCode = response.getStatusLine().getStatusCode();
+                    if (200 != statusCode) {
+                        throw new RuntimeException(String.format(
+                            "Unexpected response while retrieving progress of [%s] for unit [%s] from the host [%s:%s]"
+                                + " - status code was [%s]. Remote exception message: [{%s}]",
+                            command, unitId, hostBasedEndpointUriBuilder.getHost(), hostBasedEndpointUriBuilder.getPort(),
+                            statusCode, getExceptionMessageFromStream(response)));
+                    }
+                    try (InputStream in = response.getEntity().getContent()) {
+                        progress.load(in);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+
+            final String output = progress.getProperty(AgentJob.KEY_OUTPUT, "");
+            if (!output.isEmpty()) {
+                for (String line : output.split("\n")) {
+                    LOG.info("    [{}] {}", unitId, line);
+                }
+            }
+            offset = Long.parseLong(progress.getProperty(AgentJob.KEY_OFFSET, String.valueOf(offset)));
+        } while (AgentJob.STATUS_RUNNING.equals(progress.getProperty(AgentJob.KEY_STATUS)));
+
+        if (AgentJob.STATUS_SUCCESS.equals(progress.getProperty(AgentJob.KEY_STATUS))) {
+            LOG.debug("Command [{}] for unit [{}] successfully executed against host [{}:{}].",
+                command, unitId, unitBasedEndpointUriBuilder.getHost(), unitBasedEndpointUriBuilder.getPort());
+        } else {
+            throw new RuntimeException(String.format(
+                "Unexpected response while executing [%s] for unit [%s] against the host [%s:%s]."
+                    + " Remote exception message: [{%s}]",
+                command, unitId, unitBasedEndpointUriBuilder.getHost(), unitBasedEndpointUriBuilder.getPort(),
+                progress.getProperty(AgentJob.KEY_MESSAGE)));
+        }
+    }
+
+    private String readJobId(HttpResponse response) {
+        try {
+            if (response.getEntity() == null) {
+                return null;
+            }
+            final String content = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            return content != null && JOB_ID_PATTERN.matcher(content.trim()).matches() ? content.trim() : null;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Executes the command for all units with a single request. The agent executes the units in the
+     * given order and responds with the results and the state changes. Agents not supporting batches
+     * are served unit by unit.
+     */
+    @Override
+    public Map<Id<UnitId>, RuntimeException> execute(final Commands command, final List<ConfigurationUnit> units) {
+        if (units.size() < 2) {
+            return executeUnitByUnit(command, units);
+        }
+
+        final Id<DeploymentId> deploymentId = getExecutionContext().getProfile().getDeploymentId();
+        final Id<HostName> host = Id.createHostName(unitBasedEndpointUriBuilder.getHost());
+
+        final CommandBatch batch = new CommandBatch();
+        final Map<String, byte[]> parts = new HashMap<>();
+        for (ConfigurationUnit unit : units) {
+            logCommand(command, unit);
+            final int index = batch.getEntries().size();
+            batch.add(unit.getId(), getExecutionContext().getPackageId(unit, command), command.toString());
+            parts.put(CommandBatch.partName(index, DccConstants.COMMAND_PROPERTIES),
+                loadExecutionProperties(unit.getId(), command));
+            parts.put(CommandBatch.partName(index, DccConstants.PREREQUISITES_PROPERTIES),
+                loadPrerequisitesProperties(unit.getId()));
+        }
+        parts.put(CommandBatch.BATCH_PART, toByteArray(batch.toProperties()));
+
+        final Map<Id<UnitId>, RuntimeException> results = new LinkedHashMap<>();
+        final boolean[] supported = new boolean[1];
+
+        HttpUriRequest request = unitBasedEndpointUriBuilder.buildBatchHttpUriRequest(
+            deploymentId, parts, createStateParameters(host, deploymentId));
+        LOG.debug("    Invoking: [{}] with [{}] units", request.getURI(), units.size());
+        executeRequest(request, new Callback() {
+
+            @Override
+            public void process(HttpResponse response) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (200 == statusCode) {
+                    supported[0] = true;
+                    try {
+                        processBatchResponse(response.getEntity().getContent(), batch, host, deploymentId, results);
+                    } catch (IOException e) {
+                        throw new RuntimeException(String.format(
+                            "Unable to read batch response from host [%s:%s].",
+                            unitBasedEndpointUriBuilder.getHost(), unitBasedEndpointUriBuilder.getPort()), e);
+                    }
+                } else if (404 == statusCode) {
+                    LOG.debug("Host [{}:{}] does not support batches. Executing units one by one.",
+                        unitBasedEndpointUriBuilder.getHost(), unitBasedEndpointUriBuilder.getPort());
+                } else {
+                    throw new RuntimeException(String.format(
+                        "Unexpected response while executing [%s] for [%s] units against the host [%s:%s]"
+                            + " - status code was [%s]. Remote exception message: [{%s}]",
+                        command, units.size(), unitBasedEndpointUriBuilder.getHost(),
+                        unitBasedEndpointUriBuilder.getPort(), statusCode, getExceptionMessageFromStream(response)));
+                }
+            }
+        });
+
+        if (!supported[0]) {
+            return executeUnitByUnit(command, units);
+        }
+        return results;
+    }
+
+    private Map<Id<UnitId>, RuntimeException> executeUnitByUnit(Commands command, List<ConfigurationUnit> units) {
+        final Map<Id<UnitId>, RuntimeException> results = super.execute(command, units);
+        retrieveUpdatedState();
+        return results;
+    }
+
+    private void processBatchResponse(InputStream in, CommandBatch batch, Id<HostName> host,
+            Id<DeploymentId> deploymentId, Map<Id<UnitId>, RuntimeException> results) throws IOException {
+        final Properties result = new Properties();
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(in))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (CommandBatch.RESULT_ENTRY.equals(entry.getName())) {
+                    result.load(new CloseShieldInputStream(zis));
+                } else if (CommandBatch.STATE_ENTRY.equals(entry.getName())) {
+                    getExecutionStateHandler().updateState(new CloseShieldInputStream(zis), host, deploymentId);
+                }
+            }
+        }
+
+        for (int i = 0; i < batch.getEntries().size(); i++) {
+            final CommandBatch.Entry entry = batch.getEntries().get(i);
+            final String status = result.getProperty(CommandBatch.statusKey(i));
+            if (CommandBatch.STATUS_SUCCESS.equals(status)) {
+                LOG.debug("Command [{}] for unit [{}] successfully executed against host [{}:{}].",
+                    entry.getCommand(), entry.getUnitId(), unitBasedEndpointUriBuilder.getHost(),
+                    unitBasedEndpointUriBuilder.getPort());
+                results.put(entry.getUnitId(), null);
+            } else if (CommandBatch.STATUS_FAILED.equals(status)) {
+                results.put(entry.getUnitId(), new RuntimeException(String.format(
+                    "Unexpected response while executing [%s] for unit [%s] against the host [%s:%s]."
+                        + " Remote exception message: [{%s}]",
+                    entry.getCommand(), entry.getUnitId(), unitBasedEndpointUriBuilder.getHost(),
+                    unitBasedEndpointUriBuilder.getPort(), result.getProperty(CommandBatch.messageKey(i)))));
+                break;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Provides the parameters requesting the state changes since the state received last. Without
+     * manifest the complete state is requested.
+     */
+    private Map<String, String> createStateParameters(Id<HostName> host, Id<DeploymentId> deploymentId) {
+        final Map<String, String> parameters = new HashMap<>();
+        final Properties manifest = getExecutionStateHandler().getStateManifest(host, deploymentId);
+        if (manifest != null) {
+            parameters.put(DccAgentUriBuilder.REVISION,
+                manifest.getProperty(ExecutionStateHandler.STATE_MANIFEST_REVISION, "-1"));
+            parameters.put(DccAgentUriBuilder.EPOCH,
+                manifest.getProperty(ExecutionStateHandler.STATE_MANIFEST_EPOCH, ""));
+        } else {
+            parameters.put(DccAgentUriBuilder.REVISION, "-1");
+        }
+        return parameters;
+    }
+
+    private byte[] toByteArray(Properties properties) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            properties.store(out, null);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
     }
 
     private Map<String, byte[]> loadProperties(Id<UnitId> unitId, Commands command) {
@@ -376,16 +603,100 @@ public class RemoteExecutor extends BaseExecutor implements Executor {
         }
     }
 
-    private HttpEntity createZipFileOfSolutionLocation() {
+    private SolutionManifest createSolutionManifest() {
+        try {
+            return getExecutionContext().getSolutionArchive().getManifest();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to create manifest of solution location.", e);
+        }
+    }
+
+    private HttpEntity createManifestEntity(SolutionManifest manifest) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            manifest.write(out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new ByteArrayEntity(out.toByteArray());
+    }
+
+    /**
+     * Uploads the files of the manifest not yet available in the blob store of the agent.
+     * 
+     * @param manifest The manifest of the solution location.
+     * @return <code>false</code> in case the agent does not support the blob store.
+     */
+    private boolean uploadMissingBlobs(final SolutionManifest manifest) {
+        final Set<String> missing = new LinkedHashSet<>();
+        final boolean[] supported = new boolean[1];
+
+        HttpUriRequest findMissingBlobsRequest =
+            hostBasedEndpointUriBuilder.buildFindMissingBlobsRequest(createManifestEntity(manifest));
+        executeRequest(findMissingBlobsRequest, new Callback() {
+
+            @Override
+            public void process(HttpResponse response) {
+                if (200 == response.getStatusLine().getStatusCode()) {
+                    supported[0] = true;
+                    try {
+                        String content = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                        if (content != null) {
+                            for (String hash : content.split("\n")) {
+                                if (!hash.trim().isEmpty()) {
+                                    missing.add(hash.trim());
+                                }
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                } else {
+                    LOG.debug("Host [{}:{}] does not support a blob store. Transferring complete solution.",
+                            hostBasedEndpointUriBuilder.getHost(), hostBasedEndpointUriBuilder.getPort());
+                }
+            }
+        });
+
+        if (!supported[0]) {
+            return false;
+        }
+
+        LOG.debug("Uploading [{}] of [{}] files to host [{}:{}]", missing.size(), manifest.getHashes().size(),
+                hostBasedEndpointUriBuilder.getHost(), hostBasedEndpointUriBuilder.getPort());
+        if (!missing.isEmpty()) {
+            HttpUriRequest storeBlobsRequest =
+                hostBasedEndpointUriBuilder.buildStoreBlobsRequest(createZipFileOfBlobs(manifest, missing));
+            executeRequest(storeBlobsRequest, new Callback() {
+
+                @Override
+                public void process(HttpResponse response) {
+                    int statusCode = response.getStatusLine().getStatusCode();
+                    if (200 != statusCode) {
+                        throw new RuntimeException(String.format(
+                            "Unexpected response while uploading solution files to host [%s:%s] - status code was [%s].",
+                            hostBasedEndpointUriBuilder.getHost(), hostBasedEndpointUriBuilder.getPort(), statusCode));
+                    }
+                }
+            });
+        }
+        return true;
+    }
+
+    private HttpEntity createZipFileOfBlobs(final SolutionManifest manifest, final Set<String> hashes) {
         final ContentProducer contentProducer = new ContentProducer() {
 
             @Override
             public void writeTo(OutputStream outstream) throws IOException {
                 try (ZipOutputStream zipFile = new ZipOutputStream(new BufferedOutputStream(outstream))) {
-                    Path solutionDirectory = Paths.get(getExecutionContext().getSolutionDir()
-                            .getAbsolutePath());
-                    addDirectoryContentsToZipFile(solutionDirectory, solutionDirectory, zipFile,
-                            INCLUDED_FOLDERS);
+                    final File solutionDir = getExecutionContext().getSolutionDir();
+                    for (String hash : hashes) {
+                        zipFile.putNextEntry(new ZipEntry(hash));
+                        try (InputStream in = new BufferedInputStream(
+                                new FileInputStream(new File(solutionDir, manifest.getPath(hash))))) {
+                            IOUtils.copy(in, zipFile);
+                        }
+                    }
                     zipFile.finish();
                 }
                 outstream.flush();
@@ -395,84 +706,29 @@ public class RemoteExecutor extends BaseExecutor implements Executor {
         return new EntityTemplate(contentProducer);
     }
 
-    private void addDirectoryContentsToZipFile(Path rootDirectory, Path directory,
-            ZipOutputStream zipFile, Set<String> includes) throws IOException {
-        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
-            for (Path path : directoryStream) {
-                Path relativePath = rootDirectory.relativize(path);
-                if (CollectionUtils.isEmpty(includes)
-                        || includes.contains(relativePath.toString())) {
-                    if (Files.isDirectory(path)) {
-                        String name = relativePath.toString();
-                        name = name.endsWith("/") ? name : name + "/";
-                        zipFile.putNextEntry(new ZipEntry(replaceWindowsPathSeparator(name)));
-                        addDirectoryContentsToZipFile(rootDirectory, path, zipFile, null);
-                    } else {
-                        String name = relativePath.toString();
-                        zipFile.putNextEntry(new ZipEntry(replaceWindowsPathSeparator(name)));
-                        try (InputStream fileToBeZipped = new BufferedInputStream(
-                                Files.newInputStream(path))) {
-                            IOUtils.copy(fileToBeZipped, zipFile);
-                        }
-                    }
-                }
-            }
+    private HttpEntity createZipFileOfSolutionLocation() {
+        try {
+            // the archive is shared by all hosts; it is created once per command run
+            return new FileEntity(getExecutionContext().getSolutionArchive().getArchiveFile(),
+                ContentType.create("application/zip"));
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to create archive of solution location.", e);
         }
     }
 
-    private String replaceWindowsPathSeparator(String input) {
-        return input.replace('\\', '/');
-    }
-
     private void executeRequest(HttpUriRequest request, Callback callback) {
-        try (CloseableHttpClient httpClient = instantiateHttpClientWithTimeout()) {
-            try (final CloseableHttpResponse response = httpClient.execute(request)) {
-                try {
-                    callback.process(response);
-                } finally {
-                    consumeEntity(response);
-                }
+        try (final CloseableHttpResponse response = getExecutionContext().getHttpClient().execute(request)) {
+            try {
+                callback.process(response);
+            } finally {
+                // consume the entity; the connection is returned to the pool
+                consumeEntity(response);
             }
         } catch (IOException | GeneralSecurityException e) {
             throw new RuntimeException("Problem executing request!", e);
         }
     }
 
-    private CloseableHttpClient instantiateHttpClientWithTimeout() throws IOException,
-            GeneralSecurityException {
-        final KeyStore keyStore = loadKeyStore(sslConfiguration.getKeyStoreLocation(),
-                sslConfiguration.getKeyStorePassword());
-
-        final KeyStore trustStore = loadKeyStore(sslConfiguration.getTrustStoreLocation(),
-                sslConfiguration.getTrustStorePassword());
-
-        final SSLContextBuilder sslContextBuilder = SSLContexts.custom();
-        sslContextBuilder.loadKeyMaterial(keyStore, sslConfiguration.getKeyStorePassword());
-        sslContextBuilder.loadTrustMaterial(trustStore);
-
-        final HttpClientBuilder builder = HttpClientBuilder.create();
-        builder.setSslcontext(sslContextBuilder.build());
-        builder.setHostnameVerifier(new AllowAllHostnameVerifier());
-
-        final CloseableHttpClient client = builder.build();
-        return client;
-    }
-
-    private KeyStore loadKeyStore(String location, char[] password) throws IOException,
-            GeneralSecurityException {
-        InputStream in = null;
-        try {
-            in = new FileInputStream(location);
-
-            final KeyStore keyStore = KeyStore.getInstance("JKS");
-            keyStore.load(in, password);
-
-            return keyStore;
-        } finally {
-            IOUtils.closeQuietly(in);
-        }
-    }
-
     private byte[] loadExecutionProperties(Id<UnitId> unitId, Commands command) {
         final File baseFolder = getConfigTmpDirectory();
         final File file = DccUtils.propertyFile(baseFolder, unitId, command);
@@ -15,7 +15,17 @@
  */
 package org.metaeffekt.dcc.controller.execution;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.net.ssl.SSLContext;
+
 import org.apache.commons.lang3.Validate;
+import org.apache.http.conn.ssl.SSLContextBuilder;
+import org.apache.http.conn.ssl.SSLContexts;
 
 public class SSLConfiguration {
 
@@ -27,6 +37,8 @@ public class SSLConfiguration {
 
     private final String trustStoreLocation;
 
+    private SSLContext sslContext;
+
     public SSLConfiguration(String keyStoreLocation, String keyStorePassword,
             String trustStoreLocation, String trustStorePassword) {
         Validate.notEmpty(keyStoreLocation, "keyStoreLocation is required");
@@ -55,4 +67,35 @@ public class SSLConfiguration {
         return trustStoreLocation;
     }
 
+    /**
+     * Provides the {@link SSLContext} initialized with the key store and trust store. The stores are
+     * loaded once; the context is cached.
+     * 
+     * @return The {@link SSLContext}.
+     * 
+     * @throws IOException In case a store cannot be read.
+     * @throws GeneralSecurityException In case the stores cannot be processed.
+     */
+    public synchronized SSLContext getSslContext() throws IOException, GeneralSecurityException {
+        if (sslContext == null) {
+            final KeyStore keyStore = loadKeyStore(keyStoreLocation, getKeyStorePassword());
+            final KeyStore trustStore = loadKeyStore(trustStoreLocation, getTrustStorePassword());
+
+            final SSLContextBuilder sslContextBuilder = SSLContexts.custom();
+            sslContextBuilder.loadKeyMaterial(keyStore, getKeyStorePassword());
+            sslContextBuilder.loadTrustMaterial(trustStore);
+            sslContext = sslContextBuilder.build();
+        }
+        return sslContext;
+    }
+
+    private KeyStore loadKeyStore(String location, char[] password) throws IOException,
+            GeneralSecurityException {
+        try (InputStream in = new FileInputStream(location)) {
+            final KeyStore keyStore = KeyStore.getInstance("JKS");
+            keyStore.load(in, password);
+            return keyStore;
+        }
+    }
+
 }
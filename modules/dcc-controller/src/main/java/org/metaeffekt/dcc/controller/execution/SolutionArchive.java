@@ -0,0 +1,152 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.controller.execution;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.CollectionUtils;
+
+import org.metaeffekt.dcc.agent.SolutionManifest;
+import org.metaeffekt.dcc.commons.DccConstants;
+
+/**
+ * Provides the content of the solution location transferred to the agents on initialize. The
+ * {@link SolutionManifest} and the zip archive of the solution are created once on first request and
+ * shared by all hosts of a command run. Hashing and compressing the solution therefore does not scale
+ * with the number of hosts.
+ * <p>
+ * The archive is spooled to a temporary file. It is deleted on {@link #close()}.
+ */
+public class SolutionArchive implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SolutionArchive.class);
+
+    static final Set<String> INCLUDED_FOLDERS;
+    static {
+        final Set<String> includedFolders = new HashSet<String>();
+        includedFolders.add(DccConstants.LIB_SUB_DIRECTORY);
+        includedFolders.add(DccConstants.PACKAGES_SUB_DIRECTORY);
+        includedFolders.add(DccConstants.HOOKS_SUB_DIRECTORY);
+        includedFolders.addAll(Arrays.asList(BaseExecutor.SOLUTION_ADDON_FOLDERS));
+        INCLUDED_FOLDERS = Collections.unmodifiableSet(includedFolders);
+    }
+
+    private final File solutionDir;
+
+    private SolutionManifest manifest;
+
+    private File archiveFile;
+
+    public SolutionArchive(File solutionDir) {
+        this.solutionDir = solutionDir;
+    }
+
+    public File getSolutionDir() {
+        return solutionDir;
+    }
+
+    public synchronized SolutionManifest getManifest() throws IOException {
+        if (manifest == null) {
+            final long timestamp = System.currentTimeMillis();
+            manifest = SolutionManifest.create(solutionDir, INCLUDED_FOLDERS);
+            LOG.debug("Created manifest of solution [{}] with [{}] entries in [{}] ms.", solutionDir,
+                manifest.getEntries().size(), System.currentTimeMillis() - timestamp);
+        }
+        return manifest;
+    }
+
+    /**
+     * @return The zip archive of the solution location. The file must not be modified or deleted by the
+     *   caller.
+     * @throws IOException In case the archive cannot be created.
+     */
+    public synchronized File getArchiveFile() throws IOException {
+        if (archiveFile == null) {
+            final long timestamp = System.currentTimeMillis();
+            final File file = File.createTempFile("dcc-solution-", ".zip");
+            try (ZipOutputStream zipFile = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                final Path solutionDirectory = solutionDir.toPath().toAbsolutePath();
+                addDirectoryContentsToZipFile(solutionDirectory, solutionDirectory, zipFile, INCLUDED_FOLDERS);
+                zipFile.finish();
+            } catch (IOException e) {
+                FileUtils.deleteQuietly(file);
+                throw e;
+            }
+            archiveFile = file;
+            LOG.debug("Created archive of solution [{}] in [{}] ms.", solutionDir,
+                System.currentTimeMillis() - timestamp);
+        }
+        return archiveFile;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (archiveFile != null) {
+            FileUtils.deleteQuietly(archiveFile);
+            archiveFile = null;
+        }
+        manifest = null;
+    }
+
+    private void addDirectoryContentsToZipFile(Path rootDirectory, Path directory,
+            ZipOutputStream zipFile, Set<String> includes) throws IOException {
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+            for (Path path : directoryStream) {
+                Path relativePath = rootDirectory.relativize(path);
+                if (CollectionUtils.isEmpty(includes)
+                        || includes.contains(relativePath.toString())) {
+                    if (Files.isDirectory(path)) {
+                        String name = relativePath.toString();
+                        name = name.endsWith("/") ? name : name + "/";
+                        zipFile.putNextEntry(new ZipEntry(replaceWindowsPathSeparator(name)));
+                        addDirectoryContentsToZipFile(rootDirectory, path, zipFile, null);
+                    } else {
+                        String name = relativePath.toString();
+                        zipFile.putNextEntry(new ZipEntry(replaceWindowsPathSeparator(name)));
+                        try (InputStream fileToBeZipped = new BufferedInputStream(
+                                Files.newInputStream(path))) {
+                            IOUtils.copy(fileToBeZipped, zipFile);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private String replaceWindowsPathSeparator(String input) {
+        return input.replace('\\', '/');
+    }
+
+}
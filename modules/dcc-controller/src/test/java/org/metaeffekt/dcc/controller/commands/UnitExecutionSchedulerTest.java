@@ -0,0 +1,161 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.controller.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.metaeffekt.dcc.commons.domain.Id;
+import org.metaeffekt.dcc.commons.domain.Type.UnitId;
+import org.metaeffekt.dcc.commons.mapping.ConfigurationUnit;
+
+public class UnitExecutionSchedulerTest {
+
+    private ConfigurationUnit unitA = new ConfigurationUnit(Id.createUnitId("A"));
+    private ConfigurationUnit unitB = new ConfigurationUnit(Id.createUnitId("B"));
+    private ConfigurationUnit unitC = new ConfigurationUnit(Id.createUnitId("C"));
+    private ConfigurationUnit unitD = new ConfigurationUnit(Id.createUnitId("D"));
+
+    private Map<Id<UnitId>, List<Id<UnitId>>> upstreamMatrix;
+
+    @Before
+    public void prepare() {
+        // B depends on A; D depends on C
+        upstreamMatrix = new HashMap<>();
+        upstreamMatrix.put(unitB.getId(), Collections.singletonList(unitA.getId()));
+        upstreamMatrix.put(unitD.getId(), Collections.singletonList(unitC.getId()));
+    }
+
+    @Test
+    public void testSequentialOrder() {
+        final List<ConfigurationUnit> units = Arrays.asList(unitA, unitC, unitB, unitD);
+        final List<ConfigurationUnit> executed = Collections.synchronizedList(new ArrayList<>());
+        final Map<Id<?>, Throwable> exceptions = new ConcurrentHashMap<>();
+
+        new UnitExecutionScheduler(units, upstreamMatrix, 1).execute(executed::add, u -> {}, exceptions);
+
+        assertTrue(exceptions.isEmpty());
+        assertEquals(units, executed);
+    }
+
+    @Test
+    public void testDownstreamUnitDoesNotWaitForUnrelatedUnit() throws InterruptedException {
+        final List<ConfigurationUnit> units = Arrays.asList(unitA, unitC, unitB, unitD);
+        final CountDownLatch unitBExecuted = new CountDownLatch(1);
+        final Map<Id<?>, Throwable> exceptions = new ConcurrentHashMap<>();
+        final boolean[] unitBBeforeUnitC = new boolean[1];
+
+        new UnitExecutionScheduler(units, upstreamMatrix, 4).execute(unit -> {
+            try {
+                if (unit == unitC) {
+                    // C is slow; B only depends on A and must not wait for C
+                    unitBBeforeUnitC[0] = unitBExecuted.await(5, TimeUnit.SECONDS);
+                }
+                if (unit == unitB) {
+                    unitBExecuted.countDown();
+                }
+            } catch (InterruptedException e) {
+                exceptions.put(unit.getId(), e);
+            }
+        }, u -> {}, exceptions);
+
+        assertTrue(exceptions.isEmpty());
+        assertTrue(unitBBeforeUnitC[0]);
+    }
+
+    @Test
+    public void testFailFast() {
+        final List<ConfigurationUnit> units = Arrays.asList(unitA, unitC, unitB, unitD);
+        final List<ConfigurationUnit> executed = Collections.synchronizedList(new ArrayList<>());
+        final Map<Id<?>, Throwable> exceptions = new ConcurrentHashMap<>();
+
+        new UnitExecutionScheduler(units, upstreamMatrix, 1).execute(unit -> {
+            executed.add(unit);
+            if (unit == unitA) {
+                exceptions.put(unit.getId(), new IllegalStateException("Failed."));
+            }
+        }, u -> {}, exceptions);
+
+        assertEquals(1, exceptions.size());
+        assertEquals(Collections.singletonList(unitA), executed);
+        assertFalse(executed.contains(unitB));
+    }
+
+    @Test
+    public void testReversedOrder() {
+        final Map<Id<UnitId>, List<Id<UnitId>>> downstreamMatrix = new HashMap<>();
+        downstreamMatrix.put(unitA.getId(), Collections.singletonList(unitB.getId()));
+        downstreamMatrix.put(unitC.getId(), Collections.singletonList(unitD.getId()));
+
+        final List<ConfigurationUnit> units = Arrays.asList(unitB, unitD, unitA, unitC);
+        final List<ConfigurationUnit> executed = Collections.synchronizedList(new ArrayList<>());
+        final Map<Id<?>, Throwable> exceptions = new ConcurrentHashMap<>();
+
+        new UnitExecutionScheduler(units, downstreamMatrix, 4).execute(executed::add, u -> {}, exceptions);
+
+        assertTrue(exceptions.isEmpty());
+        assertEquals(4, executed.size());
+        assertTrue(executed.indexOf(unitB) < executed.indexOf(unitA));
+        assertTrue(executed.indexOf(unitD) < executed.indexOf(unitC));
+    }
+
+    @Test
+    public void testHostLimit() {
+        final List<ConfigurationUnit> units = new ArrayList<>();
+        final Map<Id<UnitId>, String> hosts = new HashMap<>();
+        for (int i = 0; i < 12; i++) {
+            final ConfigurationUnit unit = new ConfigurationUnit(Id.createUnitId("unit-" + i));
+            units.add(unit);
+            hosts.put(unit.getId(), i < 8 ? "host-1" : "host-2");
+        }
+
+        final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> maxInFlight = new ConcurrentHashMap<>();
+        final Map<Id<?>, Throwable> exceptions = new ConcurrentHashMap<>();
+
+        new UnitExecutionScheduler(units, Collections.emptyMap(), 6, u -> hosts.get(u.getId()), 2).execute(unit -> {
+            final String host = hosts.get(unit.getId());
+            final int current = inFlight.computeIfAbsent(host, h -> new AtomicInteger()).incrementAndGet();
+            maxInFlight.computeIfAbsent(host, h -> new AtomicInteger()).accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                exceptions.put(unit.getId(), e);
+            }
+            inFlight.get(host).decrementAndGet();
+        }, u -> {}, exceptions);
+
+        assertTrue(exceptions.isEmpty());
+        assertTrue(maxInFlight.get("host-1").get() <= 2);
+        assertTrue(maxInFlight.get("host-2").get() <= 2);
+    }
+
+}
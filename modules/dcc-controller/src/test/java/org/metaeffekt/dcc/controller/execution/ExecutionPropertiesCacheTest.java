@@ -0,0 +1,108 @@
+/**
+ * Copyright 2009-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.metaeffekt.dcc.controller.execution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.metaeffekt.dcc.commons.DccProperties;
+import org.metaeffekt.dcc.commons.ant.PropertyUtils;
+import org.metaeffekt.dcc.commons.properties.ImmutableSortedProperties;
+import org.metaeffekt.dcc.commons.properties.SortedProperties;
+
+public class ExecutionPropertiesCacheTest {
+
+    private File file;
+    private ExecutionPropertiesCache cache;
+
+    @Before
+    public void prepare() {
+        final File baseDir = new File("target/execution-properties-cache-test");
+        FileUtils.deleteQuietly(baseDir);
+        baseDir.mkdirs();
+        file = new File(baseDir, "install.properties");
+        cache = new ExecutionPropertiesCache();
+    }
+
+    @Test
+    public void writeAndInvalidate() throws IOException {
+        assertFalse(cache.isUpToDate(file));
+
+        final String hash = cache.write(createProperties("a"), file, "comment");
+        assertTrue(cache.isUpToDate(file));
+        assertEquals(hash, PropertyUtils.loadPropertyFile(file).getProperty(DccProperties.DCC_PROPERTIES_HASH));
+
+        cache.invalidate();
+        assertFalse(cache.isUpToDate(file));
+
+        // same content; the file is confirmed without being written
+        final long lastModified = file.lastModified();
+        assertEquals(hash, cache.write(createProperties("a"), file, "comment"));
+        assertTrue(cache.isUpToDate(file));
+        assertEquals(lastModified, file.lastModified());
+
+        assertNotEquals(hash, cache.write(createProperties("b"), file, "comment"));
+        assertEquals("b", PropertyUtils.loadPropertyFile(file).getProperty("key"));
+    }
+
+    @Test
+    public void hashOfUpToDateFile() throws IOException {
+        assertNull(cache.getHash(file));
+        final String hash = cache.write(createProperties("a"), file, "comment");
+        assertEquals(hash, cache.getHash(file));
+
+        cache.invalidate();
+        assertNull(cache.getHash(file));
+    }
+
+    @Test
+    public void removedFileIsNotUpToDate() throws IOException {
+        cache.write(createProperties("a"), file, "comment");
+        FileUtils.forceDelete(file);
+        assertFalse(cache.isUpToDate(file));
+
+        cache.write(createProperties("a"), file, "comment");
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void hashIgnoresHashProperty() {
+        final ImmutableSortedProperties properties = ImmutableSortedProperties.of(createProperties("a"));
+        final String hash = ExecutionPropertiesCache.computeHash(properties, "comment");
+        final ImmutableSortedProperties propertiesWithHash = properties.with(DccProperties.DCC_PROPERTIES_HASH, hash);
+        assertEquals(hash, ExecutionPropertiesCache.computeHash(propertiesWithHash, "comment"));
+        assertNotEquals(hash, ExecutionPropertiesCache.computeHash(propertiesWithHash, "other comment"));
+    }
+
+    private Properties createProperties(String value) {
+        final Properties properties = new SortedProperties();
+        properties.setProperty("key", value);
+        properties.setProperty("another.key", "value");
+        return properties;
+    }
+
+}